@@ -0,0 +1,59 @@
+package wrptn.scuffedcraft;
+
+import wrptn.scuffedcraft.models.SimulationInput;
+
+/**
+ * Realistic submissions for benchmarks.
+ */
+public final class Profiles {
+    private Profiles() { }
+
+    /**
+     * An export of the SimulationCraft addon for a character carrying a full bag of gear: a few dozen profile lines
+     * followed by hundreds of commented-out items, which are all discarded by the sanitizer.
+     */
+    public static String largeProfile() {
+        var builder = new StringBuilder();
+        builder.append("""
+            # Scuffed - Fury - 2018-01-30 21:04 - EU/Hyjal
+            # SimC Addon 7.3.5-01
+            # Requires SimulationCraft 735-01 or newer
+
+            warrior="Scuffed"
+            level=110
+            race=human
+            region=eu
+            server=hyjal
+            role=attack
+            professions=mining=800/blacksmithing=800
+            talents=2132123
+            spec=fury
+
+            # Artifact: 128908 Warswords of the Valarjar
+            artifact=35:0:0:0:0:984:1:988:4:989:4:990:4:991:4:992:4:993:4:994:4:995:4:996:1:997:1:998:1:999:1:1000:1:1001:1:1002:1:1357:1:1406:1:1542:1:1629:1
+            crucible=1739:3:1711:3:1770:1
+
+            """);
+
+        String[] slots = { "head", "neck", "shoulder", "back", "chest", "wrist", "hands", "waist", "legs", "feet",
+            "finger1", "finger2", "trinket1", "trinket2", "main_hand", "off_hand" };
+        for (var i = 0; i < slots.length; ++i)
+            builder.append(slots[i]).append("=,id=").append(151000 + i)
+                .append(",bonus_id=3610/1472/3528,enchant_id=5437,gem_id=151585\n");
+
+        builder.append("\n### Gear from Bags\n");
+        for (var i = 0; i < 400; ++i)
+            builder.append("#\n# Item ").append(i).append(" (940)\n# ").append(slots[i % slots.length])
+                .append("=,id=").append(152000 + i).append(",bonus_id=3612/1502/3336\n");
+
+        // Lines the sanitizer must reject.
+        builder.append("\nactions=/charge\nsave=/tmp/output\nrace=nightborne\niterations=100000\n");
+        return builder.toString();
+    }
+
+    public static SimulationInput largeInput() {
+        var input = new SimulationInput();
+        input.setProfileString(largeProfile());
+        return input;
+    }
+}
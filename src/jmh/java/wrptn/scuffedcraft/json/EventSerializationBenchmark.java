@@ -0,0 +1,72 @@
+package wrptn.scuffedcraft.json;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static wrptn.scuffedcraft.json.Builders.event;
+import static wrptn.scuffedcraft.json.Builders.object;
+
+/**
+ * Cost of building and serializing the events sent to clients, the most frequent of which are progress updates and
+ * log batches; the {@code streamed} variants go through {@link Builders#event} instead of a node tree.
+ */
+@State(Scope.Benchmark)
+public class EventSerializationBenchmark {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final List<String> logBatch = new ArrayList<>();
+    private String logLines;
+
+    @Setup
+    public void setUp() {
+        for (var i = 0; i < 64; ++i)
+            this.logBatch.add("Generating baseline: Scuffed " + i + " / 64 [================>    ]");
+        this.logLines = String.join("\n", this.logBatch) + "\n";
+    }
+
+    @Benchmark
+    public String progressEvent() throws Exception {
+        return this.objectMapper.writeValueAsString(object("type", "progress")
+            .with("phase", "Generating baseline")
+            .with("percent", 42)
+            .with("eta", 17L)
+            .end());
+    }
+
+    @Benchmark
+    public String queueEvent() throws Exception {
+        return this.objectMapper.writeValueAsString(object("type", "queue").with("position", 12).end());
+    }
+
+    @Benchmark
+    public String logEvent() throws Exception {
+        return this.objectMapper.writeValueAsString(object("type", "log").with("line", this.logLines).end());
+    }
+
+    @Benchmark
+    public String streamedProgressEvent() {
+        return event("progress")
+            .with("phase", "Generating baseline")
+            .with("percent", 42)
+            .with("eta", 17L)
+            .end();
+    }
+
+    @Benchmark
+    public String streamedQueueEvent() {
+        return event("queue").with("position", 12).end();
+    }
+
+    @Benchmark
+    public String streamedLogEvent() {
+        return event("log").with("line", this.logLines).end();
+    }
+
+    @Benchmark
+    public String streamedLogBatch() {
+        return event("log").with("line", this.logBatch, "\n").end();
+    }
+}
@@ -0,0 +1,36 @@
+package wrptn.scuffedcraft.models;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import wrptn.scuffedcraft.Profiles;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Cost of sanitizing a submitted profile, which happens for the cache key and again when writing simc's input.
+ */
+@State(Scope.Benchmark)
+public class SimulationInputBenchmark {
+    private SimulationInput input;
+
+    /**
+     * Stands for the input file; discards everything, without allocating.
+     */
+    private final Writer writer = Writer.nullWriter();
+
+    @Setup
+    public void setUp() {
+        this.input = Profiles.largeInput();
+    }
+
+    @Benchmark
+    public void getProfile(Blackhole blackhole) {
+        this.input.getProfile().forEach(blackhole::consume);
+    }
+
+    @Benchmark
+    public void writeProfile() throws IOException {
+        this.input.writeProfile(this.writer);
+    }
+}
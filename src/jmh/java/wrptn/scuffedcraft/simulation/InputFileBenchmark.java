@@ -0,0 +1,28 @@
+package wrptn.scuffedcraft.simulation;
+
+import org.openjdk.jmh.annotations.*;
+import wrptn.scuffedcraft.Profiles;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Cost of writing simc's input file, excluding the file system: the writer discards everything it is given.
+ */
+@State(Scope.Benchmark)
+public class InputFileBenchmark {
+    private Ticket ticket;
+
+    @Setup
+    public void setUp() {
+        this.ticket = new Ticket(Profiles.largeInput());
+    }
+
+    @Benchmark
+    public void writeInput() throws IOException {
+        try (var writer = new BufferedWriter(Writer.nullWriter())) {
+            this.ticket.writeInput(writer, 4);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package wrptn.scuffedcraft.simulation;
+
+import org.openjdk.jmh.annotations.*;
+import wrptn.scuffedcraft.models.SimulationInput;
+
+import java.time.Duration;
+
+/**
+ * Cost of telling every waiting client its position after a job left the queue.
+ *
+ * Each invocation dispatches the head of the queue and queues it again at the back, so that the position of every
+ * other ticket changes and is sent to it.
+ */
+@State(Scope.Benchmark)
+public class QueuePositionBenchmark {
+    @Param({ "1000", "5000" })
+    public int waitingTickets;
+
+    private JobScheduler scheduler;
+    private TicketRegistry ticketRegistry;
+
+    @Setup
+    public void setUp() {
+        this.scheduler = new JobScheduler(this.waitingTickets, 1.0);
+        this.ticketRegistry = new TicketRegistry(this.scheduler, Duration.ofHours(1));
+
+        for (var i = 0; i < this.waitingTickets; ++i) {
+            var input = new SimulationInput();
+            input.setProfileString("warrior=\"Waiting\"\nlevel=110\n");
+
+            var ticket = new Ticket(input);
+            ticket.setSequence(this.ticketRegistry.nextSequence());
+            ticket.setEstimatedSeconds(20);
+            this.scheduler.offer(ticket);
+        }
+
+        this.ticketRegistry.broadcastPositions();
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.ticketRegistry.preDestroy();
+    }
+
+    @Benchmark
+    public void dispatchAndBroadcast() throws InterruptedException {
+        var ticket = this.scheduler.take();
+        ticket.setSequence(this.ticketRegistry.nextSequence());
+        this.scheduler.offer(ticket);
+
+        this.ticketRegistry.broadcastPositions();
+    }
+}
@@ -0,0 +1,203 @@
+package wrptn.scuffedcraft.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Simulated users: each one submits the simulation form to {@code /v2/}, follows the event stream of its submission
+ * until it ends, downloads the report, then submits again.
+ *
+ * Every submission carries a distinct profile, so that none of them is served from the result cache.
+ */
+public class LoadDriver {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static final ParameterizedTypeReference<ServerSentEvent<String>> EVENT_TYPE = new ParameterizedTypeReference<>() { };
+
+    /**
+     * Where the page rendered for a submission subscribes to its events.
+     */
+    private static final Pattern EVENT_STREAM = Pattern.compile("simulation-progress/([0-9a-fA-F-]{36})");
+
+    private final WebClient webClient;
+    private final ConnectionProvider connections;
+    private final int users;
+
+    /**
+     * The outcome of a submission. Durations are measured from the moment the form was posted, and are negative if
+     * the corresponding event never came.
+     *
+     * @param rejected     Whether the server refused the submission with {@code 429 Too Many Requests}.
+     * @param failure      The message of the error event or exception that ended the submission; {@code null} if it
+     *                     completed.
+     * @param firstEvent   Until the first event of the stream.
+     * @param endToEnd     Until the report was downloaded, or the stream ended if there is no report.
+     * @param reportBytes  The size of the downloaded report, or {@code -1} if there was none.
+     */
+    public record Sample(boolean rejected, String failure, Duration firstEvent, Duration endToEnd, long reportBytes) {
+        static Sample rejection() {
+            return new Sample(true, null, Duration.ofNanos(-1), Duration.ofNanos(-1), -1);
+        }
+
+        public boolean completed() {
+            return !this.rejected && this.failure == null;
+        }
+    }
+
+    /**
+     * @param server The root of the server, such as {@code http://localhost:8080}.
+     * @param users  How many users submit simulations at once.
+     */
+    public LoadDriver(URI server, int users) {
+        if (users < 1)
+            throw new IllegalArgumentException("At least one user is required");
+
+        // Every user holds an event stream open while it downloads or submits; the default pool would queue them.
+        this.connections = ConnectionProvider.builder("load-test")
+            .maxConnections(2 * users)
+            .pendingAcquireTimeout(Duration.ofMinutes(5))
+            .build();
+        this.webClient = WebClient.builder()
+            .baseUrl(server.toString())
+            .clientConnector(new ReactorClientHttpConnector(HttpClient.create(this.connections)))
+            .codecs(codecs -> codecs.defaultCodecs().maxInMemorySize(-1))
+            .build();
+        this.users = users;
+    }
+
+    /**
+     * Runs every user until it made its submissions.
+     *
+     * @return The outcome of every submission, in no particular order.
+     */
+    public List<Sample> run(int submissionsPerUser) {
+        try {
+            return Flux.range(0, this.users)
+                .flatMap(user -> Flux.range(0, submissionsPerUser).concatMap(submission -> this.submit(user, submission)),
+                    this.users)
+                .collectList()
+                .block();
+        } finally {
+            this.connections.dispose();
+        }
+    }
+
+    private Mono<Sample> submit(int user, int submission) {
+        var form = new LinkedMultiValueMap<String, String>();
+        form.add("profileString", "warrior=\"LoadTest_" + user + "_" + submission + "\"\nlevel=110\nrace=human\nspec=fury\n");
+        form.add("numberOfEnemies", "1");
+        form.add("fightType", "Patchwerk");
+
+        return Mono.defer(() -> {
+            var start = System.nanoTime();
+            var progress = new Progress(start);
+
+            return this.webClient.post()
+                .uri("/v2/")
+                .contentType(MediaType.APPLICATION_FORM_URLENCODED)
+                .body(BodyInserters.fromFormData(form))
+                .retrieve()
+                .bodyToMono(String.class)
+                .flatMap(page -> {
+                    var matcher = EVENT_STREAM.matcher(page);
+                    if (!matcher.find())
+                        return Mono.error(new IOException("The page of the submission has no event stream"));
+                    return this.follow(matcher.group(1), progress);
+                })
+                .then(Mono.defer(() -> this.download(progress)))
+                .map(reportBytes -> progress.sample(reportBytes))
+                .onErrorResume(WebClientResponseException.TooManyRequests.class, ex -> Mono.just(Sample.rejection()))
+                .onErrorResume(ex -> Mono.just(progress.failed(ex.toString())));
+        });
+    }
+
+    /**
+     * Consumes the events of a submission until its stream ends.
+     */
+    private Mono<Void> follow(String requestUUID, Progress progress) {
+        return this.webClient.get()
+            .uri("/v2/simulation-progress/{requestUUID}", requestUUID)
+            .accept(MediaType.TEXT_EVENT_STREAM)
+            .retrieve()
+            .bodyToFlux(EVENT_TYPE)
+            .doOnNext(event -> progress.onEvent(event.data()))
+            .then();
+    }
+
+    /**
+     * Downloads the report of a completed submission, as its user would.
+     *
+     * @return The size of the report, or {@code -1} if there is none.
+     */
+    private Mono<Long> download(Progress progress) {
+        if (progress.reportUrl == null)
+            return Mono.just(-1L);
+
+        return this.webClient.get()
+            .uri(progress.reportUrl)
+            .exchangeToMono(response -> response.statusCode() == HttpStatus.OK
+                ? response.bodyToMono(byte[].class).map(body -> (long) body.length)
+                : response.releaseBody().thenReturn(-1L));
+    }
+
+    /**
+     * What happened so far to a submission; only touched by the thread of its event stream.
+     */
+    private static final class Progress {
+        private final long start;
+        private long firstEvent = -1;
+        private String failure;
+        private String reportUrl;
+
+        Progress(long start) {
+            this.start = start;
+        }
+
+        void onEvent(String data) {
+            if (this.firstEvent < 0)
+                this.firstEvent = System.nanoTime();
+
+            try {
+                var event = objectMapper.readTree(data);
+                switch (event.path("type").asText()) {
+                    case "error" -> this.failure = event.path("message").asText();
+                    case "report" -> this.reportUrl = event.path("url").asText();
+                    default -> { }
+                }
+            } catch (IOException ex) {
+                this.failure = "Malformed event: " + data;
+            }
+        }
+
+        Sample sample(long reportBytes) {
+            return new Sample(false, this.failure, this.since(this.firstEvent), Duration.ofNanos(System.nanoTime() - this.start),
+                reportBytes);
+        }
+
+        Sample failed(String message) {
+            return new Sample(false, message, this.since(this.firstEvent), Duration.ofNanos(-1), -1);
+        }
+
+        private Duration since(long time) {
+            return Duration.ofNanos(time < 0 ? -1 : time - this.start);
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package wrptn.scuffedcraft.loadtest;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.util.FileSystemUtils;
+import wrptn.scuffedcraft.ScuffedcraftApplication;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryType;
+import java.net.URI;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Function;
+
+/**
+ * Starts the server with {@link StandInSimc} in place of simc, runs a {@link LoadDriver} against it, and prints the
+ * latencies seen by the users along with the heap and garbage collections of the server.
+ *
+ * The driver runs in the JVM of the server, so its own allocations are part of the heap and GC figures; they are
+ * small next to the server's, but comparisons are only meaningful between runs of the same options.
+ *
+ * Options are system properties, forwarded from Gradle project properties:
+ * {@code ./gradlew loadTest -Ploadtest.users=50 -Ploadtest.runtime=PT5S}.
+ * <ul>
+ *     <li>{@code loadtest.users}: users submitting at once; 20 by default.</li>
+ *     <li>{@code loadtest.submissions}: submissions of every user; 5 by default.</li>
+ *     <li>{@code loadtest.workers}: simulations the server runs at once; 4 by default.</li>
+ *     <li>{@code loadtest.runtime}: the mean runtime of a simulation; {@code PT2S} by default.</li>
+ *     <li>{@code loadtest.jitter}: the deviation of runtimes, as a fraction of the mean; 0.25 by default.</li>
+ *     <li>{@code loadtest.progress-updates}: the progress bars printed by a simulation; 20 by default.</li>
+ *     <li>{@code loadtest.report-size}: the size of a report, in bytes; 2 MiB by default, as a typical simc report.</li>
+ * </ul>
+ */
+public final class LoadTest {
+    private static final double[] PERCENTILES = { 50, 90, 99, 100 };
+
+    private LoadTest() { }
+
+    /**
+     * Heap usage and collections of the JVM at a point in time.
+     */
+    private record JvmSnapshot(long heapUsed, long heapCommitted, List<Collector> collectors) {
+        record Collector(String name, long count, long timeMillis) { }
+
+        static JvmSnapshot take() {
+            var heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+            var collectors = new ArrayList<Collector>();
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans())
+                collectors.add(new Collector(collector.getName(), collector.getCollectionCount(), collector.getCollectionTime()));
+            return new JvmSnapshot(heap.getUsed(), heap.getCommitted(), collectors);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        var users = Integer.getInteger("loadtest.users", 20);
+        var submissions = Integer.getInteger("loadtest.submissions", 5);
+        var workers = Integer.getInteger("loadtest.workers", 4);
+        var simc = new StandInSimc(
+            Duration.parse(System.getProperty("loadtest.runtime", "PT2S")),
+            Double.parseDouble(System.getProperty("loadtest.jitter", "0.25")),
+            0.1,
+            Integer.getInteger("loadtest.progress-updates", 20),
+            Integer.getInteger("loadtest.report-size", 2 << 20));
+
+        var directory = Files.createTempDirectory("scuffedcraft-load-test");
+        var executable = simc.create(directory);
+
+        // Admission control and the queue are sized so that every submission is accepted; this measures the server
+        // under load, not its rejections. Command line arguments take precedence over application.properties.
+        var overrides = new ArrayList<>(List.of(
+            "--server.port=0",
+            "--simulationcraft.executable.location=" + executable,
+            "--simulationcraft.dispatcher.workers=" + workers,
+            "--simulationcraft.admission.capacity=1000000",
+            "--simulationcraft.admission.refill-rate=1000000",
+            "--simulationcraft.scheduler.queue-capacity=" + Math.max(64, users),
+            "--simulationcraft.journal.location=" + directory.resolve("journal").resolve("jobs.log"),
+            "--simulationcraft.reports.directory=" + directory.resolve("reports"),
+            "--simulationcraft.jobs.directory=" + directory.resolve("jobs")));
+        overrides.addAll(Arrays.asList(args));
+        var context = new SpringApplicationBuilder(ScuffedcraftApplication.class)
+            .run(overrides.toArray(String[]::new));
+
+        try {
+            var port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            var driver = new LoadDriver(URI.create("http://localhost:" + port), users);
+
+            System.out.printf(Locale.ROOT, "%d users, %d submissions each, %d workers, %s simulations of %s%n",
+                users, submissions, workers, simc.runtime(), bytes(simc.reportBytes()));
+
+            resetPeakUsage();
+            var before = JvmSnapshot.take();
+            var start = System.nanoTime();
+            var samples = driver.run(submissions);
+            var elapsed = Duration.ofNanos(System.nanoTime() - start);
+            var after = JvmSnapshot.take();
+
+            report(samples, elapsed, before, after);
+
+            // Every submission runs a full simulation after its estimate; anything faster was only estimated.
+            var minimum = simc.minimumRuntime();
+            var truncated = samples.stream()
+                .filter(LoadDriver.Sample::completed)
+                .filter(sample -> sample.endToEnd().compareTo(minimum) < 0)
+                .count();
+            if (truncated > 0)
+                throw new IllegalStateException(truncated + " submissions completed in less than the minimum runtime of "
+                    + "a full simulation, " + minimum + "; they did not run at full precision");
+        } finally {
+            context.close();
+            FileSystemUtils.deleteRecursively(directory);
+        }
+    }
+
+    private static void report(List<LoadDriver.Sample> samples, Duration elapsed, JvmSnapshot before, JvmSnapshot after) {
+        var completed = samples.stream().filter(LoadDriver.Sample::completed).toList();
+        var rejected = samples.stream().filter(LoadDriver.Sample::rejected).count();
+        System.out.printf(Locale.ROOT, "%nSubmissions: %d in %.1f s, %d completed, %d failed, %d rejected%n",
+            samples.size(), elapsed.toMillis() / 1000.0, completed.size(), samples.size() - completed.size() - rejected,
+            rejected);
+        samples.stream()
+            .filter(sample -> sample.failure() != null)
+            .map(LoadDriver.Sample::failure)
+            .distinct()
+            .limit(5)
+            .forEach(failure -> System.out.println("  " + failure));
+
+        System.out.printf(Locale.ROOT, "%n%-24s%10s%10s%10s%10s%n", "Latency (ms)", "p50", "p90", "p99", "max");
+        printPercentiles("Submit to first event", completed, LoadDriver.Sample::firstEvent);
+        printPercentiles("End to end", completed, LoadDriver.Sample::endToEnd);
+
+        var reportBytes = completed.stream().mapToLong(LoadDriver.Sample::reportBytes).filter(size -> size >= 0)
+            .summaryStatistics();
+        if (reportBytes.getCount() > 0)
+            System.out.printf(Locale.ROOT, "%nReports: %d downloaded, %s each on average, %s in total%n",
+                reportBytes.getCount(), bytes((long) reportBytes.getAverage()), bytes(reportBytes.getSum()));
+
+        System.out.printf(Locale.ROOT, "%nHeap: %s used before, %s after, %s at peak, %s committed%n",
+            bytes(before.heapUsed()), bytes(after.heapUsed()), bytes(peakHeapUsage()), bytes(after.heapCommitted()));
+        for (var collector : after.collectors()) {
+            var previous = before.collectors().stream()
+                .filter(candidate -> candidate.name().equals(collector.name()))
+                .findFirst()
+                .orElse(new JvmSnapshot.Collector(collector.name(), 0, 0));
+            System.out.printf(Locale.ROOT, "GC %s: %d collections, %d ms%n", collector.name(),
+                collector.count() - previous.count(), collector.timeMillis() - previous.timeMillis());
+        }
+    }
+
+    private static void printPercentiles(String label, List<LoadDriver.Sample> samples,
+                                         Function<LoadDriver.Sample, Duration> latency) {
+        var millis = samples.stream().map(latency).filter(duration -> !duration.isNegative())
+            .mapToLong(Duration::toMillis).sorted().toArray();
+        System.out.printf(Locale.ROOT, "%-24s", label);
+        for (var percentile : PERCENTILES)
+            System.out.printf(Locale.ROOT, "%10s", millis.length == 0 ? "-" : Long.toString(percentile(millis, percentile)));
+        System.out.println();
+    }
+
+    /**
+     * Nearest-rank percentile of sorted values.
+     */
+    static long percentile(long[] sorted, double percentile) {
+        var rank = (int) Math.ceil(percentile / 100 * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length, rank) - 1)];
+    }
+
+    private static void resetPeakUsage() {
+        for (var pool : ManagementFactory.getMemoryPoolMXBeans())
+            if (pool.getType() == MemoryType.HEAP)
+                pool.resetPeakUsage();
+    }
+
+    /**
+     * Sum of the peak usage of every heap pool since {@link #resetPeakUsage()}; pools peak at different times, so this
+     * is an upper bound.
+     */
+    private static long peakHeapUsage() {
+        return ManagementFactory.getMemoryPoolMXBeans().stream()
+            .filter(pool -> pool.getType() == MemoryType.HEAP)
+            .mapToLong(pool -> pool.getPeakUsage().getUsed())
+            .sum();
+    }
+
+    private static String bytes(long bytes) {
+        if (bytes < 1 << 10)
+            return bytes + " B";
+        if (bytes < 1 << 20)
+            return String.format(Locale.ROOT, "%.1f KiB", bytes / 1024.0);
+        return String.format(Locale.ROOT, "%.1f MiB", bytes / (1024.0 * 1024.0));
+    }
+}
@@ -0,0 +1,107 @@
+package wrptn.scuffedcraft.loadtest;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Locale;
+
+/**
+ * Stand-in for the simc executable, for load tests: prints progress bars for a configurable, randomly jittered amount
+ * of time, then writes an HTML report of a configurable size and simc's {@code json2} output.
+ *
+ * Estimates, whose input file ends up setting a positive {@code target_error}, stop after a fraction of the runtime,
+ * as simc does.
+ *
+ * @param runtime         The mean runtime of a full-precision simulation.
+ * @param jitter          How much runtimes deviate from the mean, as a fraction of it: {@code 0.25} spreads runtimes
+ *                        uniformly between 75% and 125% of the mean.
+ * @param estimateFactor  The runtime of an estimate, as a fraction of the runtime of the full simulation.
+ * @param progressUpdates How many progress bars are printed over the course of a simulation.
+ * @param reportBytes     The size of the HTML report.
+ */
+public record StandInSimc(Duration runtime, double jitter, double estimateFactor, int progressUpdates, int reportBytes) {
+    private static final String JSON2 = """
+        {"version":"stand-in","sim":{"options":{"confidence_estimator":2.0},"players":[{"name":"LoadTest",\
+        "collected_data":{"dps":{"mean":100000.0,"mean_std_dev":50.0}},"stats":[\
+        {"name":"rend","type":"damage","portion_aps":{"mean":40000.0},"portion_amount":0.4},\
+        {"name":"slam","type":"damage","portion_aps":{"mean":60000.0},"portion_amount":0.6}]}]}}\
+        """;
+
+    /**
+     * Simulation parameters, followed by the script itself; the script has no format specifiers of its own.
+     */
+    private static final String PARAMETERS = """
+        #!/bin/sh
+        runtime=%s
+        jitter=%s
+        estimate_factor=%s
+        progress_updates=%d
+        report_bytes=%d
+        json2='%s'
+        """;
+
+    private static final String SCRIPT = """
+        # Every input sets target_error=0 first; estimates override it with a positive value later on.
+        estimate=$(awk -F= '$1 == "target_error" { value = $2 } END { print (value + 0 > 0 ? 1 : 0) }' "$1")
+
+        awk -v seed="$$" -v runtime="$runtime" -v jitter="$jitter" -v estimate="$estimate" \\
+            -v factor="$estimate_factor" -v updates="$progress_updates" 'BEGIN {
+            srand(seed)
+            total = runtime * (1 + jitter * (2 * rand() - 1)) * (estimate ? factor : 1)
+            iterations = estimate ? 1000 : 10000
+            for (i = 1; i <= updates; ++i) {
+                system("sleep " total / updates)
+                filled = int(20 * i / updates)
+                bar = ""
+                for (j = 0; j < 20; ++j) bar = bar (j < filled ? "=" : j == filled ? ">" : ".")
+                printf "Generating Baseline: LoadTest [%s] %d/%d %.2f sec\\n", bar, iterations * i / updates, iterations, total * i / updates
+                fflush()
+            }
+            printf "\\n  DPS=%.1f  DPS-Error=%.1f\\n", 100000 + 1000 * (2 * rand() - 1), estimate ? 1000 : 100
+        }'
+
+        for arg in "$@"; do
+            case "$arg" in
+                html=*)
+                    {
+                        printf '<html><head><style>'
+                        head -c "$report_bytes" /dev/zero | tr '\\0' ' '
+                        printf '</style></head><body><div>stand-in report</div></body></html>\\n'
+                    } > "${arg#html=}" ;;
+                json2=*) echo "$json2" > "${arg#json2=}" ;;
+            esac
+        done
+        echo "Simulation finished."
+        """;
+
+    /**
+     * The shortest runtime of a full-precision simulation.
+     */
+    public Duration minimumRuntime() {
+        return Duration.ofNanos((long) (this.runtime.toNanos() * (1 - this.jitter)));
+    }
+
+    public StandInSimc {
+        if (runtime.isNegative())
+            throw new IllegalArgumentException("The runtime cannot be negative");
+        if (jitter < 0 || jitter > 1)
+            throw new IllegalArgumentException("The jitter must be between 0 and 1");
+        if (progressUpdates < 1)
+            throw new IllegalArgumentException("At least one progress bar must be printed");
+    }
+
+    /**
+     * Writes the script to a directory.
+     *
+     * @return The path of the executable script.
+     */
+    public Path create(Path directory) throws IOException {
+        var script = directory.resolve("stand-in-simc.sh");
+        Files.writeString(script, String.format(Locale.ROOT, PARAMETERS, this.runtime.toMillis() / 1000.0, this.jitter,
+            this.estimateFactor, this.progressUpdates, this.reportBytes, JSON2) + SCRIPT);
+        if (!script.toFile().setExecutable(true))
+            throw new IOException("Cannot make " + script + " executable");
+        return script;
+    }
+}
@@ -0,0 +1,26 @@
+package wrptn.scuffedcraft.controllers;
+
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+import wrptn.scuffedcraft.simulation.Metrics;
+
+/**
+ * Exposes the service's {@link Metrics} to Prometheus.
+ */
+@Controller
+public class MetricsController {
+    private static final String PROMETHEUS_TEXT_FORMAT = "text/plain;version=0.0.4;charset=UTF-8";
+
+    private final Metrics metrics;
+
+    public MetricsController(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @GetMapping(path = "/metrics", produces = PROMETHEUS_TEXT_FORMAT)
+    @ResponseBody
+    public String getMetrics() {
+        return this.metrics.scrape();
+    }
+}
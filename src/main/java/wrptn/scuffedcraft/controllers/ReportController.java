@@ -0,0 +1,94 @@
+package wrptn.scuffedcraft.controllers;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import wrptn.scuffedcraft.simulation.ReportStore;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Serves finished simulation reports straight from disk.
+ */
+@Controller
+@Slf4j
+@RequestMapping(path = "/v2")
+public class ReportController {
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final MediaType TEXT_HTML_UTF8 = MediaType.parseMediaType("text/html;charset=UTF-8");
+
+    private final ReportStore reportStore;
+
+    public ReportController(ReportStore reportStore) {
+        this.reportStore = reportStore;
+    }
+
+    @GetMapping(path = "/report/{reportId}")
+    @ResponseBody
+    public ResponseEntity<Flux<DataBuffer>> getReport(@PathVariable String reportId, ServerWebExchange exchange) {
+        var report = this.reportStore.get(reportId);
+        if (report == null)
+            return ResponseEntity.notFound().build();
+
+        var requestHeaders = exchange.getRequest().getHeaders();
+        var compressed = acceptsGzip(requestHeaders);
+
+        // Each representation needs its own validator.
+        var etag = "\"" + report.etag() + (compressed ? "-gzip" : "") + "\"";
+        var path = compressed ? report.compressedPath() : report.path();
+        var size = compressed ? report.compressedSize() : report.size();
+
+        var responseHeaders = new HttpHeaders();
+        responseHeaders.setETag(etag);
+        responseHeaders.setVary(List.of(HttpHeaders.ACCEPT_ENCODING));
+        responseHeaders.setCacheControl(CacheControl.noCache().cachePrivate());
+
+        if (requestHeaders.getIfNoneMatch().contains(etag))
+            return new ResponseEntity<>(responseHeaders, HttpStatus.NOT_MODIFIED);
+
+        responseHeaders.setContentType(TEXT_HTML_UTF8);
+        responseHeaders.setContentLength(size);
+        if (compressed)
+            responseHeaders.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+
+        var body = DataBufferUtils.readByteChannel(() -> FileChannel.open(path, StandardOpenOption.READ),
+                exchange.getResponse().bufferFactory(), CHUNK_SIZE)
+            .doOnComplete(() -> this.reportStore.delivered(reportId));
+
+        return new ResponseEntity<>(body, responseHeaders, HttpStatus.OK);
+    }
+
+    private static boolean acceptsGzip(HttpHeaders headers) {
+        var acceptEncoding = headers.getFirst(HttpHeaders.ACCEPT_ENCODING);
+        if (acceptEncoding == null)
+            return false;
+
+        return Arrays.stream(acceptEncoding.split(","))
+            .map(String::trim)
+            .anyMatch(coding -> {
+                var parameters = coding.split(";");
+                if (!parameters[0].trim().equalsIgnoreCase("gzip"))
+                    return false;
+
+                // gzip;q=0 explicitly refuses the coding.
+                return Arrays.stream(parameters).skip(1)
+                    .map(String::trim)
+                    .noneMatch(parameter -> parameter.matches("q=0(\\.0*)?"));
+            });
+    }
+}
@@ -1,67 +1,64 @@
 package wrptn.scuffedcraft.controllers;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
-import org.jctools.queues.MpscArrayQueue;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Flux;
 import wrptn.scuffedcraft.models.SimulationInput;
-import wrptn.scuffedcraft.simulation.Ticket;
-
-import java.time.Duration;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
-
+import wrptn.scuffedcraft.simulation.AdmissionControl;
+import wrptn.scuffedcraft.simulation.JobAccounting;
+import wrptn.scuffedcraft.simulation.Metrics;
+import wrptn.scuffedcraft.simulation.ResultCache;
+import wrptn.scuffedcraft.simulation.SimulationService;
+import wrptn.scuffedcraft.simulation.TicketRegistry;
+
+import java.util.HashSet;
+
+import static org.springframework.util.StringUtils.hasText;
+import static wrptn.scuffedcraft.json.Builders.array;
+import static wrptn.scuffedcraft.json.Builders.event;
 import static wrptn.scuffedcraft.json.Builders.object;
 
 @Controller
+@Profile("!worker")
 @Slf4j
 @RequestMapping(path = "/v2")
 public class WebFluxSimulationController {
-    @Value("${simulationcraft.executable.location}")
-    private String executablePath;
-
     private final ObjectMapper objectMapper = new ObjectMapper();
-    private final Map<String, Ticket> simulationTickets = new HashMap<>();
-    private final MpscArrayQueue<Ticket> jobQueue = new MpscArrayQueue<>(64);
-    private final ScheduledExecutorService executorService = Executors.newScheduledThreadPool(  1);
-
-    public WebFluxSimulationController() {
-        this.executorService.scheduleAtFixedRate(() -> {
-            Ticket ticket = this.jobQueue.poll();
-            if (ticket == null)
-                return;
-
-            log.info("Executing {}.", ticket.getInput().getRequestUUID());
-            ticket.submit(this.executablePath);
-        }, 5, 5, TimeUnit.SECONDS);
-    }
-
-    @PreDestroy
-    public void preDestroy() {
-        this.executorService.shutdown(); // Disable new tasks from being submitted
-        try {
-            // Wait a while for existing tasks to terminate
-            if (!this.executorService.awaitTermination(60, TimeUnit.SECONDS)) {
-                this.executorService.shutdownNow(); // Cancel currently executing tasks
-                // Wait a while for tasks to respond to being cancelled
-                if (!this.executorService.awaitTermination(60, TimeUnit.SECONDS))
-                    System.err.println("Pool did not terminate");
-            }
-        } catch (InterruptedException ex) {
-            // (Re-)Cancel if current thread also interrupted
-            this.executorService.shutdownNow();
-            // Preserve interrupt status
-            Thread.currentThread().interrupt();
-        }
+    private final TicketRegistry simulationTickets;
+    private final SimulationService simulationService;
+    private final ResultCache resultCache;
+    private final Metrics metrics;
+    private final AdmissionControl admissionControl;
+    private final JobAccounting accounting;
+
+    /**
+     * Upper bound on the amount of variants in a batch, which all run in a single simc process.
+     */
+    private final int maxVariants;
+
+    public WebFluxSimulationController(TicketRegistry simulationTickets, SimulationService simulationService,
+                                       ResultCache resultCache, Metrics metrics, AdmissionControl admissionControl,
+                                       JobAccounting accounting,
+                                       @Value("${simulationcraft.batch.max-variants:32}") int maxVariants) {
+        this.simulationTickets = simulationTickets;
+        this.simulationService = simulationService;
+        this.resultCache = resultCache;
+        this.metrics = metrics;
+        this.admissionControl = admissionControl;
+        this.accounting = accounting;
+        this.maxVariants = maxVariants;
     }
 
     @GetMapping(path = "/")
@@ -71,44 +68,177 @@ public class WebFluxSimulationController {
         return "simulation";
     }
 
+    /**
+     * Streams the events of a simulation. Clients that reconnect resume after the last event they received, as given by
+     * the standard {@code Last-Event-ID} header.
+     */
     @GetMapping(path = "/simulation-progress/{requestUUID}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
     @ResponseBody
-    public Flux<String> getSimulationProgress(@PathVariable String requestUUID) throws Exception {
+    public Flux<ServerSentEvent<String>> getSimulationProgress(@PathVariable String requestUUID,
+                                                               @RequestHeader(name = "Last-Event-ID", required = false) String lastEventId) {
         var simulationTicket = this.simulationTickets.get(requestUUID);
         if (simulationTicket == null) {
-            var objectNode = object("type", "error")
+            return Flux.just(ServerSentEvent.builder(event("error")
                 .with("message", "Simulation job not found. This is a backend problem; please check back later.")
-                .end();
-            return Flux.just(this.objectMapper.writeValueAsString(objectNode));
+                .end()).build());
         }
 
-        return simulationTicket.getResultsFlux().delaySequence(Duration.ofSeconds(5));
+        return simulationTicket.observe(parseEventId(lastEventId))
+            .map(event -> ServerSentEvent.builder(event.data()).id(Long.toString(event.id())).build())
+            .doOnSubscribe(subscription -> this.metrics.subscriberConnected())
+            .doFinally(signal -> this.metrics.subscriberDisconnected());
+    }
+
+    /**
+     * Reads a {@code Last-Event-ID} header; clients that never received an event, or send garbage, start over.
+     */
+    private static long parseEventId(String lastEventId) {
+        if (!hasText(lastEventId))
+            return 0;
+
+        try {
+            return Math.max(0, Long.parseLong(lastEventId.trim()));
+        } catch (NumberFormatException ex) {
+            return 0;
+        }
+    }
+
+    /**
+     * Cancels a queued or running simulation; its clients receive an error event.
+     */
+    @DeleteMapping(path = "/simulation/{requestUUID}")
+    @ResponseBody
+    public ResponseEntity<String> cancelSimulation(@PathVariable String requestUUID) {
+        if (this.simulationTickets.get(requestUUID) == null)
+            return ResponseEntity.notFound().build();
+
+        return this.simulationService.cancel(requestUUID)
+            ? ResponseEntity.noContent().build()
+            : ResponseEntity.status(HttpStatus.CONFLICT).body(event("error")
+                .with("message", "The simulation already completed.")
+                .end());
+    }
+
+    @GetMapping(path = "/cache-statistics", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public String getCacheStatistics() throws Exception {
+        var objectNode = object()
+            .with("hits", this.resultCache.getHits())
+            .with("misses", this.resultCache.getMisses())
+            .with("coalesced", this.resultCache.getCoalesced())
+            .with("size", this.resultCache.getSize())
+            .end();
+        return this.objectMapper.writeValueAsString(objectNode);
+    }
+
+    /**
+     * Describes the resources used by the latest simulations, by kind of simulation.
+     */
+    @GetMapping(path = "/accounting", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public String getAccounting() throws Exception {
+        var summaries = array();
+        for (var summary : this.accounting.summarize()) {
+            var node = object("fightStyle", summary.key().fightStyle().getDisplayName())
+                .with("scaling", summary.key().scaling())
+                .with("enemies", summary.key().enemies())
+                .with("count", summary.count())
+                .with("meanWallSeconds", (float) summary.meanWallSeconds());
+            if (!Double.isNaN(summary.meanCpuSeconds()))
+                node.with("meanCpuSeconds", (float) summary.meanCpuSeconds());
+            if (summary.peakRssBytes() >= 0)
+                node.with("peakRssBytes", summary.peakRssBytes());
+            if (!Double.isNaN(summary.meanReportBytes()))
+                node.with("meanReportBytes", (float) summary.meanReportBytes());
+            summaries.with(node);
+        }
+        return this.objectMapper.writeValueAsString(summaries.end());
     }
 
     @PostMapping(path = "/")
-    public String executeSimulation(@ModelAttribute SimulationInput input) {
+    public String executeSimulation(@ModelAttribute SimulationInput input, ServerWebExchange exchange, Model model) {
+        var decision = this.admissionControl.tryAdmit(clientOf(exchange), input);
+        if (!decision.admitted()) {
+            reject(exchange.getResponse(), decision);
+            model.addAttribute("admissionError", decision.reason());
+            return "simulation";
+        }
+
         input.setFormSubmit(true);
+        this.submit(input, exchange);
 
-        var queuePosition = this.simulationTickets.size() + 1;
+        return "simulation";
+    }
 
-        var simulationTicket = new Ticket(input, queuePosition);
-        simulationTicket.registerListener(new Ticket.Listener() {
-            @Override
-            public void onBegin() {
-                for (Ticket itr : WebFluxSimulationController.this.simulationTickets.values())
-                    if (simulationTicket != itr)
-                        itr.advance();
-            }
+    /**
+     * Simulates a base profile and its variants in a single simc process, using profilesets. The DPS of every variant
+     * is sent as a {@code profileset} event on the submission's event stream.
+     */
+    @PostMapping(path = "/batch", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public ResponseEntity<String> executeBatch(@RequestBody SimulationInput input, ServerWebExchange exchange) throws Exception {
+        var error = this.validateBatch(input);
+        if (error != null)
+            return ResponseEntity.badRequest().body(event("error").with("message", error).end());
+
+        var decision = this.admissionControl.tryAdmit(clientOf(exchange), input);
+        if (!decision.admitted()) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, Long.toString(decision.retryAfter().toSeconds()))
+                .body(event("error").with("message", decision.reason()).end());
+        }
 
-            @Override
-            public void onCompleted() {
-                WebFluxSimulationController.this.simulationTickets.remove(simulationTicket.getInput().getRequestUUID());
-            }
-        });
+        this.submit(input, exchange);
 
-        if (simulationTicket.trySubmit(this.jobQueue))
-            this.simulationTickets.put(input.getRequestUUID(), simulationTicket);
+        var objectNode = object("requestUUID", input.getRequestUUID())
+            .with("events", "/v2/simulation-progress/" + input.getRequestUUID())
+            .end();
+        return ResponseEntity.accepted().body(this.objectMapper.writeValueAsString(objectNode));
+    }
 
-        return "simulation";
+    /**
+     * Submits an admitted simulation. Its client is refunded if the submission queued nothing of its own: a cached
+     * result was replayed, it was attached to an identical simulation in flight, or it could not be queued.
+     */
+    private void submit(SimulationInput input, ServerWebExchange exchange) {
+        var ticket = this.simulationService.submit(input);
+        if (ticket.getInput() != input || ticket.isCompleted())
+            this.admissionControl.refund(clientOf(exchange), input);
+    }
+
+    /**
+     * Identifies the client of a request for {@link AdmissionControl}.
+     */
+    private static String clientOf(ServerWebExchange exchange) {
+        var address = exchange.getRequest().getRemoteAddress();
+        return address == null || address.getAddress() == null ? "unknown" : address.getAddress().getHostAddress();
+    }
+
+    private static void reject(ServerHttpResponse response, AdmissionControl.Decision decision) {
+        response.setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+        response.getHeaders().set(HttpHeaders.RETRY_AFTER, Long.toString(decision.retryAfter().toSeconds()));
+    }
+
+    private String validateBatch(SimulationInput input) {
+        if (!hasText(input.getProfileString()))
+            return "A base profile is required.";
+        if (input.isEnableScaling())
+            return "Scale factors cannot be computed for batch simulations.";
+
+        var variants = input.getVariants();
+        if (variants == null || variants.isEmpty())
+            return "At least one variant is required.";
+        if (variants.size() > this.maxVariants)
+            return "At most " + this.maxVariants + " variants can be simulated at once.";
+
+        var names = new HashSet<String>();
+        for (var variant : variants) {
+            if (!variant.hasValidName())
+                return "Variant names must be 1 to 64 letters, digits, spaces or punctuation.";
+            if (!names.add(variant.getName()))
+                return "Variant '" + variant.getName() + "' is defined more than once.";
+        }
+
+        return null;
     }
 }
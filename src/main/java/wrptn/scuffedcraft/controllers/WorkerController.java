@@ -0,0 +1,141 @@
+package wrptn.scuffedcraft.controllers;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import wrptn.scuffedcraft.simulation.WorkLeases;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * The coordinator's side of the remote worker protocol; see {@link WorkLeases}.
+ *
+ * Every request must carry the shared worker token as a bearer token. The endpoints are disabled unless a token is
+ * configured.
+ */
+@Controller
+@Profile("!worker")
+@Slf4j
+@RequestMapping(path = "/v2/workers")
+public class WorkerController {
+    private final WorkLeases leases;
+
+    /**
+     * The expected {@code Authorization} header, or an empty array if remote workers are disabled.
+     */
+    private final byte[] authorization;
+    private final Duration pollTimeout;
+
+    public WorkerController(WorkLeases leases,
+                            @Value("${simulationcraft.coordinator.token:}") String token,
+                            @Value("${simulationcraft.coordinator.poll-timeout:PT10S}") Duration pollTimeout) {
+        this.leases = leases;
+        this.authorization = token.isEmpty() ? new byte[0] : ("Bearer " + token).getBytes(StandardCharsets.UTF_8);
+        this.pollTimeout = pollTimeout;
+    }
+
+    /**
+     * Waits for a queued job and leases it to the calling worker.
+     *
+     * @return The job, or {@code 204 No Content} if none was queued before the poll timeout.
+     */
+    @PostMapping(path = "/lease", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public Mono<ResponseEntity<String>> lease(@RequestHeader(name = HttpHeaders.AUTHORIZATION, required = false) String authorization,
+                                              @RequestParam String worker) {
+        var denied = this.checkAuthorization(authorization);
+        if (denied != null)
+            return Mono.just(denied);
+
+        // Waiting for a job blocks; keep it off the event loop.
+        return Mono.fromCallable(() -> this.leases.acquire(worker, this.pollTimeout))
+            .subscribeOn(Schedulers.boundedElastic())
+            .map(lease -> ResponseEntity.ok(this.leases.describe(lease).toString()))
+            .defaultIfEmpty(ResponseEntity.noContent().build());
+    }
+
+    /**
+     * Relays the events of a leased job to its subscribers and renews the lease.
+     *
+     * @return {@code 410 Gone} if the lease expired; the worker should abandon the job.
+     */
+    @PostMapping(path = "/leases/{leaseId}/events", consumes = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public ResponseEntity<String> events(@RequestHeader(name = HttpHeaders.AUTHORIZATION, required = false) String authorization,
+                                         @PathVariable String leaseId,
+                                         @RequestBody List<WorkLeases.RelayedEvent> events) {
+        var denied = this.checkAuthorization(authorization);
+        if (denied != null)
+            return denied;
+
+        return this.leases.renew(leaseId, events) ? ResponseEntity.noContent().build() : gone();
+    }
+
+    /**
+     * Receives the HTML report of a leased job.
+     */
+    @PutMapping(path = "/leases/{leaseId}/report")
+    @ResponseBody
+    public Mono<ResponseEntity<String>> report(@RequestHeader(name = HttpHeaders.AUTHORIZATION, required = false) String authorization,
+                                               @PathVariable String leaseId,
+                                               @RequestBody Flux<DataBuffer> body) {
+        var denied = this.checkAuthorization(authorization);
+        if (denied != null)
+            return Mono.just(denied);
+
+        // Storing the report compresses it, which blocks.
+        return Mono.fromCallable(() -> Files.createTempFile("simc_upload_", ".html"))
+            .subscribeOn(Schedulers.boundedElastic())
+            .flatMap(path -> DataBufferUtils.write(body, path)
+                .then(Mono.fromCallable(() -> this.leases.storeReport(leaseId, path))
+                    .subscribeOn(Schedulers.boundedElastic()))
+                .doFinally(signal -> path.toFile().delete())) // Stored reports have already been moved away.
+            .map(stored -> stored ? ResponseEntity.noContent().<String>build() : gone());
+    }
+
+    /**
+     * Completes a leased job, once all of its events have been relayed.
+     */
+    @PostMapping(path = "/leases/{leaseId}/complete", consumes = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public ResponseEntity<String> complete(@RequestHeader(name = HttpHeaders.AUTHORIZATION, required = false) String authorization,
+                                           @PathVariable String leaseId,
+                                           @RequestBody WorkLeases.Outcome outcome) {
+        var denied = this.checkAuthorization(authorization);
+        if (denied != null)
+            return denied;
+
+        return this.leases.complete(leaseId, outcome) ? ResponseEntity.noContent().build() : gone();
+    }
+
+    /**
+     * Returns the response to send if a request is not allowed, or {@code null}.
+     */
+    private ResponseEntity<String> checkAuthorization(String authorization) {
+        if (this.authorization.length == 0)
+            return ResponseEntity.notFound().build();
+
+        // Compared in constant time, so that the token cannot be guessed one byte at a time.
+        var provided = authorization == null ? new byte[0] : authorization.getBytes(StandardCharsets.UTF_8);
+        return MessageDigest.isEqual(provided, this.authorization) ? null : ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+    }
+
+    private static ResponseEntity<String> gone() {
+        return ResponseEntity.status(HttpStatus.GONE).build();
+    }
+}
@@ -2,6 +2,8 @@ package wrptn.scuffedcraft.json;
 
 import static lombok.AccessLevel.PRIVATE;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
@@ -12,6 +14,12 @@ import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import lombok.val;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+
 /**
  * Convenience {@link JsonNode} builder.
  */
@@ -19,6 +27,31 @@ import lombok.val;
 @NoArgsConstructor(access = PRIVATE)
 public final class Builders {
 
+    /**
+     * Generators of every {@link EventWriter}; root values are written without a separator.
+     */
+    private static final JsonFactory EVENT_FACTORY = new JsonFactory().setRootValueSeparator(null);
+
+    /**
+     * Buffers of an {@link EventWriter} larger than this are not kept around once their event has been written.
+     */
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+    private static final ThreadLocal<EventWriter> EVENT_WRITERS = ThreadLocal.withInitial(EventWriter::new);
+
+    /**
+     * Factory method for an event, a flat JSON object whose first field is its {@code type}.
+     *
+     * Unlike the node builders, fields are written straight to JSON text, through a generator and a buffer that are
+     * reused by every event built on the same thread; only the resulting string is allocated.
+     */
+    public static EventWriter event(@NonNull String type) {
+        var writer = EVENT_WRITERS.get();
+        if (writer.building) // An event is built while computing a field of another one; rare, so not pooled.
+            writer = new EventWriter();
+        return writer.begin(type);
+    }
+
     /**
      * Factory methods for an {@link ObjectNode} builder.
      */
@@ -88,6 +121,175 @@ public final class Builders {
         return new ArrayNodeBuilder(factory);
     }
 
+    /**
+     * Streaming writer of a single event at a time; see {@link #event(String)}.
+     */
+    public final static class EventWriter {
+
+        private final TextBuffer buffer = new TextBuffer();
+        private char[] joined = new char[256];
+        private final JsonGenerator generator;
+        private boolean building = false;
+
+        private EventWriter() {
+            try {
+                this.generator = EVENT_FACTORY.createGenerator(this.buffer);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        private EventWriter begin(String type) {
+            this.building = true;
+            try {
+                this.generator.writeStartObject();
+                this.generator.writeStringField("type", type);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            return this;
+        }
+
+        public EventWriter with(@NonNull String field, int value) {
+            try {
+                this.generator.writeNumberField(field, value);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            return this;
+        }
+
+        public EventWriter with(@NonNull String field, long value) {
+            try {
+                this.generator.writeNumberField(field, value);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            return this;
+        }
+
+        public EventWriter with(@NonNull String field, float value) {
+            try {
+                this.generator.writeNumberField(field, value);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            return this;
+        }
+
+        public EventWriter with(@NonNull String field, boolean value) {
+            try {
+                this.generator.writeBooleanField(field, value);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            return this;
+        }
+
+        public EventWriter with(@NonNull String field, String value) {
+            try {
+                this.generator.writeStringField(field, value);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            return this;
+        }
+
+        /**
+         * Writes lines as a single string field, separated by the given separator; unlike {@link String#join}, the
+         * lines are copied into a buffer that is reused by every event.
+         */
+        public EventWriter with(@NonNull String field, @NonNull List<String> lines, @NonNull String separator) {
+            var length = separator.length() * Math.max(0, lines.size() - 1);
+            for (var line : lines)
+                length += line.length();
+            if (this.joined.length < length || this.joined.length > MAX_RETAINED_CAPACITY)
+                this.joined = new char[Math.max(length, 256)];
+
+            var offset = 0;
+            for (var i = 0; i < lines.size(); ++i) {
+                if (i > 0) {
+                    separator.getChars(0, separator.length(), this.joined, offset);
+                    offset += separator.length();
+                }
+
+                var line = lines.get(i);
+                line.getChars(0, line.length(), this.joined, offset);
+                offset += line.length();
+            }
+
+            try {
+                this.generator.writeFieldName(field);
+                this.generator.writeString(this.joined, 0, length);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            return this;
+        }
+
+        /**
+         * Closes the event and returns its JSON text.
+         */
+        public String end() {
+            try {
+                this.generator.writeEndObject();
+                this.generator.flush();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+
+            var json = this.buffer.toString();
+            this.buffer.reset();
+
+            this.building = false;
+            return json;
+        }
+
+    }
+
+    /**
+     * Unsynchronized replacement of {@link java.io.StringWriter}; the generator writes to it in chunks of its own
+     * buffer, which {@link StringBuffer} would lock and re-encode on every call.
+     */
+    private static final class TextBuffer extends Writer {
+
+        private char[] chars = new char[256];
+        private int length = 0;
+
+        @Override
+        public void write(char[] source, int offset, int count) {
+            if (this.length + count > this.chars.length)
+                this.chars = Arrays.copyOf(this.chars, Math.max(this.chars.length * 2, this.length + count));
+
+            System.arraycopy(source, offset, this.chars, this.length, count);
+            this.length += count;
+        }
+
+        @Override
+        public void write(String source, int offset, int count) {
+            if (this.length + count > this.chars.length)
+                this.chars = Arrays.copyOf(this.chars, Math.max(this.chars.length * 2, this.length + count));
+
+            source.getChars(offset, offset + count, this.chars, this.length);
+            this.length += count;
+        }
+
+        @Override
+        public void flush() { }
+
+        @Override
+        public void close() { }
+
+        void reset() {
+            this.length = 0;
+            if (this.chars.length > MAX_RETAINED_CAPACITY)
+                this.chars = new char[256];
+        }
+
+        @Override
+        public String toString() { return new String(this.chars, 0, this.length); }
+    }
+
     public interface JsonNodeBuilder<T extends JsonNode> {
 
         /**
@@ -136,6 +338,10 @@ public final class Builders {
             return with(field, factory.numberNode(value));
         }
 
+        public ObjectNodeBuilder with(@NonNull String field, long value) {
+            return with(field, factory.numberNode(value));
+        }
+
         public ObjectNodeBuilder with(@NonNull String field, float value) {
             return with(field, factory.numberNode(value));
         }
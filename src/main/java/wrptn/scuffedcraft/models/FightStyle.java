@@ -4,18 +4,25 @@ import lombok.Getter;
 
 @Getter
 public enum FightStyle {
-    Patchwerk("Patchwerk"),
-    HecticAddCleave("HecticAddCleave"),
-    HelterSkelter("HelterSkelter"),
-    Ultraxion("Ultraxion"),
-    LightMovement("LightMovement"),
-    HeavyMovement("HeavyMovement"),
-    BeastLord("BeastLord"),
-    CastingPatchwerk("CastingPatchwerk");
+    Patchwerk("Patchwerk", 1.0),
+    HecticAddCleave("HecticAddCleave", 1.8),
+    HelterSkelter("HelterSkelter", 1.5),
+    Ultraxion("Ultraxion", 1.2),
+    LightMovement("LightMovement", 1.2),
+    HeavyMovement("HeavyMovement", 1.4),
+    BeastLord("BeastLord", 1.8),
+    CastingPatchwerk("CastingPatchwerk", 1.0);
 
     private final String displayName;
 
-    FightStyle(String displayName) {
+    /**
+     * Relative cost of simulating this fight style, Patchwerk being the reference. Movement and add waves make for
+     * more events per iteration.
+     */
+    private final double costWeight;
+
+    FightStyle(String displayName, double costWeight) {
         this.displayName = displayName;
+        this.costWeight = costWeight;
     }
 }
@@ -0,0 +1,236 @@
+package wrptn.scuffedcraft.models;
+
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Filters the lines of a submitted profile down to the ones simc is allowed to see.
+ *
+ * Every line is scanned once, character by character, against precompiled tries of the allowed keys and of the
+ * blocked races; accepted lines are then copied from the submitted profile to their destination as ranges, without
+ * splitting them or allocating intermediate strings.
+ */
+public final class ProfileSanitizer {
+    private static final String[] ALLOWED_KEYS = new String[] {
+        // Classes
+        "priest", "warlock", "shaman", "druid", "warrior", "hunter", "mage", "monk", "demonhunter", "deathknight", "paladin", "rogue",
+        // Item slots
+        "head", "neck", "shoulder", "back", "chest", "wrist", "hands", "waist", "legs", "feet", "finger1", "finger2", "trinket1", "trinket2", "main_hand", "off_hand",
+        // Common tokens
+        "talents", "artifact", "position", "level", "role", "spec", "crucible",
+        // Only allowed for races that are implemented.
+        "race"
+    };
+
+    /**
+     * Allied races, which are not implemented.
+     */
+    private static final String[] BLOCKED_RACES = new String[] {
+        "nightborne", "lightforged_draenei", "highmountain_druid", "mechagnome"
+    };
+
+    private static final Trie KEYS = new Trie(ALLOWED_KEYS);
+    private static final Trie RACES = new Trie(BLOCKED_RACES);
+    private static final int RACE = KEYS.find("race");
+
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    /**
+     * Receives a line of the profile, as the range {@code [start, end)} of the submitted text.
+     */
+    @FunctionalInterface
+    public interface LineConsumer {
+        void accept(int lineNumber, String profile, int start, int end) throws IOException;
+    }
+
+    /**
+     * A line that was discarded, for display to the user.
+     *
+     * @param number The 1-based number of the line in the submitted profile.
+     */
+    public record RejectedLine(int number, String text) { }
+
+    private ProfileSanitizer() { }
+
+    /**
+     * Writes the accepted lines of a profile, each followed by a line separator.
+     *
+     * @param rejected Receives every line that was discarded, except for blank lines and comments.
+     */
+    public static void write(@NonNull String profile, @NonNull Writer destination, @NonNull LineConsumer rejected)
+        throws IOException {
+        scan(profile, (lineNumber, text, start, end) -> {
+            destination.write(text, start, end - start);
+            destination.write(LINE_SEPARATOR);
+        }, rejected);
+    }
+
+    /**
+     * Sorts the lines of a profile.
+     *
+     * @param accepted Receives every line simc may see.
+     * @param rejected Receives every line that was discarded, except for blank lines and comments.
+     */
+    public static void scan(@NonNull String profile, @NonNull LineConsumer accepted, @NonNull LineConsumer rejected)
+        throws IOException {
+        var length = profile.length();
+        var position = 0;
+        var lineNumber = 0;
+        while (position < length) {
+            ++lineNumber;
+
+            var start = position;
+            if (profile.charAt(start) == '#') {
+                // Comments make up most of an addon export; skip them without matching anything.
+                position = skipLine(profile, position);
+                continue;
+            }
+
+            var key = Trie.ROOT;
+            var separator = -1;
+            var race = Trie.ROOT;
+            var raceEnded = false;
+            var hasValue = false;
+
+            char character;
+            while (position < length && (character = profile.charAt(position)) != '\n' && character != '\r') {
+                if (separator < 0) {
+                    if (character == '=')
+                        separator = position;
+                    else
+                        key = KEYS.step(key, character);
+                } else if (character != '=') {
+                    hasValue = true;
+                    if (!raceEnded && key == RACE)
+                        race = RACES.step(race, character);
+                } else {
+                    raceEnded = true;
+                }
+
+                ++position;
+            }
+
+            var end = position;
+            position = skipTerminator(profile, position);
+
+            if (end == start) // Strip blank lines
+                continue;
+
+            // The line must have a value, and its key must be allowed.
+            var allowed = hasValue && KEYS.accepts(key) && (key != RACE || !RACES.accepts(race));
+            if (allowed)
+                accepted.accept(lineNumber, profile, start, end);
+            else if (!isBlank(profile, start, end))
+                rejected.accept(lineNumber, profile, start, end);
+        }
+    }
+
+    /**
+     * Whether the range {@code [start, end)} holds nothing but whitespace; only called for discarded lines.
+     */
+    private static boolean isBlank(String profile, int start, int end) {
+        for (var i = start; i < end; ++i)
+            if (!Character.isWhitespace(profile.charAt(i)))
+                return false;
+        return true;
+    }
+
+    /**
+     * Returns the start of the line following the one that contains {@code position}.
+     */
+    private static int skipLine(String profile, int position) {
+        var length = profile.length();
+        while (position < length) {
+            var character = profile.charAt(position);
+            if (character == '\n' || character == '\r')
+                break;
+            ++position;
+        }
+        return skipTerminator(profile, position);
+    }
+
+    /**
+     * Skips the line terminator at {@code position}, if any: {@code \n}, {@code \r} or {@code \r\n}.
+     */
+    private static int skipTerminator(String profile, int position) {
+        var length = profile.length();
+        if (position >= length)
+            return position;
+
+        if (profile.charAt(position++) == '\r' && position < length && profile.charAt(position) == '\n')
+            ++position;
+        return position;
+    }
+
+    /**
+     * Trie over lowercase letters, digits and underscores, stored as a flat transition table.
+     */
+    private static final class Trie {
+        private static final int ROOT = 0;
+        private static final int NONE = -1;
+        private static final int ALPHABET = 26 + 10 + 1;
+
+        private int[] transitions = new int[ALPHABET * 16];
+        private boolean[] terminal = new boolean[16];
+        private int size = 1;
+
+        private Trie(String... words) {
+            Arrays.fill(this.transitions, NONE);
+            for (var word : words) {
+                var node = ROOT;
+                for (var i = 0; i < word.length(); ++i) {
+                    var slot = node * ALPHABET + indexOf(word.charAt(i));
+                    if (this.transitions[slot] == NONE) {
+                        var child = this.newNode(); // May grow the table
+                        this.transitions[slot] = child;
+                    }
+                    node = this.transitions[slot];
+                }
+                this.terminal[node] = true;
+            }
+        }
+
+        private int newNode() {
+            if (this.size == this.terminal.length) {
+                var capacity = this.size * 2;
+                this.terminal = Arrays.copyOf(this.terminal, capacity);
+                this.transitions = Arrays.copyOf(this.transitions, capacity * ALPHABET);
+                Arrays.fill(this.transitions, this.size * ALPHABET, this.transitions.length, NONE);
+            }
+            return this.size++;
+        }
+
+        /**
+         * Follows the transition of a character, returning {@link #NONE} once no word can match anymore.
+         */
+        private int step(int node, char character) {
+            if (node == NONE)
+                return NONE;
+
+            var index = indexOf(character);
+            return index == NONE ? NONE : this.transitions[node * ALPHABET + index];
+        }
+
+        private boolean accepts(int node) {
+            return node != NONE && this.terminal[node];
+        }
+
+        private int find(String word) {
+            var node = ROOT;
+            for (var i = 0; i < word.length(); ++i)
+                node = this.step(node, word.charAt(i));
+            return node;
+        }
+
+        private static int indexOf(char character) {
+            if (character >= 'a' && character <= 'z')
+                return character - 'a';
+            if (character >= '0' && character <= '9')
+                return 26 + character - '0';
+            return character == '_' ? 36 : NONE;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package wrptn.scuffedcraft.models;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.regex.Pattern;
+
+/**
+ * A variant of a submitted profile, simulated by simc as a profileset alongside the base profile.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+public class ProfileVariant {
+    /**
+     * Names are written between quotes in simc's input, and echoed back with the variant's DPS.
+     */
+    private static final Pattern NAME = Pattern.compile("[A-Za-z0-9 _+.,()'-]{1,64}");
+
+    private static final ProfileSanitizer.LineConsumer IGNORE = (lineNumber, profile, start, end) -> { };
+
+    private String name;
+
+    /**
+     * Profile lines that replace the base profile's, such as {@code trinket1=,id=...}. Sanitized like the profile.
+     */
+    private String overrides;
+
+    public ProfileVariant(String name, String overrides) {
+        this.name = name;
+        this.overrides = overrides;
+    }
+
+    public boolean hasValidName() {
+        return this.name != null && !this.name.isBlank() && NAME.matcher(this.name).matches();
+    }
+
+    /**
+     * Writes the sanitized overrides as {@code profileset."name"+=line} options.
+     */
+    public void writeProfileset(Writer writer) throws IOException {
+        var prefix = "profileset.\"" + this.name + "\"+=";
+        ProfileSanitizer.scan(this.overrides == null ? "" : this.overrides, (lineNumber, profile, start, end) -> {
+            writer.write(prefix);
+            writer.write(profile, start, end - start);
+            writer.write(System.lineSeparator());
+        }, IGNORE);
+    }
+}
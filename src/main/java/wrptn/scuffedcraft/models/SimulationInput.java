@@ -3,8 +3,11 @@ package wrptn.scuffedcraft.models;
 import lombok.Getter;
 import lombok.Setter;
 
-import java.util.Arrays;
-import java.util.Objects;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 import java.util.stream.Stream;
 
@@ -27,51 +30,74 @@ public class SimulationInput {
 
     private String profileString;
 
-    private final String requestUUID = UUID.randomUUID().toString();
+    private final String requestUUID;
 
     private boolean isFormSubmit = false;
 
-    private static String[] ALLOWED_TOKENS = new String[] {
-        // Classes
-        "priest", "warlock", "shaman", "druid", "warrior", "hunter", "mage", "monk", "demonhunter", "deathknight", "paladin", "rogue",
-        // Item slots
-        "head", "neck", "shoulder", "back", "chest", "wrist", "hands", "waist", "legs", "feet", "finger1", "finger2", "trinket1", "trinket2", "main_hand", "off_hand",
-        // Common tokens
-        "talents", "artifact", "position", "level", "role", "spec", "crucible"
-    };
+    /**
+     * Variants simulated as profilesets of the same simc process; empty for a single simulation.
+     */
+    private List<ProfileVariant> variants = new ArrayList<>();
+
+    private static final ProfileSanitizer.LineConsumer IGNORE = (lineNumber, profile, start, end) -> { };
+
+    public SimulationInput() {
+        this(UUID.randomUUID().toString());
+    }
+
+    /**
+     * Recreates a submission under its original identifier, for instance when restoring it from the job journal.
+     */
+    public SimulationInput(String requestUUID) {
+        this.requestUUID = requestUUID;
+    }
 
     /**
      * Returns a sanitized profile.
      */
     public Stream<String> getProfile() {
-        return this.profileString.lines().filter(line -> {
-            if (line.isEmpty())
-                return false;
-
-            if (line.charAt(0) == '#') // Strip comments
-                return false;
-
-            var tokens = line.split("=");
-            if (tokens.length < 2)
-                return false;
-
-            if (Arrays.stream(ALLOWED_TOKENS).noneMatch(token -> Objects.equals(token, tokens[0]))) {
-                switch (tokens[0]) {
-                    case "race" -> {
-                        // Explicitely block allied races, they are not implemented.
-                        return switch (tokens[1]) {
-                            case "nightborne", "lightforged_draenei", "highmountain_druid", "mechagnome" -> false;
-                            default -> true;
-                        };
-
-                    }
-                    default -> {
-                        return false;
-                    }
-                }
-            }
-
-            return true;
-        });
+        var lines = new ArrayList<String>();
+        this.scanProfile((lineNumber, profile, start, end) -> lines.add(profile.substring(start, end)), IGNORE);
+        return lines.stream();
+    }
+
+    /**
+     * Writes the sanitized profile, one line at a time, straight from the submitted text.
+     */
+    public void writeProfile(Writer writer) throws IOException {
+        ProfileSanitizer.write(this.profileText(), writer, IGNORE);
+    }
+
+    /**
+     * Writes every variant as a profileset, after the profile they override.
+     */
+    public void writeVariants(Writer writer) throws IOException {
+        for (var variant : this.variants)
+            variant.writeProfileset(writer);
+    }
+
+    /**
+     * Returns the lines of the profile that are discarded by {@link #getProfile()}, excluding blank lines and comments.
+     */
+    public List<ProfileSanitizer.RejectedLine> getRejectedLines() {
+        var lines = new ArrayList<ProfileSanitizer.RejectedLine>();
+        this.scanProfile(IGNORE, (lineNumber, profile, start, end) ->
+            lines.add(new ProfileSanitizer.RejectedLine(lineNumber, profile.substring(start, end))));
+        return lines;
+    }
+
+    /**
+     * The submitted profile; a form submitted without one has none, which is an empty profile.
+     */
+    private String profileText() {
+        return this.profileString == null ? "" : this.profileString;
+    }
+
+    private void scanProfile(ProfileSanitizer.LineConsumer accepted, ProfileSanitizer.LineConsumer rejected) {
+        try {
+            ProfileSanitizer.scan(this.profileText(), accepted, rejected);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
     }
 }
@@ -0,0 +1,201 @@
+package wrptn.scuffedcraft.simulation;
+
+import lombok.NonNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import wrptn.scuffedcraft.models.SimulationInput;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Decides whether a submission may enter the job queue, so that a single client cannot fill it.
+ *
+ * Every client owns a token bucket holding up to {@code capacity} seconds of estimated simulation time, refilled at a
+ * constant rate. A submission takes as many tokens as the {@link CostModel} expects it to run, so a scale factor run
+ * costs as much as the eight simulations it is made of. Submissions are also turned away while the queue is full.
+ * Rejected clients are told when to retry: once their bucket holds enough tokens, or once the queue is expected to
+ * have drained enough, at the rate tickets were recently dispatched. Submissions that turn out to queue nothing, such
+ * as those served from the {@link ResultCache}, are refunded.
+ *
+ * Clients are told apart by their address; behind a reverse proxy, {@code server.forward-headers-strategy} must be
+ * set for that address to be the client's.
+ */
+@Component
+public class AdmissionControl {
+    /**
+     * How long to tell clients to wait for the queue to drain while nothing has been dispatched recently.
+     */
+    private static final Duration DEFAULT_RETRY_DELAY = Duration.ofSeconds(30);
+
+    private static final Duration MAX_RETRY_DELAY = Duration.ofMinutes(10);
+
+    /**
+     * Weight of the latest sample in the moving average of the drain rate.
+     */
+    private static final double SMOOTHING = 0.3;
+
+    private static final long SWEEP_INTERVAL = TimeUnit.MINUTES.toNanos(1);
+
+    private final CostModel costModel;
+    private final JobScheduler scheduler;
+    private final Metrics metrics;
+    private final double capacity;
+    private final double refillPerSecond;
+    private final LongSupplier nanoTime;
+
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    /**
+     * Tickets dispatched per second, as a moving average; guarded by the admission control, as are the following
+     * fields.
+     */
+    private double drainRate = 0;
+    private long lastDispatchedCount;
+    private long lastDrainSample;
+    private long lastSweep;
+
+    /**
+     * @param retryAfter How long the client should wait before submitting again, if it was rejected.
+     * @param reason     Why the client was rejected, meant for humans.
+     */
+    public record Decision(boolean admitted, Duration retryAfter, String reason) {
+        private static final Decision ADMITTED = new Decision(true, Duration.ZERO, null);
+    }
+
+    /**
+     * Tokens of a client, in seconds of estimated simulation time.
+     */
+    private static final class Bucket {
+        private double tokens;
+        private long updatedAt;
+
+        private Bucket(double tokens, long updatedAt) {
+            this.tokens = tokens;
+            this.updatedAt = updatedAt;
+        }
+    }
+
+    @Autowired
+    public AdmissionControl(CostModel costModel, JobScheduler scheduler, Metrics metrics,
+                            @Value("${simulationcraft.admission.capacity:300}") double capacity,
+                            @Value("${simulationcraft.admission.refill-rate:1.0}") double refillPerSecond) {
+        this(costModel, scheduler, metrics, capacity, refillPerSecond, System::nanoTime);
+    }
+
+    public AdmissionControl(@NonNull CostModel costModel, @NonNull JobScheduler scheduler, @NonNull Metrics metrics,
+                            double capacity, double refillPerSecond, @NonNull LongSupplier nanoTime) {
+        if (capacity <= 0 || refillPerSecond <= 0)
+            throw new IllegalArgumentException("The capacity and refill rate of client buckets must be positive");
+
+        this.costModel = costModel;
+        this.scheduler = scheduler;
+        this.metrics = metrics;
+        this.capacity = capacity;
+        this.refillPerSecond = refillPerSecond;
+        this.nanoTime = nanoTime;
+
+        var now = nanoTime.getAsLong();
+        this.lastDrainSample = now;
+        this.lastSweep = now;
+        this.lastDispatchedCount = scheduler.getDispatchedCount();
+    }
+
+    /**
+     * Takes the tokens a submission costs from its client's bucket, unless it cannot be queued.
+     *
+     * @param clientId Identifies the client, such as its address.
+     */
+    public Decision tryAdmit(@NonNull String clientId, @NonNull SimulationInput input) {
+        var now = this.nanoTime.getAsLong();
+        this.sweep(now);
+
+        var drainRate = this.sampleDrainRate(now);
+        var excess = this.scheduler.size() - this.scheduler.getCapacity() + 1;
+        if (excess > 0) {
+            this.metrics.recordRejection();
+            return new Decision(false, drainRate > 0 ? seconds(excess / drainRate) : DEFAULT_RETRY_DELAY,
+                "The job queue is full. Please check back later.");
+        }
+
+        // A job larger than a full bucket is admitted whenever the bucket is full.
+        var cost = Math.min(this.capacity, this.costModel.estimate(input));
+        var bucket = this.buckets.computeIfAbsent(clientId, key -> new Bucket(this.capacity, now));
+        synchronized (bucket) {
+            this.refill(bucket, now);
+            if (bucket.tokens >= cost) {
+                bucket.tokens -= cost;
+                return Decision.ADMITTED;
+            }
+
+            this.metrics.recordThrottling();
+            return new Decision(false, seconds((cost - bucket.tokens) / this.refillPerSecond),
+                "You submitted too many simulations recently. Please wait before submitting another one.");
+        }
+    }
+
+    /**
+     * Gives back the tokens an admitted submission took, once it turned out not to queue a simulation of its own: its
+     * results were cached, or an identical simulation was already queued or running.
+     */
+    public void refund(@NonNull String clientId, @NonNull SimulationInput input) {
+        var bucket = this.buckets.get(clientId);
+        if (bucket == null)
+            return;
+
+        var cost = Math.min(this.capacity, this.costModel.estimate(input));
+        synchronized (bucket) {
+            this.refill(bucket, this.nanoTime.getAsLong());
+            bucket.tokens = Math.min(this.capacity, bucket.tokens + cost);
+        }
+    }
+
+    private void refill(Bucket bucket, long now) {
+        var elapsed = (now - bucket.updatedAt) / 1e9;
+        bucket.tokens = Math.min(this.capacity, bucket.tokens + elapsed * this.refillPerSecond);
+        bucket.updatedAt = now;
+    }
+
+    /**
+     * Updates the moving average of the drain rate, at most once per second, and returns it.
+     */
+    private synchronized double sampleDrainRate(long now) {
+        var elapsed = now - this.lastDrainSample;
+        if (elapsed < TimeUnit.SECONDS.toNanos(1))
+            return this.drainRate;
+
+        var dispatchedCount = this.scheduler.getDispatchedCount();
+        var rate = (dispatchedCount - this.lastDispatchedCount) / (elapsed / 1e9);
+        this.drainRate += SMOOTHING * (rate - this.drainRate);
+        this.lastDispatchedCount = dispatchedCount;
+        this.lastDrainSample = now;
+        return this.drainRate;
+    }
+
+    /**
+     * Forgets the buckets that are full again; their clients are treated as new ones.
+     */
+    private void sweep(long now) {
+        synchronized (this) {
+            if (now - this.lastSweep < SWEEP_INTERVAL)
+                return;
+            this.lastSweep = now;
+        }
+
+        this.buckets.values().removeIf(bucket -> {
+            synchronized (bucket) {
+                this.refill(bucket, now);
+                return bucket.tokens >= this.capacity;
+            }
+        });
+    }
+
+    private static Duration seconds(double seconds) {
+        var delay = Duration.ofSeconds((long) Math.ceil(Math.max(1, seconds)));
+        return delay.compareTo(MAX_RETRY_DELAY) > 0 ? MAX_RETRY_DELAY : delay;
+    }
+}
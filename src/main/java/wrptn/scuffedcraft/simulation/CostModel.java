@@ -0,0 +1,76 @@
+package wrptn.scuffedcraft.simulation;
+
+import lombok.NonNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import wrptn.scuffedcraft.models.SimulationInput;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Estimates how long simc will run for a given submission.
+ *
+ * The prior estimate is derived from the options of the submission. Observed runtimes feed a moving average of the
+ * ratio between actual and prior runtimes for each fight style and scaling setting, which corrects later estimates.
+ */
+@Component
+public class CostModel {
+    /**
+     * Stats simulated on top of the baseline when scale factors are requested.
+     */
+    private static final int SCALED_STATS = 7;
+
+    /**
+     * Weight of the latest observation in the moving average.
+     */
+    private static final double SMOOTHING = 0.2;
+
+    private final double baseSeconds;
+    private final Map<String, Double> corrections = new ConcurrentHashMap<>();
+
+    @Autowired
+    public CostModel(@Value("${simulationcraft.scheduler.base-cost:20}") double baseSeconds) {
+        this.baseSeconds = baseSeconds;
+    }
+
+    /**
+     * Returns the expected runtime of a submission, in seconds.
+     */
+    public double estimate(@NonNull SimulationInput input) {
+        return this.prior(input) * this.corrections.getOrDefault(bucketOf(input), 1.0);
+    }
+
+    /**
+     * Records the runtime of a simulation that ran to completion.
+     */
+    public void record(@NonNull SimulationInput input, @NonNull Duration runtime) {
+        var ratio = runtime.toNanos() / 1.0e9 / this.prior(input);
+        this.corrections.merge(bucketOf(input), ratio, (previous, latest) -> previous + SMOOTHING * (latest - previous));
+    }
+
+    private double prior(SimulationInput input) {
+        var cost = this.baseSeconds * input.getFightType().getCostWeight();
+
+        // Every additional target adds actors and AoE events.
+        cost *= 1.0 + 0.25 * Math.max(0, input.getNumberOfEnemies() - 1);
+
+        // Longer profiles mean more gear and action list to parse and evaluate.
+        var profileLength = input.getProfileString() == null ? 0 : input.getProfileString().length();
+        cost *= 1.0 + profileLength / 20_000.0;
+
+        if (input.isEnableScaling())
+            cost *= 1 + SCALED_STATS;
+
+        // Profilesets share the process, but every variant is simulated as long as the base profile.
+        cost *= 1 + input.getVariants().size();
+
+        return cost;
+    }
+
+    private static String bucketOf(SimulationInput input) {
+        return input.getFightType().name() + (input.isEnableScaling() ? ":scaling" : "");
+    }
+}
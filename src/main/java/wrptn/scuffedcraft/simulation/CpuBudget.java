@@ -0,0 +1,117 @@
+package wrptn.scuffedcraft.simulation;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Shares the host's cores between concurrently running simulations.
+ *
+ * A job is given {@code cores / expectedConcurrency} threads when it starts, where the expected concurrency is the
+ * amount of running jobs plus the amount of queued jobs that will soon occupy the other workers. An empty queue
+ * therefore gives a job the whole machine, and a deep one splits it evenly between workers. Optionally, jobs are
+ * pinned to disjoint sets of CPUs through {@code taskset}.
+ */
+@Component
+public class CpuBudget {
+    @Getter
+    private final int cores;
+    private final int workerCount;
+    private final boolean pinning;
+    private final String tasksetPath;
+
+    private final BitSet usedCpus = new BitSet();
+    private int runningJobs = 0;
+
+    /**
+     * Resources granted to a single simulation.
+     *
+     * @param threads The value to pass to simc's {@code threads=} option.
+     * @param cpus    The CPUs the process is pinned to, or an empty set if it is not pinned.
+     */
+    public record Allocation(int threads, BitSet cpus) {
+        /**
+         * Formats the CPU set as a {@code taskset} CPU list, such as {@code 0-3,6}.
+         */
+        public String cpuList() {
+            var builder = new StringBuilder();
+            for (var cpu = this.cpus.nextSetBit(0); cpu >= 0; cpu = this.cpus.nextSetBit(cpu + 1)) {
+                var last = this.cpus.nextClearBit(cpu) - 1;
+                if (!builder.isEmpty())
+                    builder.append(',');
+                builder.append(cpu);
+                if (last > cpu)
+                    builder.append('-').append(last);
+                cpu = last;
+            }
+            return builder.toString();
+        }
+    }
+
+    public CpuBudget(@Value("${simulationcraft.cpu.cores:0}") int cores,
+                     @Value("${simulationcraft.dispatcher.workers:1}") int workerCount,
+                     @Value("${simulationcraft.cpu.pinning:false}") boolean pinning,
+                     @Value("${simulationcraft.cpu.taskset:taskset}") String tasksetPath) {
+        this.cores = cores > 0 ? cores : Runtime.getRuntime().availableProcessors();
+        this.workerCount = Math.max(1, workerCount);
+        this.pinning = pinning;
+        this.tasksetPath = tasksetPath;
+    }
+
+    /**
+     * Reserves resources for a job about to start.
+     *
+     * @param queueDepth The amount of jobs still waiting for a worker.
+     */
+    public synchronized Allocation acquire(int queueDepth) {
+        ++this.runningJobs;
+
+        var expectedConcurrency = Math.min(this.workerCount, this.runningJobs + queueDepth);
+        var threads = Math.max(1, this.cores / Math.max(1, expectedConcurrency));
+
+        var cpus = new BitSet();
+        if (this.pinning) {
+            // Jobs that started on an idle machine may hold every CPU; the newcomer then runs unpinned.
+            for (var cpu = this.usedCpus.nextClearBit(0); cpu < this.cores && cpus.cardinality() < threads;
+                 cpu = this.usedCpus.nextClearBit(cpu + 1))
+                cpus.set(cpu);
+
+            this.usedCpus.or(cpus);
+            if (!cpus.isEmpty())
+                threads = cpus.cardinality();
+        }
+
+        return new Allocation(threads, cpus);
+    }
+
+    /**
+     * The amount of threads a job gets when every worker is busy.
+     */
+    public int getFairShare() {
+        return Math.max(1, this.cores / this.workerCount);
+    }
+
+    public synchronized void release(Allocation allocation) {
+        --this.runningJobs;
+        this.usedCpus.andNot(allocation.cpus());
+    }
+
+    /**
+     * Prepends the commands needed to apply an allocation to the command line of a simc process.
+     */
+    public List<String> wrap(Allocation allocation, List<String> command) {
+        if (allocation.cpus().isEmpty())
+            return command;
+
+        var wrapped = new ArrayList<String>(command.size() + 3);
+        wrapped.add(this.tasksetPath);
+        wrapped.add("-c");
+        wrapped.add(allocation.cpuList());
+        wrapped.addAll(command);
+        return wrapped;
+    }
+}
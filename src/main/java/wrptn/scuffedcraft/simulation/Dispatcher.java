@@ -0,0 +1,288 @@
+package wrptn.scuffedcraft.simulation;
+
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs queued {@link Ticket}s on a fixed amount of workers.
+ *
+ * A single thread waits for a free worker, then blocks on the {@link JobScheduler}, so an idle worker picks a job up
+ * as soon as it is submitted, cheapest expected job first. Running simulations are supervised by the
+ * {@link ProcessSupervisor} and hold no thread. There may be no workers at all when every job is leased to remote
+ * workers; see {@link WorkLeases}.
+ */
+@Slf4j
+@Component
+@Profile("!worker")
+@DependsOn("jobJournal") // Jobs completing while shutting down are still journaled.
+public class Dispatcher {
+    private final String executablePath;
+    private final ReportStore reportStore;
+    private final TicketRegistry ticketRegistry;
+    private final JobScheduler scheduler;
+    private final CostModel costModel;
+    private final CpuBudget cpuBudget;
+    private final Metrics metrics;
+    private final ProcessSupervisor supervisor;
+    private final JobDirectories directories;
+    private final JobAccounting accounting;
+    private final boolean splitScaling;
+    private final int scalingDelta;
+
+    /**
+     * The {@code target_error} of the estimates sent ahead of plain simulations, or {@code 0} to send none.
+     */
+    private final double estimateTargetError;
+
+    private final Thread dispatcherThread;
+
+    /**
+     * One permit per idle worker.
+     */
+    private final Semaphore idleWorkers;
+
+    private final Set<Ticket> runningTickets = ConcurrentHashMap.newKeySet();
+
+    @Getter
+    private final int workerCount;
+
+    private volatile boolean running = true;
+
+    private final AtomicInteger busyWorkers = new AtomicInteger();
+
+    public Dispatcher(@Value("${simulationcraft.executable.location}") String executablePath,
+                      @Value("${simulationcraft.dispatcher.workers:1}") int workerCount,
+                      ReportStore reportStore, TicketRegistry ticketRegistry, JobScheduler scheduler,
+                      CostModel costModel, CpuBudget cpuBudget, Metrics metrics, ProcessSupervisor supervisor,
+                      JobDirectories directories, JobAccounting accounting,
+                      @Value("${simulationcraft.scaling.split:true}") boolean splitScaling,
+                      @Value("${simulationcraft.scaling.delta:1000}") int scalingDelta,
+                      @Value("${simulationcraft.progressive.target-error:0}") double estimateTargetError) {
+        if (workerCount < 0)
+            throw new IllegalArgumentException("The amount of workers cannot be negative");
+
+        this.executablePath = executablePath;
+        this.reportStore = reportStore;
+        this.ticketRegistry = ticketRegistry;
+        this.scheduler = scheduler;
+        this.costModel = costModel;
+        this.cpuBudget = cpuBudget;
+        this.metrics = metrics;
+        this.supervisor = supervisor;
+        this.directories = directories;
+        this.accounting = accounting;
+        this.splitScaling = splitScaling;
+        this.scalingDelta = scalingDelta;
+        this.estimateTargetError = estimateTargetError;
+        this.workerCount = workerCount;
+
+        this.idleWorkers = new Semaphore(workerCount);
+
+        metrics.registerGauge("scuffedcraft_queue_depth", "Jobs waiting for a worker.", scheduler::size);
+        metrics.registerGauge("scuffedcraft_workers_busy", "Workers running a simulation.", this.busyWorkers::get);
+
+        // Without local workers, remote workers run one simulation at a time, at least.
+        ticketRegistry.setForecaster(queued -> accounting.forecast(this.runningTickets, queued,
+            Math.max(1, workerCount), Instant.now()));
+
+        this.dispatcherThread = new Thread(this::dispatch, "simc-dispatcher");
+        this.dispatcherThread.setDaemon(true);
+        if (workerCount > 0)
+            this.dispatcherThread.start();
+    }
+
+    /**
+     * Enqueues a ticket and wakes up an idle worker. Scale factor calculations are split into one simulation per stat
+     * if enabled, and plain simulations are preceded by an estimate if enabled; those are queued in its place.
+     *
+     * @return {@code false} if the dispatcher is shutting down or the queue is full; the ticket has been notified.
+     */
+    public boolean trySubmit(Ticket ticket) {
+        if (this.splitScaling && ticket.getInput().isEnableScaling())
+            return new ScaleFactorJob(ticket, this.scalingDelta).submit(this::trySubmit, this.scheduler);
+
+        if (this.estimateTargetError > 0 && ProgressiveJob.accepts(ticket))
+            return new ProgressiveJob(ticket, this.estimateTargetError).submit(this::enqueue);
+
+        return this.enqueue(ticket);
+    }
+
+    private boolean enqueue(Ticket ticket) {
+        if (!this.running) {
+            ticket.markInterrupted();
+            ticket.emitThrowable(new Exception("The server is shutting down. Please check back later."));
+            return false;
+        }
+
+        var estimatedSeconds = this.costModel.estimate(ticket.getInput());
+        ticket.setSequence(this.ticketRegistry.nextSequence());
+        ticket.setEstimatedSeconds(ticket.isPreliminary() ? estimatedSeconds * ProgressiveJob.ESTIMATE_COST
+            : estimatedSeconds);
+        ticket.setEnqueuedAt(System.nanoTime());
+        if (!ticket.trySubmit(this.scheduler)) {
+            this.metrics.recordRejection();
+            return false;
+        }
+
+        ticket.updateQueuePosition(this.scheduler.positionOf(ticket));
+        return true;
+    }
+
+    /**
+     * Cancels a ticket: it is withdrawn from the queue, or its simc process is killed. Tickets leased to remote
+     * workers are failed by {@link WorkLeases} shortly after.
+     *
+     * @return {@code false} if the ticket already completed or was cancelled.
+     */
+    public boolean cancel(@NonNull Ticket ticket, @NonNull String reason) {
+        if (!ticket.markCancelled(reason))
+            return false;
+
+        var parts = ticket.getParts();
+        if (!parts.isEmpty()) {
+            // The parts fail the ticket they work for.
+            for (var part : parts)
+                this.cancel(part, reason);
+            return true;
+        }
+
+        // Whatever the estimate says the rest of the simulation would have cost.
+        var threads = ticket.getThreads() > 0 ? ticket.getThreads() : this.cpuBudget.getFairShare();
+        var remainingSeconds = ticket.getEstimatedSeconds() - ticket.getRunningNanos() / 1e9;
+        this.metrics.recordCancellation(Math.max(0, remainingSeconds) * threads);
+
+        log.info("Cancelling {}: {}", ticket.getInput().getRequestUUID(), reason);
+        if (this.scheduler.remove(ticket))
+            ticket.fail(ticket.cancellation());
+        else
+            ticket.kill();
+        return true;
+    }
+
+    /**
+     * Returns the amount of tickets waiting for a worker.
+     */
+    public int getQueueDepth() {
+        return this.scheduler.size();
+    }
+
+    private void dispatch() {
+        while (this.running) {
+            Ticket ticket;
+            try {
+                this.idleWorkers.acquire();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            try {
+                ticket = this.scheduler.take();
+            } catch (InterruptedException ex) {
+                this.idleWorkers.release();
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            if (ticket == null) {
+                this.idleWorkers.release();
+                return;
+            }
+
+            var start = System.nanoTime();
+            this.metrics.recordQueueWait(start - ticket.getEnqueuedAt());
+            this.busyWorkers.incrementAndGet();
+            this.runningTickets.add(ticket);
+
+            var allocation = this.cpuBudget.acquire(this.scheduler.size());
+            log.info("Executing {} on {} threads, expected to take {} seconds.", ticket.getInput().getRequestUUID(),
+                allocation.threads(), Math.round(ticket.getEstimatedSeconds()));
+
+            ticket.execute(this.executablePath, this.reportStore, this.cpuBudget, allocation, this.supervisor,
+                    this.directories)
+                .doFinally(signal -> {
+                    this.cpuBudget.release(allocation);
+                    this.runningTickets.remove(ticket);
+                    this.busyWorkers.decrementAndGet();
+                    this.recordCompletion(ticket, System.nanoTime() - start);
+                    this.idleWorkers.release();
+                })
+                .subscribe(null, ex -> log.error("Unhandled failure while executing {}.",
+                    ticket.getInput().getRequestUUID(), ex));
+        }
+    }
+
+    /**
+     * Records the outcome of a ticket that ran to completion, either on a worker of this pool or on a remote one.
+     */
+    void recordCompletion(Ticket ticket, long wallNanos) {
+        this.metrics.recordExecution(ticket.getInput(), wallNanos, ticket.getCpuNanos());
+        if (ticket.isTimedOut())
+            this.metrics.recordTimeout();
+
+        if (ticket.isFailed()) {
+            this.metrics.recordFailure();
+            return;
+        }
+
+        var report = ticket.getReportId() == null ? null : this.reportStore.get(ticket.getReportId());
+        if (report != null)
+            this.metrics.recordReportSize(report.size());
+
+        // Estimates stop early and say nothing about the runtime of full simulations.
+        if (ticket.isPreliminary())
+            return;
+
+        this.costModel.record(ticket.getInput(), Duration.ofNanos(wallNanos));
+        this.accounting.record(ticket.getInput(), wallNanos, ticket.getCpuNanos(),
+            ticket.getPeakRssBytes() > 0 ? ticket.getPeakRssBytes() : -1, report == null ? -1 : report.size());
+    }
+
+    /**
+     * Stops accepting tickets, interrupts every ticket still waiting in the queue and lets running simulations finish.
+     * Interrupted tickets stay in the {@link JobJournal} and their clients reconnect once the server is back.
+     */
+    @PreDestroy
+    public void preDestroy() {
+        this.running = false;
+        this.scheduler.close(ticket -> {
+            ticket.markInterrupted();
+            ticket.fail(new Exception("The server is shutting down. Please check back later."));
+        });
+        this.dispatcherThread.interrupt();
+
+        try {
+            // Wait a while for running simulations to terminate
+            if (!this.idleWorkers.tryAcquire(this.workerCount, 60, TimeUnit.SECONDS)) {
+                this.runningTickets.forEach(Dispatcher::interrupt);
+                if (!this.idleWorkers.tryAcquire(this.workerCount, 10, TimeUnit.SECONDS))
+                    log.error("Running simulations did not terminate.");
+            }
+        } catch (InterruptedException ex) {
+            this.runningTickets.forEach(Dispatcher::interrupt);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Kills the simc process of a running ticket, which fails it as interrupted.
+     */
+    private static void interrupt(Ticket ticket) {
+        ticket.markInterrupted();
+        ticket.kill();
+    }
+}
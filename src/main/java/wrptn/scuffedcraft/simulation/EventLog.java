@@ -0,0 +1,161 @@
+package wrptn.scuffedcraft.simulation;
+
+import lombok.NonNull;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The events of a ticket, numbered in emission order, for any amount of subscribers.
+ *
+ * Numbers follow an offset: the logs of a server share {@link #EPOCH}, which differs after a restart, so that a client
+ * resuming the restored ticket of an earlier server does not skip events that merely reuse its numbers. Identifiers
+ * this log never issued are treated as {@code 0}, and the subscriber starts from the beginning.
+ *
+ * The most recent events are kept in a ring buffer of fixed size. Replayable events are also kept in a transcript, in
+ * full: they are few, and they are what the result cache stores anyway. A subscriber resuming after a given event
+ * receives every event following it that is still known, then live events. Events evicted from the ring buffer, such
+ * as old log lines, are skipped. Subscribers that cannot keep up lose their oldest pending events first.
+ */
+public final class EventLog {
+    /**
+     * @param id   The position of the event in the log, sent to clients as the SSE event identifier.
+     * @param data The event, encoded as JSON.
+     */
+    public record Event(long id, String data) { }
+
+    /**
+     * The offset of the logs created by this server: its start time in milliseconds, leaving room for a million events
+     * per log before the offsets of servers started a millisecond apart overlap.
+     */
+    static final long EPOCH = System.currentTimeMillis() << 20;
+
+    private final Event[] ring;
+    private final List<Event> transcript = new ArrayList<>();
+
+    /**
+     * Subscriptions remove themselves when they end, possibly while the list is being iterated.
+     */
+    private final List<FluxSink<Event>> subscribers = new CopyOnWriteArrayList<>();
+
+    /**
+     * Index of the next slot of the ring buffer to overwrite; guarded by the log, as are the following fields.
+     */
+    private int head = 0;
+    private int size = 0;
+    private final long firstId;
+    private long lastId;
+    private boolean completed = false;
+
+    EventLog(int capacity) {
+        this(capacity, 0);
+    }
+
+    /**
+     * @param offset The identifier preceding the first event.
+     */
+    EventLog(int capacity, long offset) {
+        this.ring = new Event[capacity];
+        this.firstId = offset + 1;
+        this.lastId = offset;
+    }
+
+    /**
+     * Appends an event and sends it to every subscriber.
+     *
+     * @param replayable Whether the event is part of the transcript.
+     */
+    synchronized void append(@NonNull String data, boolean replayable) {
+        if (this.completed)
+            return;
+
+        var event = new Event(++this.lastId, data);
+        if (replayable)
+            this.transcript.add(event);
+
+        this.ring[this.head] = event;
+        this.head = (this.head + 1) % this.ring.length;
+        this.size = Math.min(this.size + 1, this.ring.length);
+
+        for (var subscriber : this.subscribers)
+            subscriber.next(event);
+    }
+
+    /**
+     * Completes every subscription; events appended afterwards are ignored.
+     */
+    synchronized void complete() {
+        if (this.completed)
+            return;
+
+        this.completed = true;
+        for (var subscriber : this.subscribers)
+            subscriber.complete();
+        this.subscribers.clear();
+    }
+
+    /**
+     * Returns the data of the replayable events, in emission order.
+     */
+    synchronized List<String> getTranscript() {
+        var events = new ArrayList<String>(this.transcript.size());
+        for (var event : this.transcript)
+            events.add(event.data());
+        return events;
+    }
+
+    /**
+     * Returns the events following a given one, then live events until the log completes.
+     *
+     * @param lastEventId The last event the subscriber received, or {@code 0} to start from the beginning. Identifiers
+     *                    this log did not issue, such as those of an earlier server, also start from the beginning.
+     */
+    Flux<Event> subscribe(long lastEventId) {
+        return Flux.<Event>create(sink -> {
+                synchronized (this) {
+                    var backlog = this.backlog(lastEventId);
+                    for (var event : backlog)
+                        sink.next(event);
+
+                    if (this.completed) {
+                        sink.complete();
+                        return;
+                    }
+
+                    this.subscribers.add(sink);
+                }
+
+                sink.onDispose(() -> {
+                    synchronized (this) {
+                        this.subscribers.remove(sink);
+                    }
+                });
+            })
+            // Room for a full backlog, then for as many live events.
+            .onBackpressureBuffer(2 * this.ring.length, dropped -> { }, BufferOverflowStrategy.DROP_OLDEST);
+    }
+
+    private List<Event> backlog(long lastEventId) {
+        if (lastEventId < this.firstId || lastEventId > this.lastId)
+            lastEventId = 0;
+
+        var oldest = this.ring[(this.head - this.size + this.ring.length) % this.ring.length];
+        var firstBuffered = this.size == 0 ? this.lastId + 1 : oldest.id();
+
+        var backlog = new ArrayList<Event>();
+        for (var event : this.transcript)
+            if (event.id() > lastEventId && event.id() < firstBuffered)
+                backlog.add(event);
+
+        for (var i = 0; i < this.size; ++i) {
+            var event = this.ring[(this.head - this.size + i + this.ring.length) % this.ring.length];
+            if (event.id() > lastEventId)
+                backlog.add(event);
+        }
+        return backlog;
+    }
+}
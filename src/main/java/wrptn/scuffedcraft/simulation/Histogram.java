@@ -0,0 +1,55 @@
+package wrptn.scuffedcraft.simulation;
+
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram over fixed buckets, exported in the Prometheus text format.
+ *
+ * Observing a value only increments adders, which never allocate once they have settled.
+ */
+public class Histogram {
+    private final double[] bounds;
+    private final LongAdder[] counts;
+    private final DoubleAdder sum = new DoubleAdder();
+
+    /**
+     * @param bounds The inclusive upper bound of each bucket, in increasing order. An infinite bucket is implied.
+     */
+    public Histogram(double... bounds) {
+        this.bounds = bounds.clone();
+        this.counts = new LongAdder[bounds.length + 1];
+        for (var i = 0; i < this.counts.length; ++i)
+            this.counts[i] = new LongAdder();
+    }
+
+    public void observe(double value) {
+        var bucket = 0;
+        while (bucket < this.bounds.length && value > this.bounds[bucket])
+            ++bucket;
+
+        this.counts[bucket].increment();
+        this.sum.add(value);
+    }
+
+    /**
+     * Appends the samples of this histogram.
+     *
+     * @param name   The metric's name.
+     * @param labels The labels of this histogram, such as {@code fight_style="Patchwerk"}, or an empty string.
+     */
+    void writeTo(StringBuilder builder, String name, String labels) {
+        var separator = labels.isEmpty() ? "" : ",";
+        var cumulative = 0L;
+        for (var i = 0; i < this.counts.length; ++i) {
+            cumulative += this.counts[i].sum();
+            var bound = i < this.bounds.length ? Double.toString(this.bounds[i]) : "+Inf";
+            builder.append(name).append("_bucket{").append(labels).append(separator)
+                .append("le=\"").append(bound).append("\"} ").append(cumulative).append('\n');
+        }
+
+        var braces = labels.isEmpty() ? "" : "{" + labels + "}";
+        builder.append(name).append("_sum").append(braces).append(' ').append(this.sum.sum()).append('\n');
+        builder.append(name).append("_count").append(braces).append(' ').append(cumulative).append('\n');
+    }
+}
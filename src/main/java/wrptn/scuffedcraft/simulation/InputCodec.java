@@ -0,0 +1,57 @@
+package wrptn.scuffedcraft.simulation;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.NoArgsConstructor;
+import wrptn.scuffedcraft.json.Builders.ObjectNodeBuilder;
+import wrptn.scuffedcraft.models.FightStyle;
+import wrptn.scuffedcraft.models.ProfileVariant;
+import wrptn.scuffedcraft.models.SimulationInput;
+
+import java.util.Objects;
+
+import static lombok.AccessLevel.PRIVATE;
+import static wrptn.scuffedcraft.json.Builders.array;
+import static wrptn.scuffedcraft.json.Builders.object;
+
+/**
+ * JSON form of a {@link SimulationInput}, shared by the {@link JobJournal} and the work handed to remote workers.
+ */
+@NoArgsConstructor(access = PRIVATE)
+final class InputCodec {
+    /**
+     * Adds the fields of a submission to a JSON object, except for its identifier.
+     */
+    static ObjectNodeBuilder encode(ObjectNodeBuilder record, SimulationInput input) {
+        record.with("bloodlust", input.isEnableBloodlust())
+            .with("scaling", input.isEnableScaling())
+            .with("enemies", input.getNumberOfEnemies())
+            .with("fightStyle", input.getFightType().name())
+            .with("profile", Objects.requireNonNullElse(input.getProfileString(), ""));
+
+        if (!input.getVariants().isEmpty()) {
+            var variants = array();
+            for (var variant : input.getVariants())
+                variants.with(object("name", variant.getName())
+                    .with("overrides", Objects.requireNonNullElse(variant.getOverrides(), "")));
+            record.with("variants", variants);
+        }
+
+        return record;
+    }
+
+    /**
+     * Recreates a submission written by {@link #encode}, under its original identifier.
+     */
+    static SimulationInput decode(String requestUUID, JsonNode record) {
+        var input = new SimulationInput(requestUUID);
+        input.setEnableBloodlust(record.get("bloodlust").asBoolean());
+        input.setEnableScaling(record.get("scaling").asBoolean());
+        input.setNumberOfEnemies(record.get("enemies").asInt());
+        input.setFightType(FightStyle.valueOf(record.get("fightStyle").asText()));
+        input.setProfileString(record.get("profile").asText());
+        input.setFormSubmit(true);
+        for (var variant : record.path("variants"))
+            input.getVariants().add(new ProfileVariant(variant.get("name").asText(), variant.get("overrides").asText()));
+        return input;
+    }
+}
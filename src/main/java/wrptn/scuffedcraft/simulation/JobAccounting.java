@@ -0,0 +1,200 @@
+package wrptn.scuffedcraft.simulation;
+
+import lombok.NonNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import wrptn.scuffedcraft.models.FightStyle;
+import wrptn.scuffedcraft.models.SimulationInput;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Resources used by the latest simulations, and the forecasts derived from them.
+ *
+ * Every simulation that completed on this server or on a remote worker is recorded: its wall time, the CPU time and
+ * peak resident set size of its simc process, and the size of its report. Records are kept in a ring of primitive
+ * arrays, the oldest being overwritten, and summarized by fight style, scaling and amount of enemies on demand.
+ *
+ * The summaries predict when queued tickets start and finish: each running simulation frees its worker once its
+ * expected runtime elapsed, and queued tickets take the first free worker in queue order.
+ */
+@Component
+public class JobAccounting {
+    private static final FightStyle[] FIGHT_STYLES = FightStyle.values();
+
+    /**
+     * Simulations of a kind that must have been recorded before their mean runtime is trusted over the
+     * {@link CostModel}.
+     */
+    static final int MIN_SAMPLES = 3;
+
+    private final int capacity;
+
+    /**
+     * One slot per record; guarded by the accounting, as are the following fields.
+     */
+    private final byte[] fightStyles;
+    private final boolean[] scaling;
+    private final short[] enemies;
+    private final long[] wallNanos;
+    private final long[] cpuNanos;
+    private final long[] peakRssBytes;
+    private final long[] reportBytes;
+
+    private int next = 0;
+    private int size = 0;
+
+    /**
+     * The kind of simulations a summary describes.
+     */
+    public record Key(FightStyle fightStyle, boolean scaling, int enemies) {
+        static Key of(SimulationInput input) {
+            return new Key(input.getFightType(), input.isEnableScaling(), input.getNumberOfEnemies());
+        }
+    }
+
+    /**
+     * Resources used by the recorded simulations of a kind. Means only account for the simulations for which the
+     * resource could be measured; {@code NaN} or {@code -1} if it never was.
+     *
+     * @param peakRssBytes The highest peak resident set size of any of these simulations.
+     */
+    public record Summary(Key key, int count, double meanWallSeconds, double meanCpuSeconds, long peakRssBytes,
+                          double meanReportBytes) { }
+
+    /**
+     * When a queued ticket is expected to start, then finish.
+     */
+    public record Forecast(Instant startsAt, Instant finishesAt) { }
+
+    @Autowired
+    public JobAccounting(@Value("${simulationcraft.accounting.capacity:1024}") int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("At least one record must be kept");
+
+        this.capacity = capacity;
+        this.fightStyles = new byte[capacity];
+        this.scaling = new boolean[capacity];
+        this.enemies = new short[capacity];
+        this.wallNanos = new long[capacity];
+        this.cpuNanos = new long[capacity];
+        this.peakRssBytes = new long[capacity];
+        this.reportBytes = new long[capacity];
+    }
+
+    /**
+     * Records a simulation that ran to completion.
+     *
+     * @param cpuNanos     The CPU time of the simc process, or a negative value if it is unknown.
+     * @param peakRssBytes The peak resident set size of the simc process, or a negative value if it is unknown.
+     * @param reportBytes  The size of the report, or a negative value if there is none.
+     */
+    public synchronized void record(@NonNull SimulationInput input, long wallNanos, long cpuNanos, long peakRssBytes,
+                                    long reportBytes) {
+        var slot = this.next;
+        this.fightStyles[slot] = (byte) input.getFightType().ordinal();
+        this.scaling[slot] = input.isEnableScaling();
+        this.enemies[slot] = (short) Math.min(Short.MAX_VALUE, input.getNumberOfEnemies());
+        this.wallNanos[slot] = wallNanos;
+        this.cpuNanos[slot] = cpuNanos;
+        this.peakRssBytes[slot] = peakRssBytes;
+        this.reportBytes[slot] = reportBytes;
+
+        this.next = (slot + 1) % this.capacity;
+        this.size = Math.min(this.size + 1, this.capacity);
+    }
+
+    /**
+     * Summarizes the recorded simulations, most frequent kind first.
+     */
+    public List<Summary> summarize() {
+        var summaries = new ArrayList<Summary>();
+        synchronized (this) {
+            var indices = new HashMap<Key, List<Integer>>();
+            for (var slot = 0; slot < this.size; ++slot)
+                indices.computeIfAbsent(this.keyOf(slot), key -> new ArrayList<>()).add(slot);
+
+            indices.forEach((key, slots) -> summaries.add(this.summarize(key, slots)));
+        }
+
+        summaries.sort(Comparator.comparingInt(Summary::count).reversed());
+        return summaries;
+    }
+
+    /**
+     * Predicts when queued tickets start and finish.
+     *
+     * @param running The tickets running on the workers.
+     * @param queued  The queued tickets, in queue order.
+     * @param workers The amount of simulations that run at once.
+     * @return One forecast per queued ticket, in the same order.
+     */
+    public List<Forecast> forecast(@NonNull Collection<Ticket> running, @NonNull List<Ticket> queued, int workers,
+                                   @NonNull Instant now) {
+        var runtimes = new HashMap<Key, Double>();
+        for (var summary : this.summarize())
+            if (summary.count() >= MIN_SAMPLES)
+                runtimes.put(summary.key(), summary.meanWallSeconds());
+
+        // When each worker becomes free, in seconds from now.
+        var freeAt = new PriorityQueue<Double>();
+        for (var ticket : running)
+            freeAt.add(Math.max(0, expectedSeconds(ticket, runtimes) - ticket.getRunningNanos() / 1e9));
+        while (freeAt.size() < workers)
+            freeAt.add(0.0);
+
+        var forecasts = new ArrayList<Forecast>(queued.size());
+        for (var ticket : queued) {
+            var start = freeAt.isEmpty() ? 0.0 : freeAt.poll();
+            var finish = start + expectedSeconds(ticket, runtimes);
+            freeAt.add(finish);
+            forecasts.add(new Forecast(now.plusMillis(Math.round(start * 1000)), now.plusMillis(Math.round(finish * 1000))));
+        }
+        return forecasts;
+    }
+
+    private static double expectedSeconds(Ticket ticket, Map<Key, Double> runtimes) {
+        // Estimates stop early, which recorded simulations say nothing about.
+        if (ticket.isPreliminary())
+            return ticket.getEstimatedSeconds();
+        return runtimes.getOrDefault(Key.of(ticket.getInput()), ticket.getEstimatedSeconds());
+    }
+
+    private Key keyOf(int slot) {
+        return new Key(FIGHT_STYLES[this.fightStyles[slot]], this.scaling[slot], this.enemies[slot]);
+    }
+
+    private Summary summarize(Key key, List<Integer> slots) {
+        var wallNanos = 0L;
+        var cpuNanos = 0L;
+        var cpuSamples = 0;
+        var peakRssBytes = -1L;
+        var reportBytes = 0L;
+        var reports = 0;
+        for (var slot : slots) {
+            wallNanos += this.wallNanos[slot];
+            if (this.cpuNanos[slot] >= 0) {
+                cpuNanos += this.cpuNanos[slot];
+                ++cpuSamples;
+            }
+            peakRssBytes = Math.max(peakRssBytes, this.peakRssBytes[slot]);
+            if (this.reportBytes[slot] >= 0) {
+                reportBytes += this.reportBytes[slot];
+                ++reports;
+            }
+        }
+
+        return new Summary(key, slots.size(), wallNanos / 1e9 / slots.size(),
+            cpuSamples == 0 ? Double.NaN : cpuNanos / 1e9 / cpuSamples,
+            peakRssBytes < 0 ? -1 : peakRssBytes,
+            reports == 0 ? Double.NaN : (double) reportBytes / reports);
+    }
+}
@@ -0,0 +1,114 @@
+package wrptn.scuffedcraft.simulation;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.UUID;
+
+import static org.springframework.util.StringUtils.hasText;
+
+/**
+ * Hands out a private directory to every simc run, which holds its input, output and reports and is deleted as a
+ * whole once the run ends.
+ *
+ * Directories live on tmpfs when the machine has one, so that the files of a run never reach the disk. Their name
+ * starts with the pid of the process that created them: directories whose creator is gone were orphaned by a crash,
+ * and are removed on startup. Several instances may share the same location.
+ */
+@Slf4j
+@Component
+public class JobDirectories {
+    private static final Path TMPFS = Paths.get("/dev/shm");
+
+    private final String prefix = ProcessHandle.current().pid() + "-";
+
+    @Getter
+    private final Path root;
+
+    @Autowired
+    public JobDirectories(@Value("${simulationcraft.jobs.directory:}") String root) {
+        this(hasText(root) ? Paths.get(root) : defaultRoot());
+    }
+
+    public JobDirectories(@NonNull Path root) {
+        this.root = root;
+
+        try {
+            Files.createDirectories(root);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        this.removeOrphans();
+    }
+
+    /**
+     * Creates an empty directory for a run.
+     */
+    public Path create() throws IOException {
+        return Files.createDirectory(this.root.resolve(this.prefix + UUID.randomUUID()));
+    }
+
+    /**
+     * Deletes a directory and everything in it, logging whatever cannot be deleted.
+     */
+    public static void delete(@NonNull Path directory) {
+        try (var paths = Files.walk(directory)) {
+            // Children come before their parent.
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException ex) {
+                    log.warn("Unable to delete {}: {}", path, ex.toString());
+                }
+            });
+        } catch (IOException ex) {
+            log.warn("Unable to delete {}: {}", directory, ex.toString());
+        }
+    }
+
+    /**
+     * Deletes the directories of processes that are no longer running.
+     */
+    private void removeOrphans() {
+        try (var directories = Files.list(this.root)) {
+            directories.filter(JobDirectories::isOrphan).forEach(directory -> {
+                log.info("Removing {}, left behind by a previous run.", directory.getFileName());
+                delete(directory);
+            });
+        } catch (IOException ex) {
+            log.warn("Unable to look for orphaned job directories in {}: {}", this.root, ex.toString());
+        }
+    }
+
+    private static boolean isOrphan(Path directory) {
+        var name = directory.getFileName().toString();
+        var separator = name.indexOf('-');
+        if (separator <= 0 || !Files.isDirectory(directory))
+            return false;
+
+        try {
+            var pid = Long.parseLong(name.substring(0, separator));
+            return ProcessHandle.of(pid).map(process -> !process.isAlive()).orElse(true);
+        } catch (NumberFormatException ex) {
+            return false;
+        }
+    }
+
+    private static Path defaultRoot() {
+        var parent = Files.isDirectory(TMPFS) && Files.isWritable(TMPFS)
+            ? TMPFS
+            : Paths.get(System.getProperty("java.io.tmpdir"));
+        return parent.resolve("scuffedcraft-jobs");
+    }
+}
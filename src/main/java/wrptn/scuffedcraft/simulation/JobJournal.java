@@ -0,0 +1,436 @@
+package wrptn.scuffedcraft.simulation;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.annotation.PreDestroy;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import wrptn.scuffedcraft.models.SimulationInput;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import static wrptn.scuffedcraft.json.Builders.object;
+
+/**
+ * Append-only, memory-mapped log of submissions and of their state transitions, so that queued and running jobs
+ * survive a restart.
+ *
+ * Every record is framed as {@code [length][crc32][json]}, and followed by a zero length marking the end of the log.
+ * A record torn by a crash fails its checksum, which ends the replay there; the next append overwrites it. The log is
+ * periodically compacted down to the jobs that have not completed yet.
+ *
+ * Appends only write to the mapping, which survives the process crashing, and return; a dedicated thread forces the
+ * records written since its previous pass to disk, so that appends made while it is busy share one flush. Callers,
+ * such as request handlers, never wait on the disk.
+ *
+ * A journal belongs to a single process: an exclusive lock on a file next to it is held until the journal is closed,
+ * since compactions replace the journal itself.
+ */
+@Slf4j
+@Component
+@Profile("!worker")
+public class JobJournal {
+    private static final String SUBMITTED = "submitted";
+    private static final String ATTACHED = "attached";
+    private static final String STARTED = "started";
+    private static final String FINISHED = "finished";
+
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Path path;
+    private final int initialSize;
+    private final FileLock lock;
+
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+
+    /**
+     * The range of the mapping written to since it was last forced to disk; empty if {@code dirtyEnd} is {@code 0}.
+     */
+    private int dirtyStart = 0;
+    private int dirtyEnd = 0;
+
+    /**
+     * Jobs that have not finished, in submission order, keyed by request identifier.
+     */
+    private final Map<String, Entry> pending = new LinkedHashMap<>();
+
+    private final ScheduledExecutorService compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        var thread = new Thread(runnable, "journal-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ExecutorService flusher = Executors.newSingleThreadExecutor(runnable -> {
+        var thread = new Thread(runnable, "journal-flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * A job that was queued or running when the journal was last written to.
+     *
+     * @param input   The submission.
+     * @param started Whether a worker had started simulating it.
+     * @param aliases Identifiers of identical submissions that were attached to it.
+     */
+    public record PendingJob(SimulationInput input, boolean started, List<String> aliases) { }
+
+    private static final class Entry {
+        private final SimulationInput input;
+        private final List<String> aliases = new ArrayList<>();
+        private boolean started = false;
+
+        private Entry(SimulationInput input) {
+            this.input = input;
+        }
+    }
+
+    @Autowired
+    public JobJournal(@Value("${simulationcraft.journal.location:#{systemProperties['java.io.tmpdir']}/scuffedcraft-journal/jobs.log}") String path,
+                      @Value("${simulationcraft.journal.size:8388608}") int initialSize,
+                      @Value("${simulationcraft.journal.compaction-interval:PT5M}") Duration compactionInterval) {
+        this(Paths.get(path), initialSize);
+
+        this.compactor.scheduleWithFixedDelay(this::compact, compactionInterval.toMillis(),
+            compactionInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Opens a journal and reads the jobs it holds; see {@link #getPendingJobs()}.
+     */
+    public JobJournal(@NonNull Path path, int initialSize) {
+        this.path = path;
+        this.initialSize = initialSize;
+
+        try {
+            Files.createDirectories(path.toAbsolutePath().getParent());
+            this.lock = lock(path);
+            this.map(Math.max(initialSize, Files.exists(path) ? (int) Files.size(path) : 0));
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        this.replay(true);
+        log.info("Restored {} pending jobs from the job journal.", this.pending.size());
+    }
+
+    /**
+     * Returns the jobs that were neither completed nor failed, in submission order.
+     */
+    public synchronized List<PendingJob> getPendingJobs() {
+        var jobs = new ArrayList<PendingJob>(this.pending.size());
+        for (var entry : this.pending.values())
+            jobs.add(new PendingJob(entry.input, entry.started, List.copyOf(entry.aliases)));
+        return jobs;
+    }
+
+    /**
+     * Records a submission that is about to be queued.
+     */
+    public synchronized void submitted(@NonNull SimulationInput input) {
+        this.pending.put(input.getRequestUUID(), new Entry(input));
+        this.append(toRecord(input));
+    }
+
+    /**
+     * Records a submission that observes the job of another, identical one.
+     */
+    public synchronized void attached(@NonNull String requestUUID, @NonNull String targetUUID) {
+        var entry = this.pending.get(targetUUID);
+        if (entry == null)
+            return;
+
+        entry.aliases.add(requestUUID);
+        this.append(object("op", ATTACHED, "uuid", requestUUID).with("target", targetUUID).end());
+    }
+
+    public synchronized void started(@NonNull String requestUUID) {
+        var entry = this.pending.get(requestUUID);
+        if (entry == null || entry.started)
+            return;
+
+        entry.started = true;
+        this.append(object("op", STARTED, "uuid", requestUUID).end());
+    }
+
+    /**
+     * Records that a job completed or failed; it will not be restored anymore.
+     */
+    public synchronized void finished(@NonNull String requestUUID) {
+        if (this.pending.remove(requestUUID) != null)
+            this.append(object("op", FINISHED, "uuid", requestUUID).end());
+    }
+
+    /**
+     * Rewrites the journal with only the jobs that have not finished yet.
+     */
+    public synchronized void compact() {
+        if (this.channel == null)
+            return;
+
+        try {
+            var records = new ArrayList<byte[]>();
+            var liveSize = HEADER_SIZE;
+            for (var entry : this.pending.values()) {
+                records.add(this.encode(toRecord(entry.input)));
+                if (entry.started)
+                    records.add(this.encode(object("op", STARTED, "uuid", entry.input.getRequestUUID()).end()));
+                for (var alias : entry.aliases)
+                    records.add(this.encode(object("op", ATTACHED, "uuid", alias)
+                        .with("target", entry.input.getRequestUUID()).end()));
+            }
+            for (var record : records)
+                liveSize += HEADER_SIZE + record.length;
+
+            // Keep at least half of the mapping free so that compactions stay infrequent.
+            var size = this.initialSize;
+            while (size < 2 * liveSize)
+                size *= 2;
+
+            var compacted = this.path.resolveSibling(this.path.getFileName() + ".compact");
+            try (var target = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                var mapping = target.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                for (var record : records)
+                    write(mapping, record);
+                mapping.putInt(mapping.position(), 0);
+                mapping.force();
+            }
+
+            this.close();
+            Files.move(compacted, this.path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            this.map(size);
+            this.buffer.position(liveSize - HEADER_SIZE);
+        } catch (IOException ex) {
+            log.error("Unable to compact the job journal.", ex);
+            this.reopen();
+        }
+    }
+
+    private void append(ObjectNode record) {
+        if (this.channel == null)
+            return;
+
+        var bytes = this.encode(record);
+        if (this.buffer.remaining() < 2 * HEADER_SIZE + bytes.length) {
+            // The record being appended is already part of the in-memory state the compaction writes out.
+            this.compact();
+            return;
+        }
+
+        var start = this.buffer.position();
+        write(this.buffer, bytes);
+        this.buffer.putInt(this.buffer.position(), 0);
+
+        // A flush is already pending if the range was dirty; it will include this record.
+        var flushPending = this.dirtyEnd > 0;
+        this.dirtyStart = flushPending ? Math.min(this.dirtyStart, start) : start;
+        this.dirtyEnd = this.buffer.position() + Integer.BYTES;
+        if (!flushPending)
+            this.flusher.execute(this::flush);
+    }
+
+    /**
+     * Forces the records appended since the previous flush to disk, without holding the journal while doing so.
+     */
+    private void flush() {
+        MappedByteBuffer buffer;
+        int start;
+        int end;
+        synchronized (this) {
+            if (this.channel == null || this.dirtyEnd == 0)
+                return;
+
+            buffer = this.buffer;
+            start = this.dirtyStart;
+            end = this.dirtyEnd;
+            this.dirtyEnd = 0;
+        }
+
+        // Compacting meanwhile forces this mapping in full before replacing it, so forcing it again is harmless.
+        buffer.force(start, end - start);
+    }
+
+    /**
+     * Reads the journal up to its last intact record, where the next record will be appended.
+     *
+     * @param apply Whether the records should be applied to the in-memory state.
+     */
+    private void replay(boolean apply) {
+        var position = 0;
+        while (this.buffer.remaining() >= HEADER_SIZE) {
+            var length = this.buffer.getInt(position);
+            if (length <= 0 || length > this.buffer.capacity() - position - HEADER_SIZE)
+                break;
+
+            var bytes = new byte[length];
+            this.buffer.get(position + HEADER_SIZE, bytes);
+            if (crc(bytes) != this.buffer.getInt(position + Integer.BYTES)) {
+                log.warn("Discarding a torn record at offset {} of the job journal.", position);
+                break;
+            }
+
+            try {
+                if (apply)
+                    this.apply(this.objectMapper.readTree(bytes));
+            } catch (IOException | RuntimeException ex) {
+                log.warn("Discarding an unreadable record at offset {} of the job journal.", position, ex);
+            }
+
+            position += HEADER_SIZE + length;
+            this.buffer.position(position);
+        }
+
+        this.buffer.position(position);
+    }
+
+    private void apply(JsonNode record) {
+        var requestUUID = record.get("uuid").asText();
+        switch (record.get("op").asText()) {
+            case SUBMITTED -> {
+                var input = InputCodec.decode(requestUUID, record);
+                this.pending.put(requestUUID, new Entry(input));
+            }
+            case ATTACHED -> {
+                var entry = this.pending.get(record.get("target").asText());
+                if (entry != null)
+                    entry.aliases.add(requestUUID);
+            }
+            case STARTED -> {
+                var entry = this.pending.get(requestUUID);
+                if (entry != null)
+                    entry.started = true;
+            }
+            case FINISHED -> this.pending.remove(requestUUID);
+            default -> log.warn("Ignoring unknown journal operation '{}'.", record.get("op").asText());
+        }
+    }
+
+    private static ObjectNode toRecord(SimulationInput input) {
+        return InputCodec.encode(object("op", SUBMITTED, "uuid", input.getRequestUUID()), input).end();
+    }
+
+    private byte[] encode(ObjectNode record) {
+        try {
+            return this.objectMapper.writeValueAsBytes(record);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static void write(MappedByteBuffer buffer, byte[] record) {
+        buffer.putInt(record.length);
+        buffer.putInt(crc(record));
+        buffer.put(record);
+    }
+
+    private static int crc(byte[] bytes) {
+        var crc = new CRC32();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    private static FileLock lock(Path journal) throws IOException {
+        var channel = FileChannel.open(journal.resolveSibling(journal.getFileName() + ".lock"), StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE);
+        FileLock lock;
+        try {
+            lock = channel.tryLock();
+        } catch (OverlappingFileLockException ex) {
+            lock = null;
+        }
+
+        if (lock == null) {
+            channel.close();
+            throw new IllegalStateException("The job journal '" + journal + "' is already used by another instance.");
+        }
+        return lock;
+    }
+
+    private void map(int size) throws IOException {
+        this.channel = FileChannel.open(this.path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    /**
+     * Maps the journal again after a failed compaction, or stops journaling if that is not possible either.
+     */
+    private void reopen() {
+        if (this.channel != null)
+            return;
+
+        try {
+            this.map((int) Files.size(this.path));
+            this.replay(false);
+        } catch (IOException ex) {
+            log.error("Unable to reopen the job journal; jobs will not survive a restart.", ex);
+        }
+    }
+
+    private void close() throws IOException {
+        this.buffer.force();
+        this.dirtyEnd = 0;
+        this.channel.close();
+        this.channel = null;
+    }
+
+    /**
+     * Stops using the journal without compacting it or forcing it to disk, as a crashed process would.
+     */
+    synchronized void abandon() {
+        this.compactor.shutdownNow();
+        this.flusher.shutdownNow();
+
+        try {
+            if (this.channel != null)
+                this.channel.close();
+            this.channel = null;
+            this.lock.channel().close();
+        } catch (IOException ex) {
+            log.error("Unable to close the job journal.", ex);
+        }
+    }
+
+    @PreDestroy
+    public synchronized void preDestroy() {
+        this.compactor.shutdownNow();
+        this.flusher.shutdownNow();
+        this.compact();
+
+        try {
+            if (this.channel != null)
+                this.close();
+            this.lock.channel().close();
+        } catch (IOException ex) {
+            log.error("Unable to close the job journal.", ex);
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package wrptn.scuffedcraft.simulation;
+
+import lombok.Getter;
+import lombok.NonNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded queue of tickets ordered shortest-expected-job first, with aging.
+ *
+ * A ticket's priority is {@code agingFactor * enqueueTime + estimatedSeconds}: every second spent waiting is worth
+ * {@code agingFactor} seconds of estimated cost, so an expensive job can only be overtaken by cheaper jobs submitted
+ * shortly after it and is never starved. Because the waiting time of every queued ticket grows at the same rate, the
+ * priorities are fixed at enqueue time and a plain heap keeps them ordered.
+ */
+@Component
+public class JobScheduler {
+    @Getter
+    private final int capacity;
+    private final double agingFactor;
+    private final LongSupplier nanoTime;
+    private final long epoch;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = this.lock.newCondition();
+    private final PriorityQueue<Entry> queue = new PriorityQueue<>(Comparator
+        .comparingDouble(Entry::priority)
+        .thenComparingLong(entry -> entry.ticket().getSequence()));
+
+    private boolean closed = false;
+
+    /**
+     * Incremented every time the content of the queue changes.
+     */
+    private volatile long version = 0;
+
+    /**
+     * Amount of tickets handed to a worker since the scheduler was created.
+     */
+    @Getter
+    private volatile long dispatchedCount = 0;
+
+    private record Entry(Ticket ticket, double priority) { }
+
+    @Autowired
+    public JobScheduler(@Value("${simulationcraft.scheduler.queue-capacity:64}") int capacity,
+                        @Value("${simulationcraft.scheduler.aging-factor:1.0}") double agingFactor) {
+        this(capacity, agingFactor, System::nanoTime);
+    }
+
+    public JobScheduler(int capacity, double agingFactor, @NonNull LongSupplier nanoTime) {
+        this.capacity = capacity;
+        this.agingFactor = agingFactor;
+        this.nanoTime = nanoTime;
+        this.epoch = nanoTime.getAsLong();
+    }
+
+    /**
+     * Enqueues a ticket according to its {@link Ticket#getEstimatedSeconds() estimated cost}.
+     *
+     * {@link Ticket#isFollowUp() Follow-ups} are queued beyond capacity: the client already saw the first part of its
+     * submission, and each one replaces a ticket that just left the queue.
+     *
+     * @return {@code false} if the queue is full or closed.
+     */
+    public boolean offer(@NonNull Ticket ticket) {
+        var waitedSince = (this.nanoTime.getAsLong() - this.epoch) / (double) TimeUnit.SECONDS.toNanos(1);
+        var entry = new Entry(ticket, this.agingFactor * waitedSince + ticket.getEstimatedSeconds());
+
+        this.lock.lock();
+        try {
+            if (this.closed || (this.queue.size() >= this.capacity && !ticket.isFollowUp()))
+                return false;
+
+            this.queue.add(entry);
+            ++this.version;
+            this.notEmpty.signal();
+            return true;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Waits for the ticket with the highest priority.
+     *
+     * @return {@code null} once the scheduler is closed.
+     */
+    public Ticket take() throws InterruptedException {
+        this.lock.lockInterruptibly();
+        try {
+            while (!this.closed && this.queue.isEmpty())
+                this.notEmpty.await();
+
+            if (this.closed)
+                return null;
+
+            ++this.version;
+            ++this.dispatchedCount;
+            return this.queue.poll().ticket();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Waits up to a given time for the ticket with the highest priority.
+     *
+     * @return {@code null} if no ticket was queued in time, or once the scheduler is closed.
+     */
+    public Ticket poll(long timeout, @NonNull TimeUnit unit) throws InterruptedException {
+        var remaining = unit.toNanos(timeout);
+        this.lock.lockInterruptibly();
+        try {
+            while (!this.closed && this.queue.isEmpty()) {
+                if (remaining <= 0)
+                    return null;
+                remaining = this.notEmpty.awaitNanos(remaining);
+            }
+
+            if (this.closed)
+                return null;
+
+            ++this.version;
+            ++this.dispatchedCount;
+            return this.queue.poll().ticket();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Withdraws a ticket that has not been dispatched yet.
+     *
+     * @return {@code false} if the ticket was not queued.
+     */
+    public boolean remove(@NonNull Ticket ticket) {
+        this.lock.lock();
+        try {
+            if (!this.queue.removeIf(entry -> entry.ticket() == ticket))
+                return false;
+
+            ++this.version;
+            return true;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the queued tickets in the order they will be dispatched.
+     */
+    public List<Ticket> snapshot() {
+        Entry[] entries;
+        this.lock.lock();
+        try {
+            entries = this.queue.toArray(Entry[]::new);
+        } finally {
+            this.lock.unlock();
+        }
+
+        // Sort outside of the lock; submissions and dispatches do not need to wait for it.
+        var tickets = new ArrayList<Ticket>(entries.length);
+        Arrays.sort(entries, this.queue.comparator());
+        for (var entry : entries)
+            tickets.add(entry.ticket());
+        return tickets;
+    }
+
+    /**
+     * Returns the 1-based position of a ticket in dispatch order, or {@code 0} if it is not queued.
+     */
+    public int positionOf(@NonNull Ticket ticket) {
+        this.lock.lock();
+        try {
+            Entry self = null;
+            for (var entry : this.queue) {
+                if (entry.ticket() == ticket) {
+                    self = entry;
+                    break;
+                }
+            }
+
+            if (self == null)
+                return 0;
+
+            var position = 1;
+            for (var entry : this.queue)
+                if (this.queue.comparator().compare(entry, self) < 0)
+                    ++position;
+            return position;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    public int size() {
+        this.lock.lock();
+        try {
+            return this.queue.size();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    public long getVersion() { return this.version; }
+
+    /**
+     * Stops accepting tickets, wakes up every waiting worker and hands over the tickets that were still queued.
+     */
+    public void close(@NonNull Consumer<Ticket> remainingTickets) {
+        List<Entry> remaining;
+        this.lock.lock();
+        try {
+            this.closed = true;
+            remaining = new ArrayList<>(this.queue);
+            this.queue.clear();
+            ++this.version;
+            this.notEmpty.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+
+        remaining.forEach(entry -> remainingTickets.accept(entry.ticket()));
+    }
+}
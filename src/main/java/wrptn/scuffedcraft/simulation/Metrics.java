@@ -0,0 +1,167 @@
+package wrptn.scuffedcraft.simulation;
+
+import lombok.NonNull;
+import org.springframework.stereotype.Component;
+import wrptn.scuffedcraft.models.FightStyle;
+import wrptn.scuffedcraft.models.SimulationInput;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Counters describing the service's performance, exported in the Prometheus text format.
+ *
+ * Every series is created up front, including one per fight style and scaling mode, so that recording an event only
+ * touches lock-free adders and never allocates.
+ */
+@Component
+public class Metrics {
+    private static final double[] WAIT_BUCKETS = { 1, 5, 15, 30, 60, 120, 300, 600, 1800 };
+    private static final double[] RUNTIME_BUCKETS = { 5, 10, 20, 30, 60, 120, 300, 600 };
+    private static final double[] SIZE_BUCKETS = { 256 * 1024, 512 * 1024, 1 << 20, 2 << 20, 4 << 20, 8 << 20, 16 << 20 };
+
+    private static final FightStyle[] FIGHT_STYLES = FightStyle.values();
+
+    private final Histogram queueWait = new Histogram(WAIT_BUCKETS);
+    private final Histogram reportSize = new Histogram(SIZE_BUCKETS);
+
+    /**
+     * Indexed by fight style, then by whether scaling is enabled.
+     */
+    private final Histogram[][] wallTime = new Histogram[FIGHT_STYLES.length][2];
+    private final Histogram[][] cpuTime = new Histogram[FIGHT_STYLES.length][2];
+
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private final LongAdder throttlings = new LongAdder();
+    private final LongAdder sseSubscribers = new LongAdder();
+    private final LongAdder cancellations = new LongAdder();
+    private final DoubleAdder cpuSecondsSaved = new DoubleAdder();
+
+    private final List<Gauge> gauges = new ArrayList<>();
+
+    private record Gauge(String name, String help, LongSupplier value) { }
+
+    public Metrics() {
+        for (var style = 0; style < FIGHT_STYLES.length; ++style) {
+            for (var scaling = 0; scaling < 2; ++scaling) {
+                this.wallTime[style][scaling] = new Histogram(RUNTIME_BUCKETS);
+                this.cpuTime[style][scaling] = new Histogram(RUNTIME_BUCKETS);
+            }
+        }
+    }
+
+    /**
+     * Exports a value owned by another component, read when the metrics are scraped.
+     */
+    public synchronized void registerGauge(@NonNull String name, @NonNull String help, @NonNull LongSupplier value) {
+        this.gauges.add(new Gauge(name, help, value));
+    }
+
+    public void recordQueueWait(long nanos) {
+        this.queueWait.observe(nanos / 1e9);
+    }
+
+    /**
+     * Records the resources used by a simc process.
+     *
+     * @param cpuNanos The CPU time of the process, or a negative value if it is unknown.
+     */
+    public void recordExecution(SimulationInput input, long wallNanos, long cpuNanos) {
+        var style = input.getFightType().ordinal();
+        var scaling = input.isEnableScaling() ? 1 : 0;
+
+        this.wallTime[style][scaling].observe(wallNanos / 1e9);
+        if (cpuNanos >= 0)
+            this.cpuTime[style][scaling].observe(cpuNanos / 1e9);
+    }
+
+    public void recordTimeout() { this.timeouts.increment(); }
+
+    public void recordFailure() { this.failures.increment(); }
+
+    public void recordRejection() { this.rejections.increment(); }
+
+    public void recordThrottling() { this.throttlings.increment(); }
+
+    public void recordReportSize(long bytes) { this.reportSize.observe(bytes); }
+
+    /**
+     * Records a cancelled job.
+     *
+     * @param cpuSecondsSaved The estimated CPU time the job would still have used.
+     */
+    public void recordCancellation(double cpuSecondsSaved) {
+        this.cancellations.increment();
+        this.cpuSecondsSaved.add(cpuSecondsSaved);
+    }
+
+    public void subscriberConnected() { this.sseSubscribers.increment(); }
+
+    public void subscriberDisconnected() { this.sseSubscribers.decrement(); }
+
+    /**
+     * Formats every metric in the Prometheus text exposition format.
+     */
+    public String scrape() {
+        var builder = new StringBuilder(16 * 1024);
+
+        synchronized (this) {
+            for (var gauge : this.gauges) {
+                header(builder, gauge.name(), gauge.help(), "gauge");
+                builder.append(gauge.name()).append(' ').append(gauge.value().getAsLong()).append('\n');
+            }
+        }
+
+        header(builder, "scuffedcraft_sse_subscribers", "Clients currently subscribed to a simulation's events.", "gauge");
+        builder.append("scuffedcraft_sse_subscribers ").append(this.sseSubscribers.sum()).append('\n');
+
+        header(builder, "scuffedcraft_queue_wait_seconds", "Time spent by jobs in the queue.", "histogram");
+        this.queueWait.writeTo(builder, "scuffedcraft_queue_wait_seconds", "");
+
+        header(builder, "scuffedcraft_queue_rejections_total", "Submissions rejected because the queue was full.", "counter");
+        builder.append("scuffedcraft_queue_rejections_total ").append(this.rejections.sum()).append('\n');
+
+        header(builder, "scuffedcraft_admission_throttled_total", "Submissions rejected because their client ran out of tokens.", "counter");
+        builder.append("scuffedcraft_admission_throttled_total ").append(this.throttlings.sum()).append('\n');
+
+        header(builder, "scuffedcraft_simc_wall_seconds", "Wall time of simc processes.", "histogram");
+        this.writeByLabels(builder, "scuffedcraft_simc_wall_seconds", this.wallTime);
+
+        header(builder, "scuffedcraft_simc_cpu_seconds", "CPU time of simc processes.", "histogram");
+        this.writeByLabels(builder, "scuffedcraft_simc_cpu_seconds", this.cpuTime);
+
+        header(builder, "scuffedcraft_simc_timeouts_total", "simc processes killed for running too long.", "counter");
+        builder.append("scuffedcraft_simc_timeouts_total ").append(this.timeouts.sum()).append('\n');
+
+        header(builder, "scuffedcraft_simc_failures_total", "Jobs that failed, including timeouts.", "counter");
+        builder.append("scuffedcraft_simc_failures_total ").append(this.failures.sum()).append('\n');
+
+        header(builder, "scuffedcraft_cancellations_total", "Jobs cancelled by their clients, or because nobody waited for them.", "counter");
+        builder.append("scuffedcraft_cancellations_total ").append(this.cancellations.sum()).append('\n');
+
+        header(builder, "scuffedcraft_cancelled_cpu_seconds_saved_total", "Estimated CPU time cancelled jobs would still have used.", "counter");
+        builder.append("scuffedcraft_cancelled_cpu_seconds_saved_total ").append(this.cpuSecondsSaved.sum()).append('\n');
+
+        header(builder, "scuffedcraft_report_size_bytes", "Size of the HTML reports produced by simc.", "histogram");
+        this.reportSize.writeTo(builder, "scuffedcraft_report_size_bytes", "");
+
+        return builder.toString();
+    }
+
+    private void writeByLabels(StringBuilder builder, String name, Histogram[][] histograms) {
+        for (var style = 0; style < FIGHT_STYLES.length; ++style)
+            for (var scaling = 0; scaling < 2; ++scaling)
+                histograms[style][scaling].writeTo(builder, name,
+                    "fight_style=\"" + FIGHT_STYLES[style].name() + "\",scaling=\"" + (scaling == 1) + "\"");
+    }
+
+    private static void header(StringBuilder builder, String name, String help, String type) {
+        builder.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        builder.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+}
@@ -0,0 +1,279 @@
+package wrptn.scuffedcraft.simulation;
+
+import jakarta.annotation.PreDestroy;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Supervises simc processes without dedicating a thread to any of them.
+ *
+ * Processes write their output to a file, which a single thread tails on a fixed interval; reads of a local file do
+ * not wait on the process, so they are plain reads. Exits are observed through {@link Process#onExit()} and handed to
+ * the same thread, and timeouts are Reactor timers. The amount of threads involved does not depend on the amount of
+ * running processes. A process that runs out of time is killed along with every process it spawned.
+ */
+@Slf4j
+@Component
+public class ProcessSupervisor {
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final Set<Tail> tails = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Reads the output of every process, and observes their exits; every {@link Tail} is only touched by this thread.
+     */
+    private final ScheduledExecutorService poller = Executors.newSingleThreadScheduledExecutor(daemonThreads("simc-output"));
+    private final Scheduler pollerScheduler = Schedulers.fromExecutorService(this.poller, "simc-output");
+
+    /**
+     * Receives the output of a process. Calls are never concurrent, but may come from different threads.
+     */
+    public interface OutputListener {
+        /**
+         * Called for every line, without its terminator.
+         */
+        void onLine(String line);
+
+        /**
+         * Called once the output currently available has been read.
+         */
+        default void onIdle() { }
+    }
+
+    /**
+     * @param timedOut Whether the process was killed for running too long.
+     */
+    public record Exit(int exitCode, boolean timedOut) { }
+
+    @Autowired
+    public ProcessSupervisor(@Value("${simulationcraft.supervisor.poll-interval:PT0.25S}") Duration pollInterval) {
+        this.poller.scheduleWithFixedDelay(this::poll, pollInterval.toMillis(), pollInterval.toMillis(),
+            TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Watches a process whose output is redirected to a file.
+     *
+     * @param timeout How long the process may run before it is killed.
+     * @return Completes once the process exited and its output has been read in full. Cancelling kills the process.
+     */
+    public Mono<Exit> supervise(@NonNull Process process, @NonNull Path output, @NonNull Duration timeout,
+                                @NonNull OutputListener listener) {
+        var timedOut = new AtomicBoolean(false);
+        var exit = Mono.fromFuture(process.onExit())
+            .timeout(timeout, Mono.defer(() -> {
+                timedOut.set(true);
+                destroyTree(process.toHandle());
+                return Mono.fromFuture(process.onExit());
+            }))
+            // Off the pool that completes the future, and ordered with the reads of the output.
+            .publishOn(this.pollerScheduler);
+
+        return Mono.create(sink -> {
+            Tail tail;
+            try {
+                tail = new Tail(FileChannel.open(output, StandardOpenOption.READ), listener, sink);
+            } catch (IOException ex) {
+                destroyTree(process.toHandle());
+                sink.error(ex);
+                return;
+            }
+
+            this.tails.add(tail);
+            var exitSubscription = exit.subscribe(
+                exited -> tail.exit = new Exit(exited.exitValue(), timedOut.get()),
+                tail::fail);
+            sink.onCancel(() -> {
+                exitSubscription.dispose();
+                destroyTree(process.toHandle());
+                tail.close();
+            });
+        });
+    }
+
+    /**
+     * Writes a file on the bounded elastic scheduler, which is meant for blocking I/O; input files are small.
+     */
+    public static Mono<Void> write(@NonNull Path path, @NonNull ByteBuffer content) {
+        return Mono.<Void>fromCallable(() -> {
+                try (var channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                    while (content.hasRemaining())
+                        channel.write(content);
+                }
+                return null;
+            })
+            .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Kills a process and every process it spawned.
+     */
+    public static void destroyTree(@NonNull ProcessHandle process) {
+        // Children are reparented once their parent dies, after which they can no longer be found; list them first.
+        var descendants = process.descendants().toList();
+        process.destroyForcibly();
+        descendants.forEach(ProcessHandle::destroyForcibly);
+    }
+
+    private void poll() {
+        for (var tail : this.tails)
+            tail.read();
+    }
+
+    /**
+     * The output of a running process, read from where the previous read stopped.
+     */
+    private final class Tail {
+        private final FileChannel channel;
+        private final OutputListener listener;
+        private final MonoSink<Exit> sink;
+
+        private final ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private final ByteArrayOutputStream partialLine = new ByteArrayOutputStream(256);
+        private long position = 0;
+        private boolean skipLineFeed = false;
+
+        /**
+         * Set once the process exited.
+         */
+        private Exit exit = null;
+
+        /**
+         * Set once the tail was closed, possibly by another thread if the subscriber cancelled.
+         */
+        private volatile boolean closed = false;
+
+        private Tail(FileChannel channel, OutputListener listener, MonoSink<Exit> sink) {
+            this.channel = channel;
+            this.listener = listener;
+            this.sink = sink;
+        }
+
+        private void read() {
+            // If the process had exited before this read started, reaching the end of the file means that everything
+            // has been read.
+            var exitBeforeRead = this.exit;
+            try {
+                int count;
+                do {
+                    this.buffer.clear();
+                    count = this.channel.read(this.buffer, this.position);
+                    if (count > 0) {
+                        this.position += count;
+                        this.buffer.flip();
+                        this.split();
+                    }
+                } while (count == this.buffer.capacity());
+
+                this.listener.onIdle();
+                if (count <= 0 && exitBeforeRead != null)
+                    this.finish(exitBeforeRead);
+            } catch (Exception ex) {
+                if (!this.closed)
+                    this.fail(ex);
+            }
+        }
+
+        /**
+         * Hands every complete line of the buffer to the listener. Lines end with {@code \n}, {@code \r} or
+         * {@code \r\n}, like {@link java.io.BufferedReader#readLine()}.
+         */
+        private void split() {
+            var bytes = this.buffer.array();
+            var start = 0;
+            var end = this.buffer.limit();
+            for (var i = 0; i < end; ++i) {
+                var character = bytes[i];
+                if (character != '\n' && character != '\r')
+                    continue;
+
+                if (character == '\n' && this.skipLineFeed && i == start) {
+                    this.skipLineFeed = false;
+                    start = i + 1;
+                    continue;
+                }
+
+                this.partialLine.write(bytes, start, i - start);
+                this.emitLine();
+                this.skipLineFeed = character == '\r';
+                start = i + 1;
+            }
+
+            if (start < end) {
+                this.skipLineFeed = false;
+                this.partialLine.write(bytes, start, end - start);
+            }
+        }
+
+        private void emitLine() {
+            // Line terminators never occur within multi-byte characters, so lines always hold whole characters.
+            this.listener.onLine(this.partialLine.toString(StandardCharsets.UTF_8));
+            this.partialLine.reset();
+        }
+
+        private void finish(Exit exit) {
+            if (this.partialLine.size() > 0)
+                this.emitLine();
+
+            this.close();
+            this.sink.success(exit);
+        }
+
+        private void fail(Throwable ex) {
+            this.close();
+            this.sink.error(ex);
+        }
+
+        private void close() {
+            this.closed = true;
+            ProcessSupervisor.this.tails.remove(this);
+            closeQuietly(this.channel);
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        return runnable -> {
+            var thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static void closeQuietly(Channel channel) {
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            log.warn("Cannot close {}.", channel, ex);
+        }
+    }
+
+    @PreDestroy
+    public void preDestroy() {
+        this.poller.shutdownNow();
+    }
+}
@@ -0,0 +1,39 @@
+package wrptn.scuffedcraft.simulation;
+
+import lombok.NoArgsConstructor;
+
+import java.util.regex.Pattern;
+
+import static lombok.AccessLevel.PRIVATE;
+
+/**
+ * Recognizes the progress bars simc prints while iterating, such as
+ * {@code Generating Baseline: Fury_Warrior [=========>..........] 4521/10000 3.45 sec}.
+ */
+@NoArgsConstructor(access = PRIVATE)
+public final class ProgressParser {
+    private static final Pattern PROGRESS_BAR = Pattern.compile("^\\s*(?<phase>.*?)\\s*\\[[=>.\\s]*]\\s*(?<current>\\d+)/(?<total>\\d+)");
+
+    public record Progress(String phase, int current, int total) {
+        public int percent() {
+            return this.total == 0 ? 0 : (int) Math.min(100, 100L * this.current / this.total);
+        }
+    }
+
+    /**
+     * Returns the progress reported by a line of simc output, or {@code null} if the line is regular output.
+     */
+    public static Progress parse(CharSequence line) {
+        var matcher = PROGRESS_BAR.matcher(line);
+        if (!matcher.find())
+            return null;
+
+        try {
+            return new Progress(matcher.group("phase"),
+                Integer.parseInt(matcher.group("current")),
+                Integer.parseInt(matcher.group("total")));
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package wrptn.scuffedcraft.simulation;
+
+import lombok.NonNull;
+
+import java.util.List;
+import java.util.function.Predicate;
+
+import static wrptn.scuffedcraft.json.Builders.event;
+
+/**
+ * Runs a simulation twice: a cheap, low-precision pass whose DPS is sent to the client within seconds as an
+ * {@code estimate} event, then the full-precision simulation, whose events replace the estimate.
+ *
+ * The estimate is queued as an inexpensive job, so it leaves the queue ahead of full simulations. The refinement is
+ * only queued once the estimate completed, as a follow-up that a full queue does not reject; if the client cancelled,
+ * or left and had its ticket cancelled in the meantime, it never runs. Estimates are not part of the transcript, so cached results are always refined ones.
+ */
+class ProgressiveJob {
+    /**
+     * Fraction of the cost of the full simulation an estimate is expected to take.
+     */
+    static final double ESTIMATE_COST = 0.1;
+
+    /**
+     * Events the parent ticket emits itself.
+     */
+    private static final List<String> PARENT_EVENTS = List.of(
+        "{\"type\":\"status\"", "{\"type\":\"report\"", "{\"type\":\"error\"", "{\"type\":\"end\"");
+
+    private final Ticket parent;
+    private final Ticket estimate;
+    private final Ticket refinement;
+
+    private Predicate<Ticket> submitter;
+    private boolean started = false;
+
+    /**
+     * @param parent      The ticket observed by the client; it is never queued itself.
+     * @param targetError The {@code target_error} of the estimate, in percent.
+     */
+    ProgressiveJob(@NonNull Ticket parent, double targetError) {
+        this.parent = parent;
+
+        this.estimate = new Ticket(ScaleFactorJob.withoutScaling(parent.getInput()),
+            List.of("target_error=" + targetError), false);
+        this.estimate.setPreliminary(true);
+        this.estimate.registerListener(new Ticket.Listener() {
+            @Override
+            public void onBegin() { ProgressiveJob.this.onBegin(); }
+
+            @Override
+            public void onCompleted() { ProgressiveJob.this.onEstimated(); }
+
+            @Override
+            public void onQueued(int position, JobAccounting.Forecast forecast) {
+                ProgressiveJob.this.parent.updateQueuePosition(position, forecast);
+            }
+        });
+
+        this.refinement = new Ticket(ScaleFactorJob.withoutScaling(parent.getInput()));
+        this.refinement.setFollowUp(true);
+        this.refinement.registerListener(new Ticket.Listener() {
+            @Override
+            public void onCompleted() { ProgressiveJob.this.onRefined(); }
+
+            @Override
+            public void onQueued(int position, JobAccounting.Forecast forecast) {
+                ProgressiveJob.this.parent.updateQueuePosition(position, forecast);
+            }
+
+            @Override
+            public void onEvent(String event, boolean replayable) {
+                for (var prefix : PARENT_EVENTS)
+                    if (event.startsWith(prefix))
+                        return;
+
+                ProgressiveJob.this.parent.relay(event, replayable);
+            }
+        });
+
+        parent.delegateTo(List.of(this.estimate));
+    }
+
+    /**
+     * Whether a ticket benefits from an estimate: a plain simulation, rather than profilesets or scale factors, whose
+     * client waits for a report.
+     */
+    static boolean accepts(@NonNull Ticket ticket) {
+        var input = ticket.getInput();
+        return ticket.isReportRequested() && ticket.getExtraOptions().isEmpty() && !input.isEnableScaling()
+            && input.getVariants().isEmpty();
+    }
+
+    /**
+     * Queues the estimate; the refinement is queued through the same submitter once the estimate completed.
+     *
+     * @param submitter Queues a single ticket, returning {@code false} if it was rejected.
+     * @return {@code false} if the estimate was rejected; the parent ticket has been notified.
+     */
+    boolean submit(@NonNull Predicate<Ticket> submitter) {
+        this.submitter = submitter;
+        if (submitter.test(this.estimate))
+            return true;
+
+        if (this.estimate.isInterrupted())
+            this.parent.markInterrupted();
+        this.parent.emitThrowable(new Exception(this.estimate.getFailureMessage()));
+        return false;
+    }
+
+    private synchronized void onBegin() {
+        if (this.started)
+            return;
+
+        this.started = true;
+        this.parent.markInProgress();
+    }
+
+    private void onEstimated() {
+        if (this.estimate.isFailed()) {
+            // The profile would fail the same way again, and a cancelled estimate means a cancelled parent.
+            this.parent.failWith(this.estimate);
+            return;
+        }
+
+        if (!Double.isNaN(this.estimate.getDps()))
+            this.parent.relay(event("estimate").with("dps", (float) this.estimate.getDps()).end(), false);
+
+        // Cancelling the parent from now on cancels the refinement; it may have been cancelled just before.
+        this.parent.delegateTo(List.of(this.refinement));
+        if (this.parent.isCancelled()) {
+            this.parent.fail(this.parent.cancellation());
+            return;
+        }
+
+        if (!this.submitter.test(this.refinement))
+            this.parent.failWith(this.refinement);
+    }
+
+    private void onRefined() {
+        if (this.refinement.isFailed())
+            this.parent.failWith(this.refinement);
+        else
+            this.parent.finish(this.refinement.getDps(), this.refinement.getReportId());
+    }
+}
@@ -0,0 +1,375 @@
+package wrptn.scuffedcraft.simulation;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Worker mode of the application: pulls jobs from a coordinator, runs simc locally and relays every event of the
+ * simulation back to the coordinator, which sends them to its clients unchanged.
+ *
+ * Events are relayed in batches on a short interval, and at least once per heartbeat so that the lease is renewed
+ * while simc is quiet. If the coordinator reports the lease as expired, the simulation is killed; the job has already
+ * been handed to another worker.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty("simulationcraft.worker.coordinator")
+public class RemoteWorker {
+    /**
+     * Events the coordinator emits itself, because they refer to its own state, such as the URL of the report.
+     */
+    private static final List<String> COORDINATOR_EVENTS = List.of(
+        "{\"type\":\"status\"", "{\"type\":\"report\"", "{\"type\":\"error\"", "{\"type\":\"end\"");
+
+    /**
+     * How long to wait before polling again once the coordinator could not be reached.
+     */
+    private static final Duration RETRY_DELAY = Duration.ofSeconds(2);
+
+    /**
+     * Attempts at sending the report and the outcome of a job, which cannot be replayed once the lease expired.
+     */
+    private static final int COMPLETION_ATTEMPTS = 3;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+
+    private final URI coordinator;
+    private final String authorization;
+    private final String workerId;
+    private final String executablePath;
+    private final CpuBudget cpuBudget;
+    private final ReportStore reportStore;
+    private final ProcessSupervisor supervisor;
+    private final JobDirectories directories;
+    private final Duration flushInterval;
+
+    private final ExecutorService executorService;
+    private final ScheduledExecutorService flusher;
+
+    private final AtomicLong completedJobs = new AtomicLong();
+
+    private volatile boolean running = true;
+
+    /**
+     * A job leased from the coordinator.
+     */
+    private static final class LeasedJob {
+        private final String leaseId;
+        private final Ticket ticket;
+        private final long heartbeatNanos;
+
+        private final Queue<WorkLeases.RelayedEvent> pending = new ConcurrentLinkedQueue<>();
+
+        /**
+         * Events that could not be sent yet, in emission order; guarded by the job.
+         */
+        private final List<WorkLeases.RelayedEvent> unsent = new ArrayList<>();
+        private long lastRenewal = System.nanoTime();
+        private volatile boolean abandoned = false;
+
+        private LeasedJob(String leaseId, Ticket ticket, long heartbeatNanos) {
+            this.leaseId = leaseId;
+            this.ticket = ticket;
+            this.heartbeatNanos = heartbeatNanos;
+        }
+    }
+
+    @Autowired
+    public RemoteWorker(@Value("${simulationcraft.worker.coordinator}") String coordinator,
+                        @Value("${simulationcraft.worker.token}") String token,
+                        @Value("${simulationcraft.worker.id:#{T(java.util.UUID).randomUUID().toString()}}") String workerId,
+                        @Value("${simulationcraft.worker.threads:1}") int threads,
+                        @Value("${simulationcraft.executable.location}") String executablePath,
+                        @Value("${simulationcraft.cpu.cores:0}") int cores,
+                        @Value("${simulationcraft.cpu.pinning:false}") boolean pinning,
+                        @Value("${simulationcraft.cpu.taskset:taskset}") String tasksetPath,
+                        @Value("${simulationcraft.worker.flush-interval:PT0.25S}") Duration flushInterval,
+                        ReportStore reportStore, ProcessSupervisor supervisor, JobDirectories directories) {
+        this(URI.create(coordinator), token, workerId, threads, executablePath,
+            new CpuBudget(cores, threads, pinning, tasksetPath), reportStore, supervisor, directories, flushInterval);
+    }
+
+    public RemoteWorker(@NonNull URI coordinator, @NonNull String token, @NonNull String workerId, int threads,
+                        @NonNull String executablePath, @NonNull CpuBudget cpuBudget, @NonNull ReportStore reportStore,
+                        @NonNull ProcessSupervisor supervisor, @NonNull JobDirectories directories,
+                        @NonNull Duration flushInterval) {
+        if (threads < 1)
+            throw new IllegalArgumentException("At least one thread is required");
+
+        this.coordinator = coordinator;
+        this.authorization = "Bearer " + token;
+        this.workerId = workerId;
+        this.executablePath = executablePath;
+        this.cpuBudget = cpuBudget;
+        this.reportStore = reportStore;
+        this.supervisor = supervisor;
+        this.directories = directories;
+        this.flushInterval = flushInterval;
+
+        var threadIndex = new AtomicInteger();
+        this.executorService = Executors.newFixedThreadPool(threads, runnable -> {
+            var thread = new Thread(runnable, "remote-worker-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "remote-worker-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        log.info("Pulling jobs from {} as worker {} on {} threads.", coordinator, workerId, threads);
+        for (var i = 0; i < threads; ++i)
+            this.executorService.execute(this::runWorker);
+    }
+
+    /**
+     * Returns the amount of jobs this worker reported to the coordinator.
+     */
+    public long getCompletedJobs() {
+        return this.completedJobs.get();
+    }
+
+    private void runWorker() {
+        while (this.running) {
+            JsonNode description;
+            try {
+                var response = this.send(this.request("/v2/workers/lease?worker="
+                    + URLEncoder.encode(this.workerId, StandardCharsets.UTF_8))
+                    .POST(HttpRequest.BodyPublishers.noBody()));
+
+                if (response.statusCode() == 204)
+                    continue;
+
+                if (response.statusCode() != 200) {
+                    log.warn("The coordinator refused to lease a job: HTTP {}.", response.statusCode());
+                    Thread.sleep(RETRY_DELAY.toMillis());
+                    continue;
+                }
+
+                description = this.objectMapper.readTree(response.body());
+            } catch (IOException ex) {
+                log.warn("Cannot reach the coordinator: {}", ex.toString());
+                try {
+                    Thread.sleep(RETRY_DELAY.toMillis());
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+                continue;
+            } catch (InterruptedException ex) {
+                return;
+            }
+
+            try {
+                this.run(description);
+            } catch (Exception ex) {
+                log.error("Unhandled failure while executing leased job {}.", description.path("lease").asText(), ex);
+            }
+        }
+    }
+
+    private void run(JsonNode description) throws InterruptedException {
+        var inputNode = description.get("input");
+        var input = InputCodec.decode(inputNode.get("uuid").asText(), inputNode);
+        var extraOptions = new ArrayList<String>();
+        for (var option : description.get("extraOptions"))
+            extraOptions.add(option.asText());
+
+        var ticket = new Ticket(input, extraOptions, description.get("reportRequested").asBoolean());
+        var job = new LeasedJob(description.get("lease").asText(), ticket,
+            TimeUnit.MILLISECONDS.toNanos(description.get("heartbeatMillis").asLong()));
+        ticket.registerListener(new Ticket.Listener() {
+            @Override
+            public void onEvent(String event, boolean replayable) {
+                for (var prefix : COORDINATOR_EVENTS)
+                    if (event.startsWith(prefix))
+                        return;
+
+                job.pending.add(new WorkLeases.RelayedEvent(event, replayable));
+            }
+        });
+
+        log.info("Executing leased job {}.", input.getRequestUUID());
+
+        var interval = this.flushInterval.toMillis();
+        var flushTask = this.flusher.scheduleWithFixedDelay(() -> this.flush(job, false), interval, interval,
+            TimeUnit.MILLISECONDS);
+        var allocation = this.cpuBudget.acquire(0);
+        try {
+            // Threads are the unit of concurrency of a worker, so waiting for the simulation here is intended.
+            ticket.execute(this.executablePath, this.reportStore, this.cpuBudget, allocation, this.supervisor,
+                this.directories).block();
+        } finally {
+            this.cpuBudget.release(allocation);
+            flushTask.cancel(false);
+        }
+
+        this.flush(job, true);
+        try {
+            if (!job.abandoned && ticket.getReportId() != null)
+                this.uploadReport(job);
+
+            if (!job.abandoned)
+                this.complete(job);
+        } finally {
+            if (ticket.getReportId() != null)
+                this.reportStore.delivered(ticket.getReportId());
+        }
+    }
+
+    /**
+     * Relays the pending events of a job, or renews its lease if a heartbeat is due.
+     *
+     * @param force Whether to contact the coordinator even if there is nothing to send.
+     */
+    private void flush(LeasedJob job, boolean force) {
+        synchronized (job) {
+            if (job.abandoned)
+                return;
+
+            WorkLeases.RelayedEvent event;
+            while ((event = job.pending.poll()) != null)
+                job.unsent.add(event);
+
+            var now = System.nanoTime();
+            if (job.unsent.isEmpty() && !force && now - job.lastRenewal < job.heartbeatNanos)
+                return;
+
+            try {
+                var response = this.send(this.request("/v2/workers/leases/" + job.leaseId + "/events")
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(this.objectMapper.writeValueAsString(job.unsent))));
+
+                if (response.statusCode() == 410) {
+                    this.abandon(job);
+                } else if (response.statusCode() / 100 == 2) {
+                    job.unsent.clear();
+                    job.lastRenewal = now;
+                } else {
+                    log.warn("The coordinator refused the events of lease {}: HTTP {}.", job.leaseId,
+                        response.statusCode());
+                }
+            } catch (IOException ex) {
+                // Kept for the next attempt; the lease expires if the coordinator stays unreachable.
+                log.warn("Cannot relay the events of lease {}: {}", job.leaseId, ex.toString());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void uploadReport(LeasedJob job) throws InterruptedException {
+        var report = this.reportStore.get(job.ticket.getReportId());
+        if (report == null)
+            return;
+
+        this.sendCompletion(job, () -> this.request("/v2/workers/leases/" + job.leaseId + "/report")
+            .header("Content-Type", "text/html")
+            .PUT(HttpRequest.BodyPublishers.ofFile(report.path())));
+    }
+
+    private void complete(LeasedJob job) throws InterruptedException {
+        var ticket = job.ticket;
+        var outcome = new WorkLeases.Outcome(Double.isNaN(ticket.getDps()) ? null : ticket.getDps(),
+            ticket.getCpuNanos(), ticket.getPeakRssBytes(), ticket.isTimedOut(),
+            ticket.isFailed() ? ticket.getFailureMessage() : null);
+
+        this.sendCompletion(job, () -> this.request("/v2/workers/leases/" + job.leaseId + "/complete")
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(this.objectMapper.writeValueAsString(outcome))));
+
+        if (!job.abandoned)
+            this.completedJobs.incrementAndGet();
+    }
+
+    @FunctionalInterface
+    private interface RequestFactory {
+        HttpRequest.Builder create() throws IOException;
+    }
+
+    /**
+     * Sends the report or the outcome of a job, retrying if the coordinator cannot be reached.
+     */
+    private void sendCompletion(LeasedJob job, RequestFactory requestFactory) throws InterruptedException {
+        for (var attempt = 1; attempt <= COMPLETION_ATTEMPTS; ++attempt) {
+            try {
+                var response = this.send(requestFactory.create());
+                if (response.statusCode() == 410)
+                    this.abandon(job);
+                else if (response.statusCode() / 100 != 2)
+                    log.warn("The coordinator refused the results of lease {}: HTTP {}.", job.leaseId,
+                        response.statusCode());
+                return;
+            } catch (IOException ex) {
+                log.warn("Cannot send the results of lease {} (attempt {}/{}): {}", job.leaseId, attempt,
+                    COMPLETION_ATTEMPTS, ex.toString());
+                Thread.sleep(RETRY_DELAY.toMillis());
+            }
+        }
+    }
+
+    private void abandon(LeasedJob job) {
+        job.abandoned = true;
+        log.warn("Lease {} expired; abandoning the job.", job.leaseId);
+        job.ticket.kill();
+    }
+
+    private HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder(this.coordinator.resolve(path))
+            .header("Authorization", this.authorization)
+            .timeout(Duration.ofMinutes(1));
+    }
+
+    private HttpResponse<String> send(HttpRequest.Builder request) throws IOException, InterruptedException {
+        return this.client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Stops pulling jobs and lets running simulations finish, like the {@link Dispatcher}.
+     */
+    @PreDestroy
+    public void preDestroy() {
+        this.running = false;
+
+        this.executorService.shutdown();
+        try {
+            if (!this.executorService.awaitTermination(60, TimeUnit.SECONDS)) {
+                this.executorService.shutdownNow();
+                if (!this.executorService.awaitTermination(10, TimeUnit.SECONDS))
+                    log.error("Remote workers did not terminate.");
+            }
+        } catch (InterruptedException ex) {
+            this.executorService.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+
+        this.flusher.shutdownNow();
+    }
+}
@@ -0,0 +1,301 @@
+package wrptn.scuffedcraft.simulation;
+
+import lombok.NonNull;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.StringUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The libraries and style sheets simc embeds in every HTML report, which the application also serves as static
+ * resources.
+ *
+ * Static resources are served under versioned URLs, such as {@code /simcraft/js/jquery.min-<md5>.js}, which browsers
+ * cache for a year (see {@code spring.web.resources.*}). Reports are streamed through {@link #strip} before they are
+ * stored: every inline {@code <script>} or {@code <style>} block whose content is one of these assets is replaced by a
+ * reference to its versioned URL. Only exact copies are replaced, so that stripped reports render the same; blocks
+ * that differ, for instance after an upgrade of simc, are kept.
+ */
+@Component
+public class ReportAssets {
+    /**
+     * Paths of the assets, relative to the static resources.
+     */
+    static final List<String> PATHS = List.of(
+        "/simcraft/js/jquery.min.js",
+        "/simcraft/js/highcharts.min.js",
+        "/simcraft/style/sim.css",
+        "/simcraft/style/shared.css");
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Longest opening or closing tag that is inspected; longer ones are copied as they are.
+     */
+    private static final int MAX_TAG_LENGTH = 1024;
+
+    private static final byte[] SCRIPT = "script".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] STYLE = "style".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * @param content The content of the asset, without leading and trailing whitespace.
+     */
+    private record Asset(String url, byte[] content, boolean script) { }
+
+    private final Map<String, String> urls = new HashMap<>();
+
+    /**
+     * Assets by length of their content.
+     */
+    private final Map<Integer, List<Asset>> assets = new HashMap<>();
+    private final int maxLength;
+
+    public ReportAssets() {
+        var maxLength = 0;
+        for (var path : PATHS) {
+            byte[] content;
+            try (var input = new ClassPathResource("static" + path).getInputStream()) {
+                content = input.readAllBytes();
+            } catch (IOException ex) {
+                throw new UncheckedIOException("Unable to read static asset '" + path + "'", ex);
+            }
+
+            // The version Spring's content version strategy expects.
+            var url = StringUtils.stripFilenameExtension(path) + "-" + DigestUtils.md5DigestAsHex(content) + "."
+                + StringUtils.getFilenameExtension(path);
+            this.urls.put(path, url);
+
+            var start = 0;
+            var end = content.length;
+            while (start < end && isWhitespace(content[start]))
+                ++start;
+            while (end > start && isWhitespace(content[end - 1]))
+                --end;
+
+            var asset = new Asset(url, Arrays.copyOfRange(content, start, end), path.endsWith(".js"));
+            this.assets.computeIfAbsent(asset.content().length, length -> new ArrayList<>()).add(asset);
+            maxLength = Math.max(maxLength, asset.content().length);
+        }
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * Returns the versioned URL of an asset, such as {@code /simcraft/style/sim-<md5>.css} for
+     * {@code /simcraft/style/sim.css}.
+     */
+    public String url(@NonNull String path) {
+        var url = this.urls.get(path);
+        if (url == null)
+            throw new IllegalArgumentException("Unknown asset '" + path + "'");
+        return url;
+    }
+
+    /**
+     * Copies a report, replacing the assets it embeds with references to their versioned URLs. Only the content of
+     * {@code <script>} and {@code <style>} elements is buffered, and only up to the size of the largest asset.
+     *
+     * @return The amount of bytes that were removed.
+     */
+    public long strip(@NonNull InputStream input, @NonNull OutputStream output) throws IOException {
+        var reader = new Reader(input);
+        var removed = 0L;
+        var tag = new ByteArrayOutputStream(MAX_TAG_LENGTH);
+        var body = new ByteArrayOutputStream(BUFFER_SIZE);
+        var closing = new ByteArrayOutputStream(MAX_TAG_LENGTH);
+
+        while (reader.copyText(output, Integer.MAX_VALUE)) {
+            tag.reset();
+            tag.write('<');
+            var element = reader.readTag(tag) ? elementOf(tag.toByteArray()) : null;
+            if (element == null || hasSource(tag)) {
+                tag.writeTo(output);
+                continue;
+            }
+
+            // Buffers the content of the element until its closing tag, unless it is larger than any asset.
+            body.reset();
+            closing.reset();
+            var complete = reader.readBody(element, body, closing, this.maxLength + BUFFER_SIZE);
+            var asset = complete ? this.match(body.toByteArray(), element == SCRIPT) : null;
+            if (asset == null) {
+                tag.writeTo(output);
+                body.writeTo(output);
+                closing.writeTo(output);
+                continue;
+            }
+
+            var reference = (asset.script()
+                ? "<script type=\"text/javascript\" src=\"" + asset.url() + "\"></script>"
+                : "<link rel=\"stylesheet\" type=\"text/css\" href=\"" + asset.url() + "\" />")
+                .getBytes(StandardCharsets.US_ASCII);
+            output.write(reference);
+            removed += tag.size() + body.size() + closing.size() - reference.length;
+        }
+        output.flush();
+        return removed;
+    }
+
+    private Asset match(byte[] body, boolean script) {
+        var start = 0;
+        var end = body.length;
+        while (start < end && isWhitespace(body[start]))
+            ++start;
+        while (end > start && isWhitespace(body[end - 1]))
+            --end;
+
+        var candidates = this.assets.get(end - start);
+        if (candidates == null)
+            return null;
+
+        for (var candidate : candidates)
+            if (candidate.script() == script && Arrays.equals(candidate.content(), 0, candidate.content().length, body, start, end))
+                return candidate;
+        return null;
+    }
+
+    /**
+     * Whether an opening tag loads its content from elsewhere, in which case it has none of its own.
+     */
+    private static boolean hasSource(ByteArrayOutputStream tag) {
+        return tag.toString(StandardCharsets.ISO_8859_1).toLowerCase().matches("(?s).*\\ssrc\\s*=.*");
+    }
+
+    private static boolean isWhitespace(int b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f';
+    }
+
+    private static boolean isNameEnd(int b) {
+        return b == '>' || b == '/' || isWhitespace(b);
+    }
+
+    /**
+     * Buffered reads of a report, which copy text in bulk up to the next tag.
+     */
+    private static final class Reader {
+        private final InputStream input;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private int position = 0;
+        private int limit = 0;
+
+        Reader(InputStream input) {
+            this.input = input;
+        }
+
+        /**
+         * Copies bytes up to the next {@code <}, which is consumed, or until {@code max} bytes were copied.
+         *
+         * @return {@code true} if a {@code <} was consumed; {@code false} at the end of the report or after {@code max}
+         * bytes.
+         */
+        boolean copyText(OutputStream output, int max) throws IOException {
+            var copied = 0;
+            while (copied < max) {
+                if (this.position == this.limit && !this.fill())
+                    return false;
+
+                var start = this.position;
+                var end = (int) Math.min(this.limit, (long) start + max - copied);
+                while (this.position < end && this.buffer[this.position] != '<')
+                    ++this.position;
+
+                output.write(this.buffer, start, this.position - start);
+                copied += this.position - start;
+                if (this.position < end) {
+                    ++this.position;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Reads the rest of a tag, whose {@code <} has been consumed, into {@code tag}. Stops before the next
+         * {@code <}, since text that is not a tag may be followed by one.
+         *
+         * @return Whether the tag is complete.
+         */
+        boolean readTag(ByteArrayOutputStream tag) throws IOException {
+            while (tag.size() < MAX_TAG_LENGTH) {
+                if (this.position == this.limit && !this.fill())
+                    return false;
+
+                var b = this.buffer[this.position];
+                if (b == '<')
+                    return false;
+
+                ++this.position;
+                tag.write(b);
+                if (b == '>')
+                    return true;
+            }
+            return false;
+        }
+
+        /**
+         * Reads the content of an element into {@code body} and its closing tag into {@code closing}.
+         *
+         * @return {@code false} if the content is longer than {@code limit} or the report ended first; whatever was
+         * read is in {@code body} and {@code closing}.
+         */
+        boolean readBody(byte[] element, ByteArrayOutputStream body, ByteArrayOutputStream closing, int limit)
+            throws IOException {
+            while (body.size() <= limit && this.copyText(body, limit + 1 - body.size())) {
+                closing.reset();
+                closing.write('<');
+                if (this.readTag(closing) && isClosingTag(closing.toByteArray(), element))
+                    return true;
+
+                closing.writeTo(body);
+                closing.reset();
+            }
+            return false;
+        }
+
+        private boolean fill() throws IOException {
+            this.position = 0;
+            this.limit = Math.max(0, this.input.read(this.buffer));
+            return this.limit > 0;
+        }
+    }
+
+    /**
+     * Whether a complete tag opens a {@code <script>} or {@code <style>} element, in any case.
+     *
+     * @return {@link #SCRIPT}, {@link #STYLE}, or {@code null} for any other tag.
+     */
+    private static byte[] elementOf(byte[] tag) {
+        if (nameIs(tag, 1, SCRIPT))
+            return SCRIPT;
+        if (nameIs(tag, 1, STYLE))
+            return STYLE;
+        return null;
+    }
+
+    private static boolean isClosingTag(byte[] tag, byte[] element) {
+        return tag.length > 2 && tag[1] == '/' && nameIs(tag, 2, element);
+    }
+
+    /**
+     * Whether a tag has the given element name at {@code offset}, in any case, followed by the end of the name.
+     */
+    private static boolean nameIs(byte[] tag, int offset, byte[] name) {
+        if (tag.length < offset + name.length + 1)
+            return false;
+        for (var i = 0; i < name.length; ++i)
+            if ((tag[offset + i] | 0x20) != name[i])
+                return false;
+        return isNameEnd(tag[offset + name.length]);
+    }
+}
@@ -0,0 +1,269 @@
+package wrptn.scuffedcraft.simulation;
+
+import jakarta.annotation.PreDestroy;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps finished HTML reports on disk until they are delivered or expire.
+ *
+ * Every report is stored alongside a gzip-compressed copy so that it can be sent as-is to clients that accept it.
+ * The libraries and style sheets simc embeds are stripped first, see {@link ReportAssets}.
+ *
+ * Like {@link JobDirectories}, report files are named after the pid of the process that stored them, and only those of
+ * processes that are gone are deleted on startup; a coordinator and its workers may share the same directory.
+ */
+@Slf4j
+@Component
+public class ReportStore {
+    private static final String REPORT_SUFFIX = ".html";
+    private static final String COMPRESSED_SUFFIX = ".html.gz";
+    private static final Pattern REPORT_NAME =
+        Pattern.compile("(\\d+)-[0-9a-f]{8}(-[0-9a-f]{4}){3}-[0-9a-f]{12}\\.html(\\.gz)?");
+
+    private final String prefix = ProcessHandle.current().pid() + "-";
+
+    private final Path directory;
+    private final Duration timeToLive;
+    private final Duration deliveredGrace;
+    private final Clock clock;
+    private final ReportAssets assets;
+
+    private final Map<String, Report> reports = new ConcurrentHashMap<>();
+    private final Map<String, Instant> expirations = new ConcurrentHashMap<>();
+    private final Map<String, Instant> retentions = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        var thread = new Thread(runnable, "report-sweeper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public record Report(String id, Path path, long size, Path compressedPath, long compressedSize, String etag,
+                         Instant createdAt) { }
+
+    @Autowired
+    public ReportStore(@Value("${simulationcraft.reports.directory:#{systemProperties['java.io.tmpdir']}/scuffedcraft-reports}") String directory,
+                       @Value("${simulationcraft.reports.time-to-live:PT30M}") Duration timeToLive,
+                       @Value("${simulationcraft.reports.delivered-grace:PT2M}") Duration deliveredGrace,
+                       ReportAssets assets) {
+        this(Paths.get(directory), timeToLive, deliveredGrace, Clock.systemUTC(), assets);
+
+        this.sweeper.scheduleWithFixedDelay(this::sweep, 1, 1, TimeUnit.MINUTES);
+    }
+
+    public ReportStore(@NonNull Path directory, @NonNull Duration timeToLive, @NonNull Duration deliveredGrace,
+                       @NonNull Clock clock, @NonNull ReportAssets assets) {
+        this.directory = directory;
+        this.timeToLive = timeToLive;
+        this.deliveredGrace = deliveredGrace;
+        this.clock = clock;
+        this.assets = assets;
+
+        try {
+            Files.createDirectories(directory);
+
+            // Reports of a previous run can no longer be reached; anything else in the directory is not ours to delete.
+            try (var leftovers = Files.list(directory)) {
+                leftovers.filter(ReportStore::isOrphan).forEach(ReportStore::deleteQuietly);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Moves a report produced by simc into the store, stripping it of the assets it embeds.
+     *
+     * @return The stored report, which can be served until it is delivered or expires.
+     */
+    public Report store(@NonNull Path source) throws IOException {
+        var id = UUID.randomUUID().toString();
+        var path = this.directory.resolve(this.prefix + id + REPORT_SUFFIX);
+        var compressedPath = this.directory.resolve(this.prefix + id + COMPRESSED_SUFFIX);
+
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+
+        // The report, its compressed copy and its digest are all written in a single pass.
+        long removed;
+        try (var input = Files.newInputStream(source);
+             var report = new BufferedOutputStream(Files.newOutputStream(path), 64 * 1024);
+             var compressed = new GZIPOutputStream(Files.newOutputStream(compressedPath), 64 * 1024);
+             var output = new DigestOutputStream(new Tee(report, compressed), digest)) {
+            removed = this.assets.strip(input, output);
+        }
+        Files.delete(source);
+        log.debug("Stripped {} bytes of shared assets from report {}.", removed, id);
+
+        var report = new Report(id, path, Files.size(path), compressedPath, Files.size(compressedPath),
+            HexFormat.of().formatHex(digest.digest(), 0, 16), this.clock.instant());
+
+        this.reports.put(id, report);
+        this.expirations.put(id, this.clock.instant().plus(this.timeToLive));
+        return report;
+    }
+
+    /**
+     * Returns a report that has not expired yet, or {@code null}.
+     */
+    public Report get(@NonNull String id) {
+        var report = this.reports.get(id);
+        if (report == null)
+            return null;
+
+        var expiry = this.expirations.get(id);
+        if (expiry == null || expiry.isBefore(this.clock.instant())) {
+            this.remove(id);
+            return null;
+        }
+
+        return report;
+    }
+
+    /**
+     * Keeps a report available until at least the given instant, for instance because a cached result refers to it.
+     * Delivering the report does not shorten this.
+     *
+     * @return {@code false} if the report is already gone.
+     */
+    public boolean retain(@NonNull String id, @NonNull Instant until) {
+        if (this.get(id) == null)
+            return false;
+
+        this.retentions.merge(id, until, (previous, next) -> previous.isAfter(next) ? previous : next);
+        this.expirations.computeIfPresent(id, (key, expiry) -> expiry.isAfter(until) ? expiry : until);
+        return this.reports.containsKey(id);
+    }
+
+    /**
+     * Records that a report has been sent in full; unless it is retained, it is only kept for a short grace period
+     * afterwards, so that other tabs observing the same simulation can still fetch it.
+     */
+    public void delivered(@NonNull String id) {
+        var deliveredUntil = this.clock.instant().plus(this.deliveredGrace);
+        var retainedUntil = this.retentions.get(id);
+        if (retainedUntil != null && retainedUntil.isAfter(deliveredUntil))
+            deliveredUntil = retainedUntil;
+
+        var until = deliveredUntil;
+        this.expirations.computeIfPresent(id, (key, expiry) -> expiry.isBefore(until) ? expiry : until);
+    }
+
+    /**
+     * Deletes every expired report.
+     */
+    public void sweep() {
+        var now = this.clock.instant();
+        this.expirations.forEach((id, expiry) -> {
+            if (expiry.isBefore(now))
+                this.remove(id);
+        });
+    }
+
+    private void remove(String id) {
+        this.expirations.remove(id);
+        this.retentions.remove(id);
+
+        var report = this.reports.remove(id);
+        if (report == null)
+            return;
+
+        // Deliveries in progress keep reading from their open channel.
+        deleteQuietly(report.path());
+        deleteQuietly(report.compressedPath());
+    }
+
+    private static boolean isOrphan(Path path) {
+        var name = REPORT_NAME.matcher(path.getFileName().toString());
+        if (!name.matches() || !Files.isRegularFile(path))
+            return false;
+
+        try {
+            var pid = Long.parseLong(name.group(1));
+            return ProcessHandle.of(pid).map(process -> !process.isAlive()).orElse(true);
+        } catch (NumberFormatException ex) {
+            return false;
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ex) {
+            log.warn("Unable to delete report file '{}'.", path, ex);
+        }
+    }
+
+    @PreDestroy
+    public void preDestroy() {
+        this.sweeper.shutdownNow();
+    }
+
+    /**
+     * Writes to two streams at once.
+     */
+    private static final class Tee extends OutputStream {
+        private final OutputStream first;
+        private final OutputStream second;
+
+        Tee(OutputStream first, OutputStream second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            this.first.write(b);
+            this.second.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            this.first.write(b, off, len);
+            this.second.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            this.first.flush();
+            this.second.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try (this.second) {
+                this.first.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package wrptn.scuffedcraft.simulation;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import wrptn.scuffedcraft.models.SimulationInput;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Content-addressed cache of simulation results.
+ *
+ * Completed transcripts are kept in an LRU bounded both in entry count and in characters, and expire after a fixed
+ * time to live. Tickets that are still queued or running are tracked separately so that identical submissions can
+ * observe them instead of starting another simc process.
+ */
+@Slf4j
+@Component
+public class ResultCache {
+    private final int maxEntries;
+    private final long maxCharacters;
+    private final Duration timeToLive;
+    private final Clock clock;
+    private final ReportStore reportStore;
+
+    private final Map<String, Ticket> inFlight = new ConcurrentHashMap<>();
+    private final LinkedHashMap<String, Entry> completed = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedCharacters = 0;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    public enum Outcome {
+        /**
+         * The ticket was completed from a cached transcript.
+         */
+        HIT,
+        /**
+         * An identical simulation is queued or running; its ticket should be observed instead.
+         */
+        COALESCED,
+        /**
+         * The ticket has been reserved as the in-flight simulation for its key and must be submitted.
+         */
+        MISS
+    }
+
+    public record Lookup(Outcome outcome, Ticket ticket) { }
+
+    private record Entry(List<String> events, String reportId, long characters, Instant expiresAt) { }
+
+    @Autowired
+    public ResultCache(@Value("${simulationcraft.cache.max-entries:256}") int maxEntries,
+                       @Value("${simulationcraft.cache.max-characters:134217728}") long maxCharacters,
+                       @Value("${simulationcraft.cache.time-to-live:PT30M}") Duration timeToLive,
+                       ReportStore reportStore) {
+        this(maxEntries, maxCharacters, timeToLive, Clock.systemUTC(), reportStore);
+    }
+
+    public ResultCache(int maxEntries, long maxCharacters, @NonNull Duration timeToLive, @NonNull Clock clock,
+                       @NonNull ReportStore reportStore) {
+        this.maxEntries = maxEntries;
+        this.maxCharacters = maxCharacters;
+        this.timeToLive = timeToLive;
+        this.clock = clock;
+        this.reportStore = reportStore;
+    }
+
+    /**
+     * Computes the canonical key of a submission: a SHA-256 digest of the sanitized profile and of every option that
+     * affects the simulation's output.
+     */
+    public static String keyOf(@NonNull SimulationInput input) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+
+        // Sanitized lines and profilesets are digested as they are encoded, each followed by a line separator.
+        try (var writer = new BufferedWriter(new OutputStreamWriter(
+            new DigestOutputStream(OutputStream.nullOutputStream(), digest), StandardCharsets.UTF_8))) {
+            input.writeProfile(writer);
+            input.writeVariants(writer);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        var options = "\0fight_style=" + input.getFightType().name()
+            + "\0desired_targets=" + input.getNumberOfEnemies()
+            + "\0bloodlust=" + input.isEnableBloodlust()
+            + "\0scaling=" + input.isEnableScaling();
+        digest.update(options.getBytes(StandardCharsets.UTF_8));
+
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Resolves the ticket a client should observe for a submission.
+     *
+     * @param key       The key of the submission, as returned by {@link #keyOf(SimulationInput)}.
+     * @param candidate A fresh ticket for the submission.
+     */
+    public Lookup lookup(@NonNull String key, @NonNull Ticket candidate) {
+        var entry = this.getCompleted(key);
+        if (entry != null) {
+            this.hits.increment();
+            candidate.replay(entry.events(), entry.reportId());
+            return new Lookup(Outcome.HIT, candidate);
+        }
+
+        var existing = this.inFlight.putIfAbsent(key, candidate);
+        if (existing != null) {
+            this.coalesced.increment();
+            return new Lookup(Outcome.COALESCED, existing);
+        }
+
+        this.misses.increment();
+        return new Lookup(Outcome.MISS, candidate);
+    }
+
+    /**
+     * Releases the in-flight reservation of a ticket and, if it succeeded, caches its transcript.
+     */
+    public void complete(@NonNull String key, @NonNull Ticket ticket) {
+        if (!this.inFlight.remove(key, ticket))
+            return;
+
+        if (ticket.isFailed() || !ticket.isCompleted())
+            return;
+
+        var events = ticket.getTranscript();
+        var characters = events.stream().mapToLong(String::length).sum();
+        if (characters > this.maxCharacters)
+            return;
+
+        // The report is kept for as long as the transcript linking to it, even once it has been viewed.
+        var expiresAt = this.clock.instant().plus(this.timeToLive);
+        if (ticket.getReportId() != null && !this.reportStore.retain(ticket.getReportId(), expiresAt))
+            return;
+
+        synchronized (this.completed) {
+            var entry = new Entry(events, ticket.getReportId(), characters, expiresAt);
+            var previous = this.completed.put(key, entry);
+            if (previous != null)
+                this.cachedCharacters -= previous.characters();
+            this.cachedCharacters += characters;
+
+            this.evict();
+        }
+    }
+
+    private Entry getCompleted(String key) {
+        synchronized (this.completed) {
+            var entry = this.completed.get(key);
+            if (entry == null)
+                return null;
+
+            // Reports are retained for as long as their entry; never link to one that is gone regardless.
+            var expired = entry.expiresAt().isBefore(this.clock.instant());
+            if (expired || (entry.reportId() != null && this.reportStore.get(entry.reportId()) == null)) {
+                this.completed.remove(key);
+                this.cachedCharacters -= entry.characters();
+                return null;
+            }
+
+            return entry;
+        }
+    }
+
+    private void evict() {
+        var now = this.clock.instant();
+        var iterator = this.completed.values().iterator();
+        while (iterator.hasNext()) {
+            var entry = iterator.next();
+            var overBudget = this.completed.size() > this.maxEntries || this.cachedCharacters > this.maxCharacters;
+            if (!overBudget && !entry.expiresAt().isBefore(now))
+                continue;
+
+            iterator.remove();
+            this.cachedCharacters -= entry.characters();
+        }
+    }
+
+    public long getHits() { return this.hits.sum(); }
+
+    public long getMisses() { return this.misses.sum(); }
+
+    public long getCoalesced() { return this.coalesced.sum(); }
+
+    public int getSize() {
+        synchronized (this.completed) {
+            return this.completed.size();
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package wrptn.scuffedcraft.simulation;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static wrptn.scuffedcraft.json.Builders.array;
+import static wrptn.scuffedcraft.json.Builders.object;
+
+/**
+ * The essentials of a simulation, read from simc's {@code json2} output: the player's DPS, its most damaging abilities
+ * and its scale factors, if simc computed them.
+ *
+ * The output describes every iteration statistic of every actor and easily weighs megabytes; it is read with a
+ * streaming parser that skips whatever is not summarized, rather than loaded as a tree.
+ *
+ * @param dpsError  Half the width of the confidence interval of the DPS, as simc prints it next to the DPS.
+ * @param abilities The abilities dealing the most damage, most damaging first.
+ */
+public record ResultSummary(String player, float dps, float dpsError, List<Ability> abilities,
+                            Map<String, Float> scaleFactors) {
+    /**
+     * @param share The fraction of the player's damage dealt by this ability.
+     */
+    public record Ability(String name, float dps, float share) { }
+
+    static final int TOP_ABILITIES = 8;
+
+    /**
+     * The z-score simc uses unless told otherwise, for a 95% confidence interval.
+     */
+    private static final float DEFAULT_CONFIDENCE_ESTIMATOR = 1.96f;
+
+    private static final JsonFactory factory = new JsonFactory();
+
+    /**
+     * Summarizes the first player of a {@code json2} output.
+     *
+     * @return {@code null} if the output does not describe any player.
+     */
+    public static ResultSummary parse(@NonNull InputStream input) throws IOException {
+        try (var parser = factory.createParser(input)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT)
+                return null;
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                var field = parser.currentName();
+                parser.nextToken();
+                if (field.equals("sim"))
+                    return parseSim(parser);
+                parser.skipChildren();
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Encodes the summary as a {@code summary} event.
+     */
+    public ObjectNode toEvent() {
+        var abilities = array();
+        for (var ability : this.abilities)
+            abilities.with(object("name", ability.name()).with("dps", ability.dps()).with("share", ability.share()));
+
+        var scaleFactors = object();
+        this.scaleFactors.forEach(scaleFactors::with);
+
+        return object("type", "summary")
+            .with("player", this.player)
+            .with("dps", this.dps)
+            .with("error", this.dpsError)
+            .with("abilities", abilities)
+            .with("scaleFactors", scaleFactors)
+            .end();
+    }
+
+    private static ResultSummary parseSim(JsonParser parser) throws IOException {
+        var confidenceEstimator = DEFAULT_CONFIDENCE_ESTIMATOR;
+        ResultSummary summary = null;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            var field = parser.currentName();
+            var token = parser.nextToken();
+            if (field.equals("options") && token == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    var option = parser.currentName();
+                    parser.nextToken();
+                    if (option.equals("confidence_estimator"))
+                        confidenceEstimator = parser.getFloatValue();
+                    else
+                        parser.skipChildren();
+                }
+            } else if (field.equals("players") && token == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    if (summary == null)
+                        summary = parsePlayer(parser);
+                    else
+                        parser.skipChildren();
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+
+        // Options are written before players, but nothing guarantees it.
+        if (summary == null)
+            return null;
+        return new ResultSummary(summary.player, summary.dps, summary.dpsError * confidenceEstimator,
+            summary.abilities, summary.scaleFactors);
+    }
+
+    /**
+     * Reads a player, whose start has just been read; its {@code dpsError} is the standard deviation of the mean.
+     */
+    private static ResultSummary parsePlayer(JsonParser parser) throws IOException {
+        String name = null;
+        var dps = Float.NaN;
+        var meanStdDev = 0f;
+        var abilities = new ArrayList<Ability>();
+        var scaleFactors = new LinkedHashMap<String, Float>();
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            var field = parser.currentName();
+            parser.nextToken();
+            if (field.equals("name")) {
+                name = parser.getValueAsString();
+            } else if (field.equals("collected_data") && isStartOf(parser, JsonToken.START_OBJECT)) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    var data = parser.currentName();
+                    parser.nextToken();
+                    if (!data.equals("dps") || !isStartOf(parser, JsonToken.START_OBJECT)) {
+                        parser.skipChildren();
+                        continue;
+                    }
+
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        var statistic = parser.currentName();
+                        parser.nextToken();
+                        if (statistic.equals("mean"))
+                            dps = parser.getFloatValue();
+                        else if (statistic.equals("mean_std_dev"))
+                            meanStdDev = parser.getFloatValue();
+                        else
+                            parser.skipChildren();
+                    }
+                }
+            } else if (field.equals("stats") && isStartOf(parser, JsonToken.START_ARRAY)) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    var ability = parseAbility(parser);
+                    if (ability != null)
+                        abilities.add(ability);
+                }
+            } else if (field.equals("scale_factors") && isStartOf(parser, JsonToken.START_OBJECT)) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    var stat = parser.currentName();
+                    if (parser.nextToken().isNumeric())
+                        scaleFactors.put(stat, parser.getFloatValue());
+                    else
+                        parser.skipChildren();
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+
+        abilities.sort(Comparator.comparingDouble(Ability::dps).reversed());
+        var top = List.copyOf(abilities.subList(0, Math.min(TOP_ABILITIES, abilities.size())));
+        return new ResultSummary(name, dps, meanStdDev, top, scaleFactors);
+    }
+
+    /**
+     * Reads an entry of a player's {@code stats}, whose start has just been read.
+     *
+     * @return {@code null} if the entry does not deal damage.
+     */
+    private static Ability parseAbility(JsonParser parser) throws IOException {
+        String name = null;
+        String type = null;
+        var dps = 0f;
+        var share = 0f;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            var field = parser.currentName();
+            var token = parser.nextToken();
+            if (field.equals("name")) {
+                name = parser.getValueAsString();
+            } else if (field.equals("type")) {
+                type = parser.getValueAsString();
+            } else if (field.equals("portion_amount") && token.isNumeric()) {
+                share = parser.getFloatValue();
+            } else if (field.equals("portion_aps") && isStartOf(parser, JsonToken.START_OBJECT)) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    var statistic = parser.currentName();
+                    parser.nextToken();
+                    if (statistic.equals("mean"))
+                        dps = parser.getFloatValue();
+                    else
+                        parser.skipChildren();
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+
+        if (name == null || (type != null && !type.equals("damage")) || dps <= 0)
+            return null;
+        return new Ability(name, dps, share);
+    }
+
+    private static boolean isStartOf(JsonParser parser, JsonToken token) {
+        return parser.currentToken() == token;
+    }
+}
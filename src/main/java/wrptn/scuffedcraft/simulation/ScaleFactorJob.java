@@ -0,0 +1,194 @@
+package wrptn.scuffedcraft.simulation;
+
+import lombok.NonNull;
+import wrptn.scuffedcraft.models.SimulationInput;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import static wrptn.scuffedcraft.json.Builders.event;
+import static wrptn.scuffedcraft.json.Builders.object;
+
+/**
+ * Computes scale factors with one simulation per stat, rather than with a single simc process that measures every
+ * stat one after another.
+ *
+ * A baseline simulation and one simulation per stat, with that stat raised by a fixed amount, are queued as
+ * independent tickets and run in parallel on the dispatcher's workers. A stat's scale factor,
+ * {@code (dps - baselineDps) / delta}, is sent to the client as soon as both of its simulations completed. Every
+ * simulation runs with the same seed so that the differences are not drowned in noise.
+ */
+class ScaleFactorJob {
+    /**
+     * Player options raising each stat simc's {@code scale_only} would have measured.
+     */
+    static final Map<String, String> STAT_OPTIONS = new LinkedHashMap<>();
+    static {
+        STAT_OPTIONS.put("str", "enchant_strength");
+        STAT_OPTIONS.put("agi", "enchant_agility");
+        STAT_OPTIONS.put("int", "enchant_intellect");
+        STAT_OPTIONS.put("crit", "enchant_crit_rating");
+        STAT_OPTIONS.put("haste", "enchant_haste_rating");
+        STAT_OPTIONS.put("mastery", "enchant_mastery_rating");
+        STAT_OPTIONS.put("vers", "enchant_versatility_rating");
+    }
+
+    private final Ticket parent;
+    private final int delta;
+
+    private final Ticket baseline;
+    private final Map<String, Ticket> statTickets = new LinkedHashMap<>();
+    private final Map<String, Float> scaleFactors = new LinkedHashMap<>();
+
+    private int remaining;
+    private boolean started = false;
+    private boolean finished = false;
+
+    /**
+     * @param parent The ticket observed by the client; it is never queued itself.
+     * @param delta  The amount by which each stat is raised.
+     */
+    ScaleFactorJob(@NonNull Ticket parent, int delta) {
+        this.parent = parent;
+        this.delta = delta;
+
+        this.baseline = new Ticket(withoutScaling(parent.getInput()), List.of("deterministic=1"), true);
+        this.baseline.registerListener(this.listenerFor(null));
+
+        for (var stat : STAT_OPTIONS.entrySet()) {
+            var ticket = new Ticket(withoutScaling(parent.getInput()),
+                List.of("deterministic=1", stat.getValue() + "=" + delta), false);
+            ticket.registerListener(this.listenerFor(stat.getKey()));
+            this.statTickets.put(stat.getKey(), ticket);
+        }
+
+        this.remaining = 1 + this.statTickets.size();
+        parent.delegateTo(this.getTickets());
+    }
+
+    /**
+     * Returns every sub-simulation, baseline first.
+     */
+    List<Ticket> getTickets() {
+        var tickets = new ArrayList<Ticket>(this.remaining);
+        tickets.add(this.baseline);
+        tickets.addAll(this.statTickets.values());
+        return tickets;
+    }
+
+    /**
+     * Queues every sub-simulation.
+     *
+     * @param submitter Queues a single ticket, returning {@code false} if it was rejected.
+     * @param scheduler The queue the sub-simulations are withdrawn from if one of them is rejected.
+     * @return {@code false} if a sub-simulation was rejected; the parent ticket has been notified.
+     */
+    boolean submit(@NonNull Predicate<Ticket> submitter, @NonNull JobScheduler scheduler) {
+        var submitted = new ArrayList<Ticket>();
+        for (var ticket : this.getTickets()) {
+            if (submitter.test(ticket)) {
+                submitted.add(ticket);
+                continue;
+            }
+
+            synchronized (this) {
+                this.finished = true;
+            }
+
+            submitted.forEach(scheduler::remove);
+            if (ticket.isInterrupted())
+                this.parent.markInterrupted();
+            this.parent.emitThrowable(new Exception(ticket.getFailureMessage()));
+            return false;
+        }
+
+        return true;
+    }
+
+    private Ticket.Listener listenerFor(String stat) {
+        return new Ticket.Listener() {
+            @Override
+            public void onBegin() { ScaleFactorJob.this.onBegin(); }
+
+            @Override
+            public void onCompleted() { ScaleFactorJob.this.onCompleted(stat); }
+
+            @Override
+            public void onQueued(int position, JobAccounting.Forecast forecast) {
+                // The baseline is the cheapest job and leaves the queue first; the client waits for it.
+                if (stat == null)
+                    ScaleFactorJob.this.parent.updateQueuePosition(position, forecast);
+            }
+        };
+    }
+
+    private synchronized void onBegin() {
+        if (this.started || this.finished)
+            return;
+
+        this.started = true;
+        this.parent.markInProgress();
+    }
+
+    private synchronized void onCompleted(String stat) {
+        if (this.finished)
+            return;
+
+        var ticket = stat == null ? this.baseline : this.statTickets.get(stat);
+        if (ticket.isFailed()) {
+            this.finished = true;
+            this.parent.failWith(ticket);
+            return;
+        }
+        if (Double.isNaN(ticket.getDps())) {
+            this.finished = true;
+            this.parent.fail(new Exception("Unable to read the results of the scale factor simulations."));
+            return;
+        }
+
+        if (stat == null) {
+            // Stats that finished before the baseline can only be reported now.
+            for (var entry : this.statTickets.entrySet())
+                if (entry.getValue().isCompleted() && !entry.getValue().isFailed())
+                    this.emitScaleFactor(entry.getKey(), entry.getValue());
+        } else if (this.baseline.isCompleted()) {
+            this.emitScaleFactor(stat, ticket);
+        }
+
+        if (--this.remaining > 0)
+            return;
+
+        this.finished = true;
+
+        if (this.baseline.getSummary() != null)
+            this.parent.emitValue(this.baseline.getSummary());
+
+        var summary = object("type", "scale_factors").with("delta", this.delta);
+        var values = object();
+        this.scaleFactors.forEach(values::with);
+        this.parent.emitValue(summary.with("values", values).end());
+        this.parent.finish(this.baseline.getReportId());
+    }
+
+    private void emitScaleFactor(String stat, Ticket ticket) {
+        if (this.scaleFactors.containsKey(stat))
+            return;
+
+        var value = (float) ((ticket.getDps() - this.baseline.getDps()) / this.delta);
+        this.scaleFactors.put(stat, value);
+        this.parent.emitValue(event("scale_factor").with("stat", stat).with("value", value).end());
+    }
+
+    static SimulationInput withoutScaling(SimulationInput input) {
+        var copy = new SimulationInput();
+        copy.setEnableBloodlust(input.isEnableBloodlust());
+        copy.setEnableScaling(false);
+        copy.setNumberOfEnemies(input.getNumberOfEnemies());
+        copy.setFightType(input.getFightType());
+        copy.setProfileString(input.getProfileString());
+        return copy;
+    }
+}
@@ -0,0 +1,181 @@
+package wrptn.scuffedcraft.simulation;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import wrptn.scuffedcraft.models.SimulationInput;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turns submissions into observable tickets: serves them from the result cache, attaches them to identical
+ * simulations in flight, or queues them; and records them in the {@link JobJournal} so that they survive a restart.
+ * Tickets nobody waits for anymore are cancelled after a grace period.
+ *
+ * Workers have neither this service, a dispatcher nor a journal: they only run the jobs their coordinator leases
+ * them.
+ */
+@Slf4j
+@Component
+@Profile("!worker")
+public class SimulationService {
+    private final TicketRegistry ticketRegistry;
+    private final Dispatcher dispatcher;
+    private final ResultCache resultCache;
+    private final JobJournal journal;
+
+    /**
+     * How long a ticket may go without any client waiting for it before it is cancelled.
+     */
+    private final Duration gracePeriod;
+
+    private final ScheduledExecutorService reaper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        var thread = new Thread(runnable, "ticket-reaper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public SimulationService(TicketRegistry ticketRegistry, Dispatcher dispatcher, ResultCache resultCache,
+                             JobJournal journal,
+                             @Value("${simulationcraft.cancellation.grace-period:PT30S}") Duration gracePeriod) {
+        this.ticketRegistry = ticketRegistry;
+        this.dispatcher = dispatcher;
+        this.resultCache = resultCache;
+        this.journal = journal;
+        this.gracePeriod = gracePeriod;
+
+        var interval = Math.max(100, gracePeriod.toMillis() / 4);
+        this.reaper.scheduleWithFixedDelay(this::cancelAbandoned, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Resolves the ticket a submission should observe, which is registered under the submission's identifier.
+     */
+    public Ticket submit(@NonNull SimulationInput input) {
+        return this.submit(input, false);
+    }
+
+    /**
+     * Cancels the simulation a client submitted. If identical submissions observe the same simulation, it keeps
+     * running for them and the client is only detached from it.
+     *
+     * @return {@code false} if there is no such simulation, or if it already completed.
+     */
+    public boolean cancel(@NonNull String requestUUID) {
+        var ticket = this.ticketRegistry.get(requestUUID);
+        if (ticket == null || ticket.isCompleted())
+            return false;
+
+        if (this.ticketRegistry.countObservers(ticket) > 1) {
+            log.info("Detaching {} from {}, which other clients wait for.", requestUUID,
+                ticket.getInput().getRequestUUID());
+            this.ticketRegistry.unregister(requestUUID);
+            return true;
+        }
+
+        return this.dispatcher.cancel(ticket, "The simulation was cancelled.");
+    }
+
+    /**
+     * Cancels the tickets no client has been waiting for during the grace period, such as those of closed tabs.
+     */
+    void cancelAbandoned() {
+        var now = System.nanoTime();
+        try {
+            for (var ticket : this.ticketRegistry.getTickets())
+                if (!ticket.isCompleted() && ticket.isAbandoned(now, this.gracePeriod.toNanos()))
+                    this.dispatcher.cancel(ticket, "Nobody was waiting for the results of the simulation anymore.");
+        } catch (Exception ex) {
+            log.error("Unable to cancel abandoned simulations.", ex);
+        }
+    }
+
+    /**
+     * Queues the jobs that were pending when the server last stopped, under their original identifiers, so that
+     * reconnecting clients pick them up again.
+     */
+    @PostConstruct
+    public void restore() {
+        for (var job : this.journal.getPendingJobs()) {
+            log.info("Restoring {} from the job journal{}.", job.input().getRequestUUID(),
+                job.started() ? "; it was interrupted and starts over" : "");
+
+            var ticket = this.submit(job.input(), true);
+            for (var alias : job.aliases())
+                this.ticketRegistry.register(alias, ticket);
+        }
+    }
+
+    private Ticket submit(SimulationInput input, boolean restored) {
+        var cacheKey = ResultCache.keyOf(input);
+        var requestUUID = input.getRequestUUID();
+
+        var lookup = this.resultCache.lookup(cacheKey, new Ticket(input));
+        var ticket = lookup.ticket();
+        this.ticketRegistry.register(requestUUID, ticket);
+
+        switch (lookup.outcome()) {
+            case HIT -> {
+                log.info("Serving {} from the result cache.", requestUUID);
+                this.ticketRegistry.retire(ticket);
+                if (restored)
+                    this.journal.finished(requestUUID);
+            }
+            case COALESCED -> {
+                ticket.touch();
+                log.info("Attaching {} to identical simulation {}.", requestUUID,
+                    ticket.getInput().getRequestUUID());
+                if (restored)
+                    this.journal.finished(requestUUID);
+                this.journal.attached(requestUUID, ticket.getInput().getRequestUUID());
+            }
+            case MISS -> {
+                ticket.registerListener(new Ticket.Listener() {
+                    @Override
+                    public void onBegin() {
+                        SimulationService.this.journal.started(requestUUID);
+                    }
+
+                    @Override
+                    public void onCompleted() {
+                        SimulationService.this.resultCache.complete(cacheKey, ticket);
+                        SimulationService.this.ticketRegistry.retire(ticket);
+                        if (!ticket.isInterrupted())
+                            SimulationService.this.journal.finished(requestUUID);
+                    }
+                });
+
+                if (!restored)
+                    this.journal.submitted(input);
+
+                ticket.reportRejectedLines();
+
+                // Registered before submitting; an idle worker may pick the ticket up and complete it immediately.
+                if (!this.dispatcher.trySubmit(ticket)) {
+                    this.resultCache.complete(cacheKey, ticket);
+                    this.ticketRegistry.unregister(requestUUID);
+                    if (!ticket.isInterrupted())
+                        this.journal.finished(requestUUID);
+                }
+            }
+        }
+
+        return ticket;
+    }
+
+    /**
+     * Runs before the {@link Dispatcher} interrupts the jobs it could not complete, since this service depends on it;
+     * interrupted jobs are kept in the journal.
+     */
+    @PreDestroy
+    public void preDestroy() {
+        this.reaper.shutdownNow();
+    }
+}
@@ -4,51 +4,287 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import lombok.Getter;
 import lombok.NonNull;
+import lombok.Setter;
 import lombok.SneakyThrows;
-import org.jctools.queues.MessagePassingQueue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import reactor.core.publisher.Flux;
-import reactor.core.publisher.Sinks;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 import wrptn.scuffedcraft.models.SimulationInput;
 
-import java.io.*;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.UUID;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
 
 import static java.lang.System.lineSeparator;
-import static java.util.stream.Collectors.joining;
 import static org.springframework.util.StringUtils.hasText;
+import static wrptn.scuffedcraft.json.Builders.array;
+import static wrptn.scuffedcraft.json.Builders.event;
 import static wrptn.scuffedcraft.json.Builders.object;
 
 public class Ticket {
-    private final Sinks.Many<String> resultsSink = Sinks.many().unicast().onBackpressureBuffer();
+    /**
+     * Every event, for subscribers that connect late or reconnect. Its transcript holds every event except queue
+     * updates, progress and logs, which is what a cache hit replays.
+     */
+    private final EventLog events = new EventLog(EVENT_HISTORY, EventLog.EPOCH);
 
     @Getter
     private final SimulationInput input;
 
+    /**
+     * Options appended after the player's profile; never taken from user input.
+     */
+    @Getter
+    private final List<String> extraOptions;
+
+    /**
+     * Whether simc should write an HTML report for this ticket.
+     */
+    @Getter
+    private final boolean reportRequested;
+
+    /**
+     * Whether this ticket only computes an estimate ahead of the full simulation; see {@link ProgressiveJob}.
+     */
+    @Getter
+    @Setter
+    private volatile boolean preliminary = false;
+
+    /**
+     * Whether this ticket carries on a submission that was already admitted, and is queued even if the queue is full;
+     * see {@link ProgressiveJob}.
+     */
+    @Getter
+    @Setter
+    private volatile boolean followUp = false;
+
+    /**
+     * Mean DPS of the player, as printed by simc, or {@code NaN} until the simulation has completed.
+     */
+    @Getter
+    private volatile double dps = Double.NaN;
+
     private final Logger log;
 
+    /**
+     * Sequence number assigned by the {@link TicketRegistry} when entering the job queue.
+     */
+    @Getter
+    @Setter
+    private volatile long sequence = 0;
+
+    @Getter
+    private int queuePosition = -1;
+
+    /**
+     * When the ticket was last expected to start and finish, or {@code null} if it was never forecast.
+     */
+    private JobAccounting.Forecast forecast = null;
+
+    /**
+     * Expected runtime, in seconds, as estimated by the {@link CostModel}.
+     */
+    @Getter
+    @Setter
+    private volatile double estimatedSeconds = 0;
+
+    /**
+     * When the ticket entered the job queue, as given by {@link System#nanoTime()}.
+     */
     @Getter
-    private int queuePosition;
+    @Setter
+    private volatile long enqueuedAt = 0;
 
-    private Process executionTask = null;
+    private volatile Process executionTask = null;
+
+    /**
+     * When the simulation started, as given by {@link System#nanoTime()}, if {@link #started} is set.
+     */
+    private volatile long startedAt = 0;
+    private volatile boolean started = false;
+
+    /**
+     * The amount of threads given to simc, or {@code 0} until it runs on this server.
+     */
+    @Getter
+    private volatile int threads = 0;
+
+    /**
+     * Set once the ticket was cancelled; its simulation stops as soon as possible.
+     */
+    @Getter
+    private volatile boolean cancelled = false;
+
+    /**
+     * Whether the server shut down before this ticket completed. Its job stays in the {@link JobJournal} and runs
+     * again after the restart, so the stream is closed without an {@code end} event and clients reconnect.
+     */
+    @Getter
+    private volatile boolean interrupted = false;
+    private volatile String cancellationReason = null;
+
+    /**
+     * Tickets doing the work of this one, which is never queued itself; they are cancelled along with it.
+     */
+    @Getter
+    private volatile List<Ticket> parts = List.of();
+
+    private final AtomicInteger subscribers = new AtomicInteger();
+
+    /**
+     * When the last subscriber left, as given by {@link System#nanoTime()}; initially, when the ticket was created.
+     */
+    private volatile long lastObservedAt = System.nanoTime();
+
+    /**
+     * CPU time used by the simc process, as last sampled while it ran, or {@code -1} if it could not be measured.
+     */
+    @Getter
+    private volatile long cpuNanos = -1;
+
+    /**
+     * Peak resident set size of the simc process, as last sampled while it ran, or {@code -1} if it could not be
+     * measured.
+     */
+    @Getter
+    private volatile long peakRssBytes = -1;
+
+    /**
+     * Whether the simc process was killed for running too long.
+     */
+    @Getter
+    private volatile boolean timedOut = false;
+
+    @Getter
+    private volatile boolean completed = false;
+
+    @Getter
+    private volatile boolean failed = false;
+
+    /**
+     * The reason sent to the client when the ticket failed.
+     */
+    @Getter
+    private volatile String failureMessage = null;
+
+    /**
+     * Identifier of the report in the {@link ReportStore}, once the simulation has succeeded.
+     */
+    @Getter
+    private volatile String reportId = null;
+
+    /**
+     * The {@code summary} event of the simulation, once read from simc's {@code json2} output; see
+     * {@link ResultSummary}.
+     */
+    @Getter
+    private volatile String summary = null;
 
     private static final ObjectMapper objectMapper = new ObjectMapper();
 
+    /**
+     * Events without variable fields, encoded once.
+     */
+    private static final String IN_PROGRESS_EVENT = event("status").with("status", "IN_PROGRESS").end();
+    private static final String END_EVENT = event("end").end();
+    private static final String RESTARTING_EVENT = event("restarting")
+        .with("message", "The server is restarting; your simulation will resume once it is back.").end();
+
+    /**
+     * Upper bound on the amount of log lines sent in a single event.
+     */
+    private static final int LOG_BATCH_LINES = 64;
+
+    /**
+     * Longest time a pending log line waits before being sent, in nanoseconds.
+     */
+    private static final long LOG_BATCH_INTERVAL = TimeUnit.MILLISECONDS.toNanos(500);
+
+    /**
+     * Shortest time between two samples of the resources used by simc, in nanoseconds.
+     */
+    private static final long CPU_SAMPLE_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * How much a forecast may drift before clients are told about it.
+     */
+    private static final Duration FORECAST_TOLERANCE = Duration.ofSeconds(5);
+
+    /**
+     * How long a single profile may be simulated before simc is killed, without and with scale factors.
+     */
+    private static final Duration PROFILE_TIMEOUT = Duration.ofMinutes(1);
+    private static final Duration SCALING_PROFILE_TIMEOUT = Duration.ofMinutes(10);
+
+    /**
+     * How many times its estimated runtime a simulation may run before simc is killed; estimates are averages.
+     */
+    private static final double TIMEOUT_HEADROOM = 4.0;
+
+    /**
+     * Amount of past events kept for subscribers that connect late.
+     */
+    private static final int EVENT_HISTORY = 256;
+
+    /**
+     * The mean DPS of an actor in simc's text report, such as {@code   DPS=123456.7  DPS-Error=...}. The player's comes
+     * first; pets follow with lines of the same form.
+     */
+    private static final Pattern DPS_LINE = Pattern.compile("^\\s*DPS[=:]\\s*([0-9]+(?:\\.[0-9]+)?)");
+
+    /**
+     * The header of the profileset results in simc's text report, {@code Profilesets (median Damage per Second):}.
+     */
+    private static final Pattern PROFILESETS_HEADER = Pattern.compile("^\\s*Profilesets\\s*\\(median");
+
+    /**
+     * A profileset result following that header, such as {@code     123456 : Variant name}.
+     */
+    private static final Pattern PROFILESET_LINE = Pattern.compile("^\\s*([0-9]+(?:\\.[0-9]+)?)\\s*:\\s*(.+?)\\s*$");
+
     public interface Listener {
         default void onCompleted() { }
         default void onBegin() { }
+        /**
+         * @param forecast When the ticket is expected to start and finish, or {@code null} if unknown.
+         */
+        default void onQueued(int position, JobAccounting.Forecast forecast) { }
+
+        /**
+         * Called for every event, in emission order, before subscribers receive it.
+         *
+         * @param replayable Whether the event is part of the transcript.
+         */
+        default void onEvent(String event, boolean replayable) { }
     }
     private Listener listener = new Listener() { };
 
-    public Ticket(@NonNull SimulationInput input, int queuePosition) {
+    public Ticket(@NonNull SimulationInput input) {
+        this(input, List.of(), true);
+    }
+
+    public Ticket(@NonNull SimulationInput input, @NonNull List<String> extraOptions, boolean reportRequested) {
         this.input = input;
-        this.queuePosition = queuePosition;
+        this.extraOptions = List.copyOf(extraOptions);
+        this.reportRequested = reportRequested;
 
         this.log = LoggerFactory.getLogger(input.getRequestUUID());
     }
@@ -57,20 +293,155 @@ public class Ticket {
         this.listener = listener;
     }
 
-    public Flux<String> getResultsFlux() { return this.resultsSink.asFlux(); }
+    public Flux<String> getResultsFlux() { return this.events.subscribe(0).map(EventLog.Event::data); }
 
-    @SneakyThrows
-    public void advance() {
-        this.queuePosition = this.queuePosition - 1;
+    /**
+     * Returns the events following a given one, and counts the subscriber as a client waiting for the results;
+     * tickets nobody waits for can be cancelled, see {@link #isAbandoned}.
+     *
+     * @param lastEventId The last event the client received, or {@code 0} to receive every event.
+     */
+    public Flux<EventLog.Event> observe(long lastEventId) {
+        return this.events.subscribe(lastEventId)
+            .doOnSubscribe(subscription -> this.subscribers.incrementAndGet())
+            .doFinally(signal -> {
+                this.lastObservedAt = System.nanoTime();
+                this.subscribers.decrementAndGet();
+            });
+    }
+
+    /**
+     * Whether nobody has been waiting for the results of this ticket for a given time.
+     */
+    boolean isAbandoned(long now, long graceNanos) {
+        return this.subscribers.get() == 0 && now - this.lastObservedAt >= graceNanos;
+    }
+
+    /**
+     * Restarts the grace period of a ticket a new client is about to observe.
+     */
+    void touch() {
+        this.lastObservedAt = System.nanoTime();
+    }
+
+    /**
+     * Returns how long the simulation has been running, or {@code 0} if it has not started.
+     */
+    long getRunningNanos() {
+        return this.started ? System.nanoTime() - this.startedAt : 0;
+    }
+
+    /**
+     * Declares the tickets doing the work of this one.
+     */
+    void delegateTo(@NonNull List<Ticket> parts) {
+        this.parts = List.copyOf(parts);
+    }
 
-        var objectNode = object("type", "queue").with("position", this.queuePosition).end();
-        var serializedValue = objectMapper.writeValueAsString(objectNode);
+    /**
+     * Marks this ticket as cancelled. Its process is killed by whoever cancels it; see {@link Dispatcher#cancel}.
+     *
+     * @return {@code false} if the ticket already completed or was cancelled.
+     */
+    synchronized boolean markCancelled(@NonNull String reason) {
+        if (this.completed || this.cancelled)
+            return false;
+
+        this.cancellationReason = reason;
+        this.cancelled = true;
+        return true;
+    }
 
-        this.resultsSink.tryEmitNext(serializedValue);
+    /**
+     * Marks this ticket as interrupted by a shutdown; failing it from now on tells the client to reconnect.
+     */
+    void markInterrupted() {
+        this.interrupted = true;
     }
 
-    public boolean trySubmit(final MessagePassingQueue<Ticket> jobQueue) {
-        boolean offerSuccesfull = jobQueue.offer(this);
+    /**
+     * The exception failing this ticket once it has been cancelled.
+     */
+    CancellationException cancellation() {
+        return new CancellationException(this.cancellationReason);
+    }
+
+    /**
+     * Returns the replayable events of a completed simulation.
+     */
+    public List<String> getTranscript() {
+        return this.events.getTranscript();
+    }
+
+    /**
+     * Completes this ticket with events recorded by a previous, identical simulation.
+     */
+    public void replay(@NonNull List<String> events, String reportId) {
+        this.reportId = reportId;
+        for (var event : events)
+            this.publish(event, true);
+
+        this.completed = true;
+        this.events.complete();
+    }
+
+    /**
+     * Tells the client its position in the queue, unless it has not changed since the last update.
+     */
+    public void updateQueuePosition(int position) {
+        this.updateQueuePosition(position, null);
+    }
+
+    /**
+     * Tells the client its position in the queue and when its simulation is expected to start and finish, unless
+     * neither changed noticeably since the last update.
+     *
+     * @param forecast The forecast, or {@code null} to keep the last one.
+     */
+    public synchronized void updateQueuePosition(int position, JobAccounting.Forecast forecast) {
+        if (position <= 0)
+            return;
+
+        var forecastChanged = forecast != null && (this.forecast == null
+            || !isClose(forecast.startsAt(), this.forecast.startsAt())
+            || !isClose(forecast.finishesAt(), this.forecast.finishesAt()));
+        if (position == this.queuePosition && !forecastChanged)
+            return;
+
+        this.queuePosition = position;
+        if (forecastChanged)
+            this.forecast = forecast;
+        this.listener.onQueued(position, this.forecast);
+
+        var event = event("queue").with("position", position);
+        if (this.forecast != null) {
+            event.with("startsAt", this.forecast.startsAt().toEpochMilli())
+                .with("finishesAt", this.forecast.finishesAt().toEpochMilli());
+        }
+        this.publish(event.end(), false);
+    }
+
+    private static boolean isClose(Instant left, Instant right) {
+        return Duration.between(left, right).abs().compareTo(FORECAST_TOLERANCE) < 0;
+    }
+
+    /**
+     * Tells the client which lines of its profile are ignored, if any.
+     */
+    public void reportRejectedLines() {
+        var rejectedLines = this.input.getRejectedLines();
+        if (rejectedLines.isEmpty())
+            return;
+
+        var lines = array();
+        for (var line : rejectedLines)
+            lines.with(object("line", line.number()).with("text", line.text()));
+
+        this.emitValue(object("type", "rejected").with("lines", lines).end());
+    }
+
+    public boolean trySubmit(final JobScheduler scheduler) {
+        boolean offerSuccesfull = scheduler.offer(this);
         if (!offerSuccesfull) {
             this.emitThrowable(new Exception("The job queue is full. Please check back later."));
         }
@@ -78,24 +449,131 @@ public class Ticket {
         return offerSuccesfull;
     }
 
-    public void submit(String executablePath) {
-        this.emitValue(object("type", "status").with("status", "IN_PROGRESS").end());
+    /**
+     * Runs simc for this ticket without blocking the calling thread.
+     *
+     * @return Completes once the ticket has completed or failed, and its listener has been notified.
+     */
+    public Mono<Void> execute(String executablePath, ReportStore reportStore, CpuBudget cpuBudget,
+                              CpuBudget.Allocation allocation, ProcessSupervisor supervisor,
+                              JobDirectories directories) {
+        this.threads = allocation.threads();
+        this.markInProgress();
+
+        return this.invokeSimulationCraft(executablePath, reportStore, cpuBudget, allocation, supervisor, directories)
+            .doOnSuccess(ignored -> this.closeSink())
+            .onErrorResume(ex -> {
+                this.emitThrowable(ex);
+                return Mono.empty();
+            })
+            .doFinally(signal -> this.listener.onCompleted());
+    }
+
+    /**
+     * Tells the client its simulation started.
+     */
+    void markInProgress() {
+        this.startedAt = System.nanoTime();
+        this.started = true;
+        this.emitValue(IN_PROGRESS_EVENT);
         this.listener.onBegin();
+    }
 
-        try {
-            this.invokeSimulationCraft(executablePath);
-        } catch (Exception ex) {
-            emitThrowable(ex);
-        } finally {
-            this.listener.onCompleted();
+    /**
+     * Completes a ticket whose work was carried out by other tickets.
+     *
+     * @param reportId The report to send to the client, if any.
+     */
+    void finish(String reportId) {
+        if (reportId != null) {
+            this.reportId = reportId;
+            this.emitValue(event("report").with("url", "/v2/report/" + reportId).end());
         }
+
+        this.closeSink();
+        this.listener.onCompleted();
+    }
+
+    /**
+     * Completes a ticket whose work was carried out by another ticket, taking over its DPS.
+     */
+    void finish(double dps, String reportId) {
+        this.dps = dps;
+        this.finish(reportId);
+    }
+
+    /**
+     * Fails a ticket whose work was carried out by other tickets.
+     */
+    void fail(Throwable ex) {
+        this.emitThrowable(ex);
+        this.listener.onCompleted();
+    }
+
+    /**
+     * Fails a ticket whose work was carried out by another ticket that failed, for the same reason.
+     */
+    void failWith(@NonNull Ticket part) {
+        if (part.isInterrupted())
+            this.markInterrupted();
+        this.fail(new Exception(part.getFailureMessage()));
     }
 
     @SneakyThrows
-    private void emitValue(ObjectNode node) {
-        var serializedValue = objectMapper.writeValueAsString(node);
+    void emitValue(ObjectNode node) {
+        this.publish(objectMapper.writeValueAsString(node), true);
+    }
+
+    /**
+     * Emits an event that is already encoded, such as one written by {@link wrptn.scuffedcraft.json.Builders#event}.
+     */
+    void emitValue(String event) {
+        this.publish(event, true);
+    }
 
-        this.resultsSink.tryEmitNext(serializedValue);
+    /**
+     * Emits an event to every subscriber. Serialized because queue updates are emitted from other workers.
+     *
+     * @param replayable Whether the event should be part of the transcript stored in the result cache.
+     */
+    private synchronized void publish(String event, boolean replayable) {
+        this.listener.onEvent(event, replayable);
+        this.events.append(event, replayable);
+    }
+
+    /**
+     * Emits an event produced by the copy of this ticket that runs on a remote worker.
+     */
+    void relay(String event, boolean replayable) {
+        this.publish(event, replayable);
+    }
+
+    /**
+     * Completes a ticket whose simulation ran on a remote worker, once all of its events have been relayed.
+     *
+     * @param reportId       The report uploaded by the worker, if any.
+     * @param failureMessage The reason the simulation failed, or {@code null} if it succeeded.
+     */
+    void completeRemotely(double dps, long cpuNanos, long peakRssBytes, boolean timedOut, String reportId,
+                          String failureMessage) {
+        this.dps = dps;
+        this.cpuNanos = cpuNanos;
+        this.peakRssBytes = peakRssBytes;
+        this.timedOut = timedOut;
+
+        if (failureMessage != null)
+            this.fail(new Exception(failureMessage));
+        else
+            this.finish(reportId);
+    }
+
+    /**
+     * Kills the simc process of this ticket, if it is running; the ticket then fails.
+     */
+    void kill() {
+        var process = this.executionTask;
+        if (process != null)
+            ProcessSupervisor.destroyTree(process.toHandle());
     }
 
     /**
@@ -103,110 +581,336 @@ public class Ticket {
      *
      * @param ex The exception that has been thrown.
      */
-    @SneakyThrows
     public void emitThrowable(Throwable ex) {
         var errorMessage = "An unknown error occured";
         if (ex != null && hasText(ex.getMessage()))
             errorMessage = ex.getMessage();
 
-        var objectNode = object("type", "error").with("message", errorMessage).end();
-        this.emitValue(objectNode);
+        this.failed = true;
+        this.failureMessage = errorMessage;
+
+        if (this.interrupted) {
+            // Not part of the transcript: the job is not over.
+            this.publish(RESTARTING_EVENT, false);
+            this.completed = true;
+            this.events.complete();
+            return;
+        }
+
+        this.emitValue(event("error").with("message", errorMessage).end());
 
-        this.closeSink();;
+        this.closeSink();
     }
 
     private void closeSink() {
-        this.emitValue(object("type", "end").end());
+        this.emitValue(END_EVENT);
 
-        this.resultsSink.tryEmitComplete();
+        this.completed = true;
+        this.events.complete();
     }
 
-    @SneakyThrows
-    private void invokeSimulationCraft(String executablePath) {
-        Path inputPath = null;
-        Path reportPath = null;
-        Path logsPath = null;
-        try {
-            inputPath = Files.createTempFile("simc_input_", ".txt");
-            reportPath = Paths.get(inputPath.getParent().toString(), "simc_output_" + UUID.randomUUID() + ".txt");
-            logsPath = Files.createTempFile( "simc_logs_", ".txt");
-
-            log.info("Beginning simulation with input from '{}' and output to '{}'. Logs are written to '{}'.",
-                inputPath.getFileName(), reportPath.getFileName(), logsPath.getFileName());
-
-            var inputWriter = new BufferedWriter(new FileWriter(inputPath.toFile()));
-
-            inputWriter.write("item_db_source=local" + System.lineSeparator());
-            inputWriter.write("target_error=0" + System.lineSeparator());
-            inputWriter.write("iterations=0" + System.lineSeparator());
-            inputWriter.write("default_world_lag=0.1" + System.lineSeparator());
-            inputWriter.write("max_time=300" + System.lineSeparator());
-            inputWriter.write("vary_combat_length=0.2" + System.lineSeparator());
-            inputWriter.write("fight_style=" + this.input.getFightType().getDisplayName() + System.lineSeparator());
-            inputWriter.write("tmi_window_global=6" + System.lineSeparator());
-            inputWriter.write("target_level+=3" + System.lineSeparator());
-            inputWriter.write("target_race=Humanoid" + System.lineSeparator());
-            inputWriter.write("optimal_raid=0" + System.lineSeparator());
-            inputWriter.write("override.bloodlust=" + (this.input.isEnableBloodlust() ? 1 : 0) + System.lineSeparator());
-            inputWriter.write("override.bleeding=1" + System.lineSeparator());
-            inputWriter.write("override.mortal_wounds=1" + System.lineSeparator());
-            inputWriter.write("threads=4" + System.lineSeparator());
-            inputWriter.write("process_priority=Low" + System.lineSeparator());
-            if (input.isEnableScaling()) {
-                inputWriter.write("calculate_scale_factors=1" + System.lineSeparator());
-                inputWriter.write("scale_only=str,agi,int,crit,haste,mastery,vers" + System.lineSeparator());
+    /**
+     * Reads simc's output as it is produced. Progress bars become {@code progress} events, and every other line is
+     * forwarded in batches of bounded size so that the log is never held in memory in full. Profileset results are
+     * also sent as {@code profileset} events, one per variant, as soon as their line is read.
+     */
+    private final class OutputForwarder implements ProcessSupervisor.OutputListener {
+        private final List<String> batch = new ArrayList<>(LOG_BATCH_LINES);
+        private long lastFlush = System.nanoTime();
+        private long lastCpuSample = this.lastFlush;
+
+        private String phase = null;
+        private long phaseStart = 0L;
+        private int lastPercent = -1;
+        private boolean inProfilesets = false;
+
+        /**
+         * Whether the player's DPS was read; the DPS lines of its pets follow and are ignored.
+         */
+        private boolean dpsRead = false;
+
+        @Override
+        public void onLine(String line) {
+            var now = System.nanoTime();
+
+            var progress = ProgressParser.parse(line);
+            if (progress != null) {
+                if (!progress.phase().equals(this.phase)) {
+                    this.phase = progress.phase();
+                    this.phaseStart = now;
+                    this.lastPercent = -1;
+                }
+
+                if (progress.percent() != this.lastPercent) {
+                    this.lastPercent = progress.percent();
+
+                    var elapsed = now - this.phaseStart;
+                    var remaining = progress.current() == 0 ? -1
+                        : TimeUnit.NANOSECONDS.toSeconds(elapsed * (progress.total() - progress.current()) / progress.current());
+
+                    Ticket.this.publish(event("progress")
+                        .with("phase", progress.phase())
+                        .with("percent", progress.percent())
+                        .with("eta", remaining)
+                        .end(), false);
+                }
+            } else if (!line.isBlank()) {
+                if (this.inProfilesets) {
+                    var profilesetMatcher = PROFILESET_LINE.matcher(line);
+                    this.inProfilesets = profilesetMatcher.matches();
+                    if (this.inProfilesets)
+                        Ticket.this.emitValue(event("profileset")
+                            .with("name", profilesetMatcher.group(2))
+                            .with("dps", Float.parseFloat(profilesetMatcher.group(1)))
+                            .end());
+                } else if (PROFILESETS_HEADER.matcher(line).find()) {
+                    this.inProfilesets = true;
+                } else if (!this.dpsRead) {
+                    var dpsMatcher = DPS_LINE.matcher(line);
+                    this.dpsRead = dpsMatcher.find();
+                    if (this.dpsRead)
+                        Ticket.this.dps = Double.parseDouble(dpsMatcher.group(1));
+                }
+
+                this.batch.add(line);
+            } else {
+                this.inProfilesets = false;
             }
-            inputWriter.write("statistics_level=1" + System.lineSeparator());
-            inputWriter.write(lineSeparator());
-
-            // Sanitize the user's submitted profile so that they don't cause excessive load on the server.
-            input.getProfile().forEach(line -> {
-                try {
-                    inputWriter.write(line);
-                    inputWriter.write(lineSeparator());
-                } catch (IOException ignored) { }
-            });
 
-            inputWriter.write(lineSeparator());
-            inputWriter.write("desired_targets=" + input.getNumberOfEnemies() + System.lineSeparator());
-            inputWriter.write("dps_plot_stat=none" + System.lineSeparator());
+            if (this.batch.size() >= LOG_BATCH_LINES)
+                this.flush(now);
+        }
 
-            inputWriter.close();
+        @Override
+        public void onIdle() {
+            var now = System.nanoTime();
+            if (now - this.lastCpuSample >= CPU_SAMPLE_INTERVAL) {
+                this.lastCpuSample = now;
+                Ticket.this.sampleResources();
+            }
 
-            var simcExecutable = Paths.get(executablePath);
+            if (!this.batch.isEmpty() && now - this.lastFlush >= LOG_BATCH_INTERVAL)
+                this.flush(now);
+        }
 
-            var processBuilder = new ProcessBuilder()
-                .directory(reportPath.getParent().toFile())
-                .command(simcExecutable.toString(), inputPath.toString(), "html=" + reportPath.getFileName())
-                .redirectOutput(ProcessBuilder.Redirect.to(logsPath.toFile()))
-                ;
+        /**
+         * Sends the lines that are still pending, once the output has been read in full.
+         */
+        private void finish() {
+            this.flush(System.nanoTime());
+        }
 
-            this.executionTask = processBuilder.start();
+        private void flush(long now) {
+            Ticket.this.flushLogs(this.batch);
+            this.lastFlush = now;
+        }
+    }
 
-            boolean exitSuccessfully = this.executionTask.waitFor(input.isEnableScaling() ? 10 : 1, TimeUnit.MINUTES);
-            if (!exitSuccessfully)
-                throw new TimeoutException("Execution timed out");
+    private void sampleResources() {
+        var process = this.executionTask;
+        if (process == null)
+            return;
 
-            // Read report file
-            try (var reportReader = new BufferedReader(new FileReader(reportPath.toFile()))) {
-                this.resultsSink.tryEmitNext("results;" + reportReader.lines().collect(joining(lineSeparator())));
-            }
+        process.toHandle().info().totalCpuDuration().ifPresent(duration -> this.cpuNanos = duration.toNanos());
 
-            try (var reportReader = new BufferedReader(new FileReader(logsPath.toFile()))) {
-                this.emitValue(object("type", "log")
-                    .with("line", reportReader.lines().collect(joining(lineSeparator()))).end());
-            }
+        // The kernel keeps track of the peak itself, so that sampling does not miss it; only Linux exposes it.
+        try (var lines = Files.lines(Paths.get("/proc", Long.toString(process.pid()), "status"))) {
+            lines.filter(line -> line.startsWith("VmHWM:"))
+                .findFirst()
+                .ifPresent(line -> this.peakRssBytes = Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024);
+        } catch (IOException | UncheckedIOException | NumberFormatException ex) {
+            // Not on Linux, or the process just exited.
+        }
+    }
+
+    private void flushLogs(List<String> batch) {
+        if (batch.isEmpty())
+            return;
+
+        this.publish(event("log").with("line", batch, lineSeparator()).end(), false);
+        batch.clear();
+    }
+
+    /**
+     * Writes the input file given to simc: the server's options, followed by the sanitized profile.
+     *
+     * @param threads The amount of threads simc may use.
+     */
+    void writeInput(Writer writer, int threads) throws IOException {
+        writer.write("item_db_source=local" + System.lineSeparator());
+        writer.write("target_error=0" + System.lineSeparator());
+        writer.write("iterations=0" + System.lineSeparator());
+        writer.write("default_world_lag=0.1" + System.lineSeparator());
+        writer.write("max_time=300" + System.lineSeparator());
+        writer.write("vary_combat_length=0.2" + System.lineSeparator());
+        writer.write("fight_style=" + this.input.getFightType().getDisplayName() + System.lineSeparator());
+        writer.write("tmi_window_global=6" + System.lineSeparator());
+        writer.write("target_level+=3" + System.lineSeparator());
+        writer.write("target_race=Humanoid" + System.lineSeparator());
+        writer.write("optimal_raid=0" + System.lineSeparator());
+        writer.write("override.bloodlust=" + (this.input.isEnableBloodlust() ? 1 : 0) + System.lineSeparator());
+        writer.write("override.bleeding=1" + System.lineSeparator());
+        writer.write("override.mortal_wounds=1" + System.lineSeparator());
+        writer.write("threads=" + threads + System.lineSeparator());
+        writer.write("process_priority=Low" + System.lineSeparator());
+        if (input.isEnableScaling()) {
+            writer.write("calculate_scale_factors=1" + System.lineSeparator());
+            writer.write("scale_only=str,agi,int,crit,haste,mastery,vers" + System.lineSeparator());
+        }
+        writer.write("statistics_level=1" + System.lineSeparator());
+        writer.write(lineSeparator());
 
-            this.closeSink();
-        } finally {
-            if (inputPath != null)
-                inputPath.toFile().delete();
+        // Sanitize the user's submitted profile so that they don't cause excessive load on the server.
+        this.input.writeProfile(writer);
 
-            if (reportPath != null)
-                reportPath.toFile().delete();
+        for (var option : this.extraOptions)
+            writer.write(option + System.lineSeparator());
+
+        this.input.writeVariants(writer);
+
+        writer.write(lineSeparator());
+        writer.write("desired_targets=" + input.getNumberOfEnemies() + System.lineSeparator());
+        writer.write("dps_plot_stat=none" + System.lineSeparator());
+    }
+
+    /**
+     * Files of a simc run, all in the directory of the run.
+     */
+    private record SimcFiles(Path directory) {
+        private Path input() {
+            return this.directory.resolve("input.simc");
+        }
+
+        private Path output() {
+            return this.directory.resolve("output.txt");
+        }
+
+        private Path report() {
+            return this.directory.resolve("report.html");
+        }
+
+        private Path json() {
+            return this.directory.resolve("report.json");
+        }
+    }
+
+    /**
+     * How long simc may run: the time allowed for a single profile, for the base profile and each variant, or a
+     * multiple of the estimated runtime if that is longer.
+     */
+    Duration timeout() {
+        var timeout = (this.input.isEnableScaling() ? SCALING_PROFILE_TIMEOUT : PROFILE_TIMEOUT)
+            .multipliedBy(1 + this.input.getVariants().size());
+        var estimated = Duration.ofMillis((long) (this.estimatedSeconds * TIMEOUT_HEADROOM * 1000));
+        return estimated.compareTo(timeout) > 0 ? estimated : timeout;
+    }
+
+    private Mono<Void> invokeSimulationCraft(String executablePath, ReportStore reportStore, CpuBudget cpuBudget,
+                                             CpuBudget.Allocation allocation, ProcessSupervisor supervisor,
+                                             JobDirectories directories) {
+        var timeout = this.timeout();
+
+        // Creating the directory and starting the process are brief, but may block.
+        return Mono.fromCallable(() -> new SimcFiles(directories.create()))
+            .subscribeOn(Schedulers.boundedElastic())
+            // The directory is deleted before the outcome is signalled, so that it is gone once the worker is released.
+            .flatMap(files -> Mono.using(() -> files, ignored -> {
+                var forwarder = new OutputForwarder();
+                return ProcessSupervisor.write(files.input(), this.encodeInput(allocation.threads()))
+                    .then(Mono.fromCallable(() -> this.startProcess(executablePath, cpuBudget, allocation, files)))
+                    .flatMap(process -> supervisor.supervise(process, files.output(), timeout, forwarder))
+                    .flatMap(exit -> {
+                        forwarder.finish();
+                        if (this.cancelled)
+                            return Mono.error(this.cancellation());
+                        if (exit.timedOut()) {
+                            this.timedOut = true;
+                            return Mono.error(new TimeoutException("Execution timed out"));
+                        }
+
+                        // Send the summary, then hand the report over to the store; clients download it from there,
+                        // if they want it, instead of through this stream. Both read files, and storing compresses
+                        // the report, which blocks.
+                        if (!this.reportRequested)
+                            return Mono.<Void>empty();
+
+                        return Mono.fromCallable(() -> {
+                                this.summarize(files.json());
+                                return reportStore.store(files.report());
+                            })
+                            .subscribeOn(Schedulers.boundedElastic())
+                            .doOnNext(report -> {
+                                this.reportId = report.id();
+                                this.emitValue(event("report").with("url", "/v2/report/" + report.id()).end());
+                            })
+                            .then();
+                    });
+            }, ignored -> JobDirectories.delete(files.directory())));
+    }
+
+    /**
+     * Sends the summary of simc's {@code json2} output to the client. A summary that cannot be read is not worth failing
+     * the simulation; the report is still there.
+     */
+    private void summarize(Path json) {
+        try (var input = Files.newInputStream(json)) {
+            var summary = ResultSummary.parse(input);
+            if (summary == null)
+                return;
+
+            this.summary = objectMapper.writeValueAsString(summary.toEvent());
+        } catch (IOException ex) {
+            log.warn("Unable to read the json2 output of simc.", ex);
+            return;
+        }
+
+        this.emitValue(this.summary);
+    }
+
+    /**
+     * Encodes the input as it is written, without an intermediate string.
+     */
+    private ByteBuffer encodeInput(int threads) {
+        var output = new EncodedInput();
+        try (var writer = new OutputStreamWriter(output, StandardCharsets.UTF_8)) {
+            this.writeInput(writer, threads);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return output.toByteBuffer();
+    }
+
+    private static final class EncodedInput extends ByteArrayOutputStream {
+        private EncodedInput() {
+            super(4096);
+        }
+
+        private ByteBuffer toByteBuffer() {
+            return ByteBuffer.wrap(this.buf, 0, this.count);
+        }
+    }
 
-            if (logsPath != null)
-                logsPath.toFile().delete();
+    private Process startProcess(String executablePath, CpuBudget cpuBudget, CpuBudget.Allocation allocation,
+                                 SimcFiles files) throws IOException {
+        log.info("Beginning simulation in '{}'.", files.directory());
+
+        var simcExecutable = Paths.get(executablePath);
+        var processBuilder = new ProcessBuilder()
+            .directory(files.directory().toFile())
+            .command(cpuBudget.wrap(allocation, this.reportRequested
+                ? List.of(simcExecutable.toString(), files.input().getFileName().toString(),
+                    "html=" + files.report().getFileName(), "json2=" + files.json().getFileName())
+                : List.of(simcExecutable.toString(), files.input().getFileName().toString())))
+            .redirectErrorStream(true)
+            .redirectOutput(files.output().toFile());
+
+        this.executionTask = processBuilder.start();
+
+        // Cancelled while starting; whoever cancelled the ticket could not see the process yet.
+        if (this.cancelled) {
+            ProcessSupervisor.destroyTree(this.executionTask.toHandle());
+            throw this.cancellation();
         }
+        return this.executionTask;
     }
 }
@@ -0,0 +1,146 @@
+package wrptn.scuffedcraft.simulation;
+
+import jakarta.annotation.PreDestroy;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Thread-safe index of the tickets clients can observe, and bookkeeping of their position in the queue.
+ *
+ * Every ticket entering the queue receives a monotonic sequence number, which breaks ties between tickets of equal
+ * priority. Clients are told about their position on a fixed interval from a single snapshot of the
+ * {@link JobScheduler}, rather than once per dispatch, along with when their simulation should start and finish if a
+ * forecaster is set.
+ */
+@Slf4j
+@Component
+public class TicketRegistry {
+    /**
+     * How long a completed ticket can still be observed by clients that have not connected yet.
+     */
+    private static final Duration COMPLETED_TICKET_RETENTION = Duration.ofMinutes(1);
+
+    private final JobScheduler scheduler;
+    private final Map<String, Ticket> tickets = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    private long lastBroadcastVersion = -1;
+
+    /**
+     * Forecasts the queued tickets it is given, in queue order; see {@link JobAccounting#forecast}.
+     */
+    private volatile Function<List<Ticket>, List<JobAccounting.Forecast>> forecaster = null;
+
+    private final ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        var thread = new Thread(runnable, "ticket-registry");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public TicketRegistry(JobScheduler scheduler,
+                          @Value("${simulationcraft.registry.position-update-interval:PT1S}") Duration updateInterval) {
+        this.scheduler = scheduler;
+
+        this.executorService.scheduleWithFixedDelay(this::broadcastPositions, updateInterval.toMillis(),
+            updateInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Makes a ticket observable under a request identifier. Several identifiers may refer to the same ticket.
+     */
+    public void register(@NonNull String requestUUID, @NonNull Ticket ticket) {
+        this.tickets.put(requestUUID, ticket);
+    }
+
+    public Ticket get(@NonNull String requestUUID) {
+        return this.tickets.get(requestUUID);
+    }
+
+    public void unregister(@NonNull String requestUUID) {
+        this.tickets.remove(requestUUID);
+    }
+
+    /**
+     * Returns the amount of identifiers referring to a ticket.
+     */
+    public int countObservers(@NonNull Ticket ticket) {
+        var count = 0;
+        for (var itr : this.tickets.values())
+            if (itr == ticket)
+                ++count;
+        return count;
+    }
+
+    /**
+     * Returns every registered ticket, once each.
+     */
+    public Set<Ticket> getTickets() {
+        var tickets = Collections.<Ticket>newSetFromMap(new IdentityHashMap<>());
+        tickets.addAll(this.tickets.values());
+        return tickets;
+    }
+
+    /**
+     * Unregisters a completed ticket, along with every identifier attached to it, once clients had time to connect.
+     */
+    public void retire(@NonNull Ticket ticket) {
+        this.executorService.schedule(() -> { this.tickets.values().removeIf(itr -> itr == ticket); },
+            COMPLETED_TICKET_RETENTION.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns the sequence number of the next ticket entering the queue.
+     */
+    public long nextSequence() {
+        return this.sequence.incrementAndGet();
+    }
+
+    /**
+     * Sets what predicts when queued tickets start and finish; the {@link Dispatcher} knows what is running.
+     */
+    void setForecaster(@NonNull Function<List<Ticket>, List<JobAccounting.Forecast>> forecaster) {
+        this.forecaster = forecaster;
+    }
+
+    /**
+     * Sends every waiting client its position, if the queue changed since the last broadcast, and its forecast, if it
+     * drifted. Forecasts are recomputed on every call even if the queue did not change: they move as running jobs
+     * overrun their estimate.
+     */
+    void broadcastPositions() {
+        var version = this.scheduler.getVersion();
+        var forecaster = this.forecaster;
+        if (version == this.lastBroadcastVersion && forecaster == null)
+            return;
+        this.lastBroadcastVersion = version;
+
+        try {
+            var queued = this.scheduler.snapshot();
+            var forecasts = forecaster == null ? null : forecaster.apply(queued);
+            for (var i = 0; i < queued.size(); ++i)
+                queued.get(i).updateQueuePosition(i + 1, forecasts == null ? null : forecasts.get(i));
+        } catch (Exception ex) {
+            log.error("Unable to broadcast queue positions.", ex);
+        }
+    }
+
+    @PreDestroy
+    public void preDestroy() {
+        this.executorService.shutdownNow();
+    }
+}
@@ -0,0 +1,260 @@
+package wrptn.scuffedcraft.simulation;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static wrptn.scuffedcraft.json.Builders.array;
+import static wrptn.scuffedcraft.json.Builders.object;
+
+/**
+ * Hands queued tickets over to remote workers, which pull them from the coordinator.
+ *
+ * A worker leases a ticket for a fixed time and renews the lease whenever it relays the ticket's events. Tickets whose
+ * lease expires, because their worker crashed or lost connectivity, are queued again; anything their former worker
+ * sends afterwards is rejected.
+ */
+@Slf4j
+@Component
+@Profile("!worker")
+public class WorkLeases {
+    private final JobScheduler scheduler;
+    private final ReportStore reportStore;
+    private final Dispatcher dispatcher;
+    private final Metrics metrics;
+
+    @Getter
+    private final Duration leaseDuration;
+
+    private final Map<String, Lease> leases = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        var thread = new Thread(runnable, "lease-sweeper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * A ticket being simulated by a remote worker.
+     */
+    public static final class Lease {
+        @Getter
+        private final String id = UUID.randomUUID().toString();
+        @Getter
+        private final String workerId;
+        @Getter
+        private final Ticket ticket;
+        private final long startedAt = System.nanoTime();
+
+        private long expiresAt;
+
+        /**
+         * The report uploaded by the worker, if any; guarded by the lease.
+         */
+        private String reportId = null;
+
+        /**
+         * Set once the lease expired or completed; guarded by the lease.
+         */
+        private boolean closed = false;
+
+        private Lease(String workerId, Ticket ticket, long expiresAt) {
+            this.workerId = workerId;
+            this.ticket = ticket;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * An event relayed by a worker, exactly as its copy of the ticket emitted it.
+     */
+    public record RelayedEvent(String event, boolean replayable) { }
+
+    /**
+     * What a worker reports once its simulation is over.
+     *
+     * @param dps            The player's mean DPS, or {@code null} if simc did not print it.
+     * @param cpuNanos       The CPU time of the simc process, or a negative value if it is unknown.
+     * @param peakRssBytes   The peak resident set size of the simc process, or a negative value if it is unknown.
+     * @param failureMessage The reason the simulation failed, or {@code null} if it succeeded.
+     */
+    public record Outcome(Double dps, long cpuNanos, long peakRssBytes, boolean timedOut, String failureMessage) { }
+
+    @Autowired
+    public WorkLeases(JobScheduler scheduler, ReportStore reportStore, Dispatcher dispatcher, Metrics metrics,
+                      @Value("${simulationcraft.coordinator.lease-duration:PT30S}") Duration leaseDuration) {
+        this.scheduler = scheduler;
+        this.reportStore = reportStore;
+        this.dispatcher = dispatcher;
+        this.metrics = metrics;
+        this.leaseDuration = leaseDuration;
+
+        var sweepInterval = Math.max(1, leaseDuration.toMillis() / 4);
+        this.sweeper.scheduleWithFixedDelay(this::expire, sweepInterval, sweepInterval, TimeUnit.MILLISECONDS);
+
+        metrics.registerGauge("scuffedcraft_leases_active", "Jobs leased to remote workers.", this.leases::size);
+    }
+
+    /**
+     * Waits up to a given time for a queued ticket and leases it to a worker.
+     *
+     * @return {@code null} if no ticket was queued in time.
+     */
+    public Lease acquire(@NonNull String workerId, @NonNull Duration wait) throws InterruptedException {
+        var ticket = this.scheduler.poll(wait.toMillis(), TimeUnit.MILLISECONDS);
+        if (ticket == null)
+            return null;
+
+        var lease = new Lease(workerId, ticket, System.nanoTime() + this.leaseDuration.toNanos());
+        this.leases.put(lease.id, lease);
+        this.metrics.recordQueueWait(lease.startedAt - ticket.getEnqueuedAt());
+
+        log.info("Leasing {} to worker {}.", ticket.getInput().getRequestUUID(), workerId);
+        ticket.markInProgress();
+        return lease;
+    }
+
+    /**
+     * Describes the work of a lease: the submission, and how the worker should run it.
+     */
+    public ObjectNode describe(@NonNull Lease lease) {
+        var ticket = lease.ticket;
+        return object("lease", lease.id)
+            .with("heartbeatMillis", Math.max(1, this.leaseDuration.toMillis() / 3))
+            .with("reportRequested", ticket.isReportRequested())
+            .with("extraOptions", array().with(ticket.getExtraOptions()))
+            .with("input", InputCodec.encode(object("uuid", ticket.getInput().getRequestUUID()), ticket.getInput()))
+            .end();
+    }
+
+    /**
+     * Extends a lease and forwards the events its worker relayed to the ticket's subscribers.
+     *
+     * @return {@code false} if the lease is no longer valid; the worker should abandon the simulation.
+     */
+    public boolean renew(@NonNull String leaseId, @NonNull Iterable<RelayedEvent> events) {
+        var lease = this.leases.get(leaseId);
+        if (lease == null)
+            return false;
+
+        synchronized (lease) {
+            if (lease.closed)
+                return false;
+
+            lease.expiresAt = System.nanoTime() + this.leaseDuration.toNanos();
+            for (var event : events)
+                lease.ticket.relay(event.event(), event.replayable());
+            return true;
+        }
+    }
+
+    /**
+     * Moves the report uploaded by a worker into the {@link ReportStore}; it is sent to clients once the lease
+     * completes.
+     *
+     * @return {@code false} if the lease is no longer valid.
+     */
+    public boolean storeReport(@NonNull String leaseId, @NonNull Path report) throws IOException {
+        var lease = this.leases.get(leaseId);
+        if (lease == null)
+            return false;
+
+        synchronized (lease) {
+            if (lease.closed)
+                return false;
+
+            lease.reportId = this.reportStore.store(report).id();
+            return true;
+        }
+    }
+
+    /**
+     * Completes the ticket of a lease.
+     *
+     * @return {@code false} if the lease is no longer valid.
+     */
+    public boolean complete(@NonNull String leaseId, @NonNull Outcome outcome) {
+        var lease = this.leases.remove(leaseId);
+        if (lease == null)
+            return false;
+
+        synchronized (lease) {
+            if (lease.closed)
+                return false;
+            lease.closed = true;
+        }
+
+        lease.ticket.completeRemotely(outcome.dps() == null ? Double.NaN : outcome.dps(), outcome.cpuNanos(),
+            outcome.peakRssBytes(), outcome.timedOut(), lease.reportId, outcome.failureMessage());
+        this.dispatcher.recordCompletion(lease.ticket, System.nanoTime() - lease.startedAt);
+        return true;
+    }
+
+    /**
+     * Queues the tickets of every expired lease again, and fails those of cancelled tickets; their workers learn about
+     * it when they next renew the lease.
+     */
+    void expire() {
+        var now = System.nanoTime();
+        for (var lease : this.leases.values()) {
+            var cancelled = lease.ticket.isCancelled();
+            synchronized (lease) {
+                if (lease.closed || (!cancelled && now - lease.expiresAt < 0))
+                    continue;
+                lease.closed = true;
+            }
+
+            this.leases.remove(lease.id);
+            if (cancelled) {
+                log.info("Revoking the lease of {} by worker {}; it was cancelled.",
+                    lease.ticket.getInput().getRequestUUID(), lease.workerId);
+                lease.ticket.fail(lease.ticket.cancellation());
+                continue;
+            }
+
+            log.warn("Lease of {} by worker {} expired; queueing it again.", lease.ticket.getInput().getRequestUUID(),
+                lease.workerId);
+
+            lease.ticket.setEnqueuedAt(now);
+            if (this.scheduler.offer(lease.ticket))
+                lease.ticket.updateQueuePosition(this.scheduler.positionOf(lease.ticket));
+            else
+                lease.ticket.fail(new Exception("The job queue is full. Please check back later."));
+        }
+    }
+
+    /**
+     * Interrupts the tickets still leased; their workers cannot report back to a stopped server, and the jobs run again
+     * after the restart.
+     */
+    @PreDestroy
+    public void preDestroy() {
+        this.sweeper.shutdownNow();
+        for (var lease : this.leases.values()) {
+            synchronized (lease) {
+                if (lease.closed)
+                    continue;
+                lease.closed = true;
+            }
+            lease.ticket.markInterrupted();
+            lease.ticket.fail(new Exception("The server is shutting down. Please check back later."));
+        }
+        this.leases.clear();
+    }
+}
@@ -0,0 +1,104 @@
+package wrptn.scuffedcraft.controllers;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import wrptn.scuffedcraft.simulation.ReportAssets;
+import wrptn.scuffedcraft.simulation.ReportStore;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReportControllerTests {
+    private static final String REPORT = "<html><body>" + "<div>simulation output</div>".repeat(1000) + "</body></html>";
+
+    @TempDir
+    Path temporaryDirectory;
+
+    private ReportStore reportStore;
+    private WebTestClient client;
+
+    private void createStore(Duration deliveredGrace) {
+        this.reportStore = new ReportStore(this.temporaryDirectory.resolve("reports"), Duration.ofMinutes(5),
+            deliveredGrace, Clock.systemUTC(), new ReportAssets());
+        this.client = WebTestClient.bindToController(new ReportController(this.reportStore)).build();
+    }
+
+    @Test
+    void servesCompressedReportsWithValidators() throws Exception {
+        this.createStore(Duration.ofMinutes(1));
+        var report = this.reportStore.store(Files.writeString(this.temporaryDirectory.resolve("report.html"), REPORT));
+
+        var result = this.client.get().uri("/v2/report/{id}", report.id())
+            .header(HttpHeaders.ACCEPT_ENCODING, "br, gzip")
+            .exchange()
+            .expectStatus().isOk()
+            .expectHeader().valueEquals(HttpHeaders.CONTENT_ENCODING, "gzip")
+            .expectBody().returnResult();
+
+        try (var input = new GZIPInputStream(new ByteArrayInputStream(result.getResponseBodyContent()))) {
+            assertEquals(REPORT, new String(input.readAllBytes()));
+        }
+
+        var etag = result.getResponseHeaders().getETag();
+        assertNotNull(etag);
+
+        this.client.get().uri("/v2/report/{id}", report.id())
+            .header(HttpHeaders.ACCEPT_ENCODING, "gzip")
+            .header(HttpHeaders.IF_NONE_MATCH, etag)
+            .exchange()
+            .expectStatus().isNotModified();
+    }
+
+    @Test
+    void servesIdentityAndDeletesReportsOnceDelivered() throws Exception {
+        this.createStore(Duration.ZERO);
+        var report = this.reportStore.store(Files.writeString(this.temporaryDirectory.resolve("report.html"), REPORT));
+
+        this.client.get().uri("/v2/report/{id}", report.id())
+            .exchange()
+            .expectStatus().isOk()
+            .expectHeader().doesNotExist(HttpHeaders.CONTENT_ENCODING)
+            .expectBody(String.class).isEqualTo(REPORT);
+
+        // No grace period: the delivered report expires immediately.
+        Thread.sleep(5);
+        this.reportStore.sweep();
+        assertFalse(Files.exists(report.path()));
+
+        this.client.get().uri("/v2/report/{id}", report.id())
+            .exchange()
+            .expectStatus().isNotFound();
+    }
+
+    @Test
+    void startupOnlyDeletesReportsOfDeadProcesses() throws Exception {
+        var process = new ProcessBuilder("true").start();
+        assertTrue(process.waitFor(10, TimeUnit.SECONDS));
+
+        var directory = Files.createDirectories(this.temporaryDirectory.resolve("reports"));
+        var orphan = Files.writeString(directory.resolve(process.pid() + "-" + UUID.randomUUID() + ".html"), REPORT);
+        var compressedOrphan = Files.writeString(directory.resolve(process.pid() + "-" + UUID.randomUUID() + ".html.gz"), REPORT);
+        var unrelated = Files.writeString(directory.resolve("notes.html"), REPORT);
+
+        this.createStore(Duration.ofMinutes(1));
+        var report = this.reportStore.store(Files.writeString(this.temporaryDirectory.resolve("report.html"), REPORT));
+        assertFalse(Files.exists(orphan));
+        assertFalse(Files.exists(compressedOrphan));
+
+        // Another instance sharing the directory, such as a worker, leaves the reports of this one alone.
+        this.createStore(Duration.ofMinutes(1));
+        assertTrue(Files.exists(report.path()));
+        assertTrue(Files.exists(report.compressedPath()));
+        assertTrue(Files.exists(unrelated));
+    }
+}
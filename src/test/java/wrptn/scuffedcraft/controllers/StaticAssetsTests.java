@@ -0,0 +1,51 @@
+package wrptn.scuffedcraft.controllers;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.CacheControl;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import wrptn.scuffedcraft.simulation.ReportAssets;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+    "simulationcraft.journal.location=${java.io.tmpdir}/scuffedcraft-tests/${random.uuid}/jobs.log",
+    "simulationcraft.reports.directory=${java.io.tmpdir}/scuffedcraft-tests/${random.uuid}/reports"
+})
+@AutoConfigureWebTestClient
+class StaticAssetsTests {
+    @Autowired
+    WebTestClient client;
+
+    @Autowired
+    ReportAssets assets;
+
+    @Test
+    void versionedAssetsAreCachedForAYear() {
+        this.client.get().uri(this.assets.url("/simcraft/style/sim.css"))
+            .exchange()
+            .expectStatus().isOk()
+            .expectHeader().cacheControl(CacheControl.maxAge(Duration.ofDays(365)).cachePublic());
+
+        this.client.get().uri("/simcraft/style/sim-00000000000000000000000000000000.css")
+            .exchange()
+            .expectStatus().isNotFound();
+    }
+
+    @Test
+    void theSimulationPageUsesVersionedAssets() {
+        var page = this.client.get().uri("/v2/")
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody(String.class).returnResult().getResponseBody();
+
+        assertNotNull(page);
+        assertTrue(page.contains("href=\"" + this.assets.url("/simcraft/style/sim.css") + "\""), page);
+        assertTrue(page.contains("src=\"" + this.assets.url("/simcraft/js/jquery.min.js") + "\""), page);
+        assertFalse(page.contains("/simcraft/js/jquery.min.js\""), page);
+    }
+}
@@ -0,0 +1,56 @@
+package wrptn.scuffedcraft.json;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static wrptn.scuffedcraft.json.Builders.event;
+import static wrptn.scuffedcraft.json.Builders.object;
+
+class BuildersTests {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void eventsMatchTheirNodeTree() throws Exception {
+        var streamed = event("progress")
+            .with("phase", "Generating \"baseline\"\n")
+            .with("percent", 42)
+            .with("eta", 17L)
+            .with("done", false)
+            .end();
+        var tree = object("type", "progress")
+            .with("phase", "Generating \"baseline\"\n")
+            .with("percent", 42)
+            .with("eta", 17L)
+            .with("done", false)
+            .end();
+
+        assertEquals(objectMapper.writeValueAsString(tree), streamed);
+    }
+
+    @Test
+    void reusedWritersStartFromAnEmptyBuffer() {
+        assertEquals("{\"type\":\"queue\",\"position\":1}", event("queue").with("position", 1).end());
+        assertEquals("{\"type\":\"queue\",\"position\":2}", event("queue").with("position", 2).end());
+        assertEquals("{\"type\":\"end\"}", event("end").end());
+    }
+
+    @Test
+    void eventsMayBeBuiltWhileAnotherIsInProgress() {
+        var outer = event("outer");
+        var inner = event("inner").with("value", 1).end();
+        assertEquals("{\"type\":\"outer\",\"inner\":" + objectMapper.valueToTree(inner).toString() + "}",
+            outer.with("inner", inner).end());
+    }
+
+    @Test
+    void linesAreWrittenAsTheirJoinedString() throws Exception {
+        var lines = List.of("Generating \"baseline\"", "", "x".repeat(70 * 1024), "done\t");
+        var tree = object("type", "log").with("line", String.join("\n", lines)).end();
+
+        assertEquals(objectMapper.writeValueAsString(tree), event("log").with("line", lines, "\n").end());
+        assertEquals("{\"type\":\"log\",\"line\":\"a\\nb\"}", event("log").with("line", List.of("a", "b"), "\n").end());
+    }
+}
@@ -0,0 +1,88 @@
+package wrptn.scuffedcraft.models;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProfileSanitizerTests {
+    private static final String PROFILE = String.join("\n",
+        "# Scuffed - Fury",
+        "warrior=\"Scuffed\"",
+        "level=110",
+        "race=human",
+        "race=nightborne",
+        "race==nightborne",
+        "",
+        "head=,id=151000,bonus_id=3610",
+        "head=",
+        "=head",
+        "Head=,id=1",
+        "heads=,id=1",
+        "he=,id=1",
+        "actions=/charge",
+        "save=/tmp/output",
+        "main_hand=,id=128908");
+
+    private static SimulationInput createInput(String profile) {
+        var input = new SimulationInput();
+        input.setProfileString(profile);
+        return input;
+    }
+
+    @Test
+    void keepsAllowedKeysAndImplementedRaces() {
+        assertEquals(List.of(
+            "warrior=\"Scuffed\"",
+            "level=110",
+            "race=human",
+            "race==nightborne",
+            "head=,id=151000,bonus_id=3610",
+            "main_hand=,id=128908"), createInput(PROFILE).getProfile().toList());
+    }
+
+    @Test
+    void reportsRejectedLinesWithTheirNumber() {
+        var rejected = createInput(PROFILE).getRejectedLines();
+        assertEquals(List.of(
+            new ProfileSanitizer.RejectedLine(5, "race=nightborne"),
+            new ProfileSanitizer.RejectedLine(9, "head="),
+            new ProfileSanitizer.RejectedLine(10, "=head"),
+            new ProfileSanitizer.RejectedLine(11, "Head=,id=1"),
+            new ProfileSanitizer.RejectedLine(12, "heads=,id=1"),
+            new ProfileSanitizer.RejectedLine(13, "he=,id=1"),
+            new ProfileSanitizer.RejectedLine(14, "actions=/charge"),
+            new ProfileSanitizer.RejectedLine(15, "save=/tmp/output")), rejected);
+    }
+
+    @Test
+    void writesAcceptedLinesWhateverTheLineTerminators() throws Exception {
+        var writer = new StringWriter();
+        createInput("level=110\r\nrace=human\rsave=x\n\nspec=fury").writeProfile(writer);
+
+        var separator = System.lineSeparator();
+        assertEquals("level=110" + separator + "race=human" + separator + "spec=fury" + separator, writer.toString());
+    }
+
+    @Test
+    void whitespaceOnlyLinesAreNotReported() {
+        var input = createInput("level=110\n   \n\t\r\nsave=x \n  level=110");
+        assertEquals(List.of("level=110"), input.getProfile().toList());
+        assertEquals(List.of(
+            new ProfileSanitizer.RejectedLine(4, "save=x "),
+            new ProfileSanitizer.RejectedLine(5, "  level=110")), input.getRejectedLines());
+    }
+
+    @Test
+    void missingProfilesAreEmpty() throws Exception {
+        var input = createInput(null);
+        assertEquals(List.of(), input.getProfile().toList());
+        assertEquals(List.of(), input.getRejectedLines());
+
+        var writer = new StringWriter();
+        input.writeProfile(writer);
+        assertEquals("", writer.toString());
+    }
+}
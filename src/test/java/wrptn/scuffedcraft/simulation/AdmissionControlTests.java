@@ -0,0 +1,167 @@
+package wrptn.scuffedcraft.simulation;
+
+import org.junit.jupiter.api.Test;
+import wrptn.scuffedcraft.models.SimulationInput;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdmissionControlTests {
+    private final CostModel costModel = new CostModel(10);
+
+    private static SimulationInput createInput(boolean scaling) {
+        var input = new SimulationInput();
+        input.setEnableScaling(scaling);
+        input.setProfileString("warrior=\"Admitted\"\nlevel=110\n");
+        return input;
+    }
+
+    @Test
+    void clientsAreChargedTheEstimatedCostOfTheirJobs() {
+        var now = new AtomicLong();
+        var plain = createInput(false);
+        var cost = this.costModel.estimate(plain);
+        var admission = new AdmissionControl(this.costModel, new JobScheduler(64, 1.0), new Metrics(), 8 * cost,
+            cost, now::get);
+
+        // A scaling run costs eight plain runs, which empties the bucket.
+        assertTrue(admission.tryAdmit("first", createInput(true)).admitted());
+        var decision = admission.tryAdmit("first", plain);
+        assertFalse(decision.admitted());
+        assertEquals(Duration.ofSeconds(1), decision.retryAfter());
+
+        // Other clients own their bucket.
+        assertTrue(admission.tryAdmit("second", plain).admitted());
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertTrue(admission.tryAdmit("first", plain).admitted());
+    }
+
+    @Test
+    void refundsRestoreTheCostOfASubmission() {
+        var now = new AtomicLong();
+        var plain = createInput(false);
+        var cost = this.costModel.estimate(plain);
+        var admission = new AdmissionControl(this.costModel, new JobScheduler(64, 1.0), new Metrics(), 2 * cost,
+            cost, now::get);
+
+        // Served from the cache twice: neither submission costs anything.
+        assertTrue(admission.tryAdmit("client", plain).admitted());
+        admission.refund("client", plain);
+        assertTrue(admission.tryAdmit("client", plain).admitted());
+        admission.refund("client", plain);
+
+        assertTrue(admission.tryAdmit("client", plain).admitted());
+        assertTrue(admission.tryAdmit("client", plain).admitted());
+        assertFalse(admission.tryAdmit("client", plain).admitted());
+
+        // Refunds never fill a bucket past its capacity.
+        for (var i = 0; i < 4; ++i)
+            admission.refund("client", plain);
+        assertTrue(admission.tryAdmit("client", plain).admitted());
+        assertTrue(admission.tryAdmit("client", plain).admitted());
+        assertFalse(admission.tryAdmit("client", plain).admitted());
+    }
+
+    @Test
+    void retryDelaysFollowTheDrainRateOnceTheQueueIsFull() throws Exception {
+        var now = new AtomicLong();
+        var scheduler = new JobScheduler(4, 1.0);
+        var admission = new AdmissionControl(this.costModel, scheduler, new Metrics(), 1000, 1000, now::get);
+
+        for (var i = 0; i < 4; ++i)
+            assertTrue(scheduler.offer(new Ticket(createInput(false))));
+
+        // Nothing has been dispatched yet.
+        var decision = admission.tryAdmit("client", createInput(false));
+        assertFalse(decision.admitted());
+        assertEquals(Duration.ofSeconds(30), decision.retryAfter());
+
+        // Two tickets per second leave the queue.
+        for (var second = 0; second < 20; ++second) {
+            scheduler.take();
+            scheduler.take();
+            scheduler.offer(new Ticket(createInput(false)));
+            scheduler.offer(new Ticket(createInput(false)));
+            now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+            admission.tryAdmit("client", createInput(false));
+        }
+
+        decision = admission.tryAdmit("client", createInput(false));
+        assertFalse(decision.admitted());
+        assertEquals(Duration.ofSeconds(1), decision.retryAfter());
+    }
+
+    /**
+     * One client floods the service from several threads while another submits at a modest pace; the latter must
+     * never be turned away, and the former must not get more than its share.
+     */
+    @Test
+    void floodingClientsDoNotStarveOthers() throws Exception {
+        var cost = this.costModel.estimate(createInput(false));
+        var scheduler = new JobScheduler(64, 1.0);
+        var admission = new AdmissionControl(this.costModel, scheduler, new Metrics(), 10 * cost, 10 * cost);
+        var duration = Duration.ofSeconds(3);
+
+        // Four workers, each completing a job every 20ms.
+        var running = new AtomicBoolean(true);
+        var threads = new ArrayList<Thread>();
+        for (var i = 0; i < 4; ++i) {
+            threads.add(new Thread(() -> {
+                try {
+                    while (running.get()) {
+                        if (scheduler.poll(10, TimeUnit.MILLISECONDS) != null)
+                            Thread.sleep(20);
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+        }
+
+        var flooderAdmitted = new AtomicInteger();
+        var flooderRejected = new AtomicInteger();
+        for (var i = 0; i < 4; ++i) {
+            threads.add(new Thread(() -> {
+                while (running.get()) {
+                    var ticket = new Ticket(createInput(false));
+                    if (admission.tryAdmit("flooder", ticket.getInput()).admitted() && scheduler.offer(ticket))
+                        flooderAdmitted.incrementAndGet();
+                    else
+                        flooderRejected.incrementAndGet();
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+
+        var politeSubmissions = 0;
+        var politeAdmitted = 0;
+        var start = System.nanoTime();
+        try {
+            while (System.nanoTime() - start < duration.toNanos()) {
+                var ticket = new Ticket(createInput(false));
+                ++politeSubmissions;
+                if (admission.tryAdmit("polite", ticket.getInput()).admitted() && scheduler.offer(ticket))
+                    ++politeAdmitted;
+                Thread.sleep(200);
+            }
+        } finally {
+            running.set(false);
+            for (var thread : threads)
+                thread.join();
+        }
+
+        assertEquals(politeSubmissions, politeAdmitted);
+        assertTrue(flooderRejected.get() > 1000, "The flooder was rejected " + flooderRejected.get() + " times");
+
+        // A full bucket, then ten jobs per second.
+        var share = 10 + 10 * (System.nanoTime() - start) / 1e9;
+        assertTrue(flooderAdmitted.get() <= share + 1, "The flooder got " + flooderAdmitted.get() + " jobs, expected at most " + share);
+    }
+}
@@ -0,0 +1,105 @@
+package wrptn.scuffedcraft.simulation;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static wrptn.scuffedcraft.simulation.TestServer.createInput;
+
+class CancellationTests {
+    @TempDir
+    Path temporaryDirectory;
+
+    private TestServer server;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        // Long enough that no simulation completes by itself during a test.
+        var executable = FakeSimc.create(this.temporaryDirectory, Duration.ofSeconds(30));
+        this.server = TestServer.builder(this.temporaryDirectory, executable)
+            .journal(this.temporaryDirectory.resolve("jobs.log"))
+            .gracePeriod(Duration.ofMillis(500))
+            .start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        this.server.close();
+    }
+
+    private static void awaitStart(Ticket ticket) throws InterruptedException {
+        for (var i = 0; i < 50 && ticket.getRunningNanos() == 0; ++i)
+            Thread.sleep(100);
+        assertTrue(ticket.getRunningNanos() > 0);
+    }
+
+    @Test
+    void cancellingKillsRunningAndWithdrawsQueuedSimulations() throws Exception {
+        // Started first; otherwise the cheaper of the two could be dispatched before it.
+        var running = this.server.service().submit(createInput("Running"));
+        var runningEvents = running.observe(0).collectList().toFuture();
+        awaitStart(running);
+        var queued = this.server.service().submit(createInput("Queued"));
+        var queuedEvents = queued.observe(0).collectList().toFuture();
+
+        var start = System.nanoTime();
+        assertTrue(this.server.service().cancel(queued.getInput().getRequestUUID()));
+        assertTrue(this.server.service().cancel(running.getInput().getRequestUUID()));
+        assertFalse(this.server.service().cancel(running.getInput().getRequestUUID()));
+
+        runningEvents.get();
+        queuedEvents.get();
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).compareTo(Duration.ofSeconds(10)) < 0);
+
+        for (var ticket : new Ticket[] { running, queued }) {
+            assertTrue(ticket.isFailed());
+            assertEquals("The simulation was cancelled.", ticket.getFailureMessage());
+        }
+        assertEquals(0, this.server.scheduler().size());
+        assertTrue(this.server.metrics().scrape().contains("scuffedcraft_cancellations_total 2\n"));
+    }
+
+    @Test
+    void abandonedSimulationsAreCancelledAfterTheGracePeriod() throws Exception {
+        var observed = this.server.service().submit(createInput("Observed"));
+        var abandoned = this.server.service().submit(createInput("Abandoned"));
+        var subscription = observed.observe(0).subscribe();
+        try {
+            abandoned.getResultsFlux().blockLast(Duration.ofSeconds(10));
+
+            assertTrue(abandoned.isCancelled());
+            assertFalse(observed.isCancelled());
+        } finally {
+            subscription.dispose();
+        }
+
+        // Its client left; it is cancelled as well once the grace period expired.
+        observed.getResultsFlux().blockLast(Duration.ofSeconds(10));
+        assertTrue(observed.isCancelled());
+    }
+
+    @Test
+    void identicalSubmissionsAreOnlyDetached() throws Exception {
+        var input = createInput("Shared");
+        var ticket = this.server.service().submit(input);
+        var copy = createInput("Shared");
+        assertSame(ticket, this.server.service().submit(copy));
+
+        var subscription = ticket.observe(0).subscribe();
+        try {
+            assertTrue(this.server.service().cancel(copy.getRequestUUID()));
+            assertNull(this.server.ticketRegistry().get(copy.getRequestUUID()));
+            assertFalse(ticket.isCancelled());
+        } finally {
+            subscription.dispose();
+        }
+
+        assertTrue(this.server.service().cancel(input.getRequestUUID()));
+        ticket.getResultsFlux().blockLast(Duration.ofSeconds(10));
+    }
+}
@@ -0,0 +1,122 @@
+package wrptn.scuffedcraft.simulation;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Slf4j
+class CpuBudgetTests {
+    @Test
+    void sharesCoresBetweenExpectedJobs() {
+        var budget = new CpuBudget(24, 4, false, "taskset");
+
+        var alone = budget.acquire(0);
+        assertEquals(24, alone.threads());
+        budget.release(alone);
+
+        var first = budget.acquire(10);
+        var second = budget.acquire(9);
+        assertEquals(6, first.threads());
+        assertEquals(6, second.threads());
+        assertTrue(first.cpus().isEmpty());
+    }
+
+    @Test
+    void pinsJobsToDisjointCpuSets() {
+        var budget = new CpuBudget(8, 2, true, "taskset");
+
+        var first = budget.acquire(1);
+        var second = budget.acquire(0);
+        assertEquals("0-3", first.cpuList());
+        assertEquals("4-7", second.cpuList());
+        assertFalse(first.cpus().intersects(second.cpus()));
+        assertEquals(List.of("taskset", "-c", "4-7", "simc", "input.simc"), budget.wrap(second, List.of("simc", "input.simc")));
+
+        budget.release(first);
+        var third = budget.acquire(0);
+        assertEquals("0-3", third.cpuList());
+    }
+
+    /**
+     * Runs a burst of CPU-bound stand-in jobs, each splitting its fixed amount of work over the threads it was given,
+     * with the fixed four threads setting and with the budget. The budget must not be slower.
+     */
+    @Test
+    void dynamicAllocationIsNoSlowerThanFixedThreads() throws Exception {
+        var cores = Runtime.getRuntime().availableProcessors();
+        var workers = Math.max(1, cores / 2);
+
+        var fixed = runBurst(workers, 4, null);
+
+        var budget = new CpuBudget(cores, workers, false, "taskset");
+        var dynamic = runBurst(workers, 0, budget);
+
+        log.info("Stand-in burst on {} cores and {} workers: fixed threads=4 took {}, budgeted took {}.",
+            cores, workers, fixed, dynamic);
+        assertTrue(dynamic.toMillis() <= fixed.toMillis() * 1.25,
+            "Budgeted threads (" + dynamic + ") should not be slower than threads=4 (" + fixed + ")");
+    }
+
+    private static Duration runBurst(int workers, int fixedThreads, CpuBudget budget) throws Exception {
+        final var jobs = workers * 3;
+        final var workPerJob = 40_000_000L;
+
+        var pool = Executors.newFixedThreadPool(workers);
+        try {
+            var remaining = new AtomicInteger(jobs);
+            var tasks = new ArrayList<Callable<Void>>();
+            for (var i = 0; i < jobs; ++i) {
+                tasks.add(() -> {
+                    var queueDepth = remaining.decrementAndGet();
+                    var allocation = budget == null ? null : budget.acquire(queueDepth);
+                    try {
+                        var threads = allocation == null ? fixedThreads : allocation.threads();
+                        standInSimulation(threads, workPerJob);
+                    } finally {
+                        if (allocation != null)
+                            budget.release(allocation);
+                    }
+                    return null;
+                });
+            }
+
+            var start = System.nanoTime();
+            for (var future : pool.invokeAll(tasks))
+                future.get();
+            return Duration.ofNanos(System.nanoTime() - start);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Splits a fixed amount of iterations over threads, like simc does.
+     */
+    private static void standInSimulation(int threads, long iterations) throws Exception {
+        var executor = Executors.newFixedThreadPool(threads);
+        try {
+            var slices = new ArrayList<Callable<Long>>();
+            for (var i = 0; i < threads; ++i) {
+                slices.add(() -> {
+                    var accumulator = 0L;
+                    for (var iteration = 0L; iteration < iterations / threads; ++iteration)
+                        accumulator = accumulator * 6364136223846793005L + iteration;
+                    return accumulator;
+                });
+            }
+
+            for (var future : executor.invokeAll(slices))
+                future.get();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
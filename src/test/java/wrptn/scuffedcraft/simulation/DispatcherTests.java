@@ -0,0 +1,45 @@
+package wrptn.scuffedcraft.simulation;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static wrptn.scuffedcraft.simulation.TestServer.createInput;
+
+class DispatcherTests {
+    private static final int JOB_COUNT = 8;
+
+    @TempDir
+    Path temporaryDirectory;
+
+    @Test
+    void throughputScalesWithWorkerCount() throws Exception {
+        var executable = FakeSimc.create(this.temporaryDirectory, Duration.ofMillis(400));
+
+        var singleWorker = runJobs(executable, 1);
+        var fourWorkers = runJobs(executable, 4);
+
+        // 8 jobs of 400ms: ~3.2s sequentially against ~0.8s with four workers.
+        assertTrue(fourWorkers.multipliedBy(2).compareTo(singleWorker) < 0,
+            "Expected 4 workers (" + fourWorkers + ") to be at least twice as fast as 1 (" + singleWorker + ")");
+    }
+
+    private Duration runJobs(Path executable, int workerCount) {
+        try (var server = TestServer.builder(this.temporaryDirectory, executable).workers(workerCount).start()) {
+            var tickets = new ArrayList<Ticket>();
+            for (var i = 0; i < JOB_COUNT; ++i)
+                tickets.add(new Ticket(createInput("Fake")));
+
+            var start = System.nanoTime();
+            tickets.forEach(server.dispatcher()::trySubmit);
+            for (var ticket : tickets)
+                ticket.getResultsFlux().blockLast(Duration.ofSeconds(30));
+
+            return Duration.ofNanos(System.nanoTime() - start);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package wrptn.scuffedcraft.simulation;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventLogTests {
+    private static List<Long> ids(List<EventLog.Event> events) {
+        return events.stream().map(EventLog.Event::id).toList();
+    }
+
+    @Test
+    void subscribersResumeAfterTheLastEventTheyReceived() {
+        var log = new EventLog(16);
+        for (var i = 0; i < 5; ++i)
+            log.append("before " + i, false);
+
+        var resumed = log.subscribe(3).collectList().toFuture();
+        log.append("live", false);
+        log.complete();
+        log.append("ignored", false);
+
+        var events = resumed.join();
+        assertEquals(List.of(4L, 5L, 6L), ids(events));
+        assertEquals("live", events.get(2).data());
+    }
+
+    @Test
+    void evictedEventsAreSkippedExceptReplayableOnes() {
+        var log = new EventLog(4);
+        log.append("status", true);
+        for (var i = 0; i < 10; ++i)
+            log.append("log " + i, false);
+        log.append("report", true);
+        log.complete();
+
+        var events = log.subscribe(0).collectList().block(Duration.ofSeconds(5));
+        assertNotNull(events);
+        assertEquals(List.of(1L, 9L, 10L, 11L, 12L), ids(events));
+        assertEquals(List.of("status", "report"), log.getTranscript());
+
+        // Nothing is sent twice to a client that already received the transcript's first event.
+        events = log.subscribe(1).collectList().block(Duration.ofSeconds(5));
+        assertNotNull(events);
+        assertEquals(List.of(9L, 10L, 11L, 12L), ids(events));
+    }
+
+    @Test
+    void everySubscriberReceivesEveryEvent() {
+        var log = new EventLog(16);
+        log.append("first", true);
+
+        var early = log.subscribe(0).collectList().toFuture();
+        log.append("second", false);
+        var late = log.subscribe(0).collectList().toFuture();
+        log.append("third", false);
+        log.complete();
+
+        assertEquals(List.of(1L, 2L, 3L), ids(early.join()));
+        assertEquals(List.of(1L, 2L, 3L), ids(late.join()));
+    }
+
+    @Test
+    void identifiersOfAnotherLogStartFromTheBeginning() {
+        var log = new EventLog(16, 2000L << 20);
+        log.append("first", true);
+        log.append("second", false);
+        log.complete();
+
+        var first = (2000L << 20) + 1;
+        assertEquals(List.of(first + 1), ids(log.subscribe(first).collectList().block(Duration.ofSeconds(5))));
+
+        // Such as a client resuming a restored ticket with an identifier issued by the previous server.
+        for (var lastEventId : List.of((1000L << 20) + 5, (2000L << 20) + 3, 5L))
+            assertEquals(List.of(first, first + 1), ids(log.subscribe(lastEventId).collectList().block(Duration.ofSeconds(5))));
+    }
+}
@@ -0,0 +1,93 @@
+package wrptn.scuffedcraft.simulation;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Stand-in for the simc executable: sleeps for a fixed amount of time and writes a tiny HTML report.
+ */
+public final class FakeSimc {
+    /**
+     * The {@code json2} output of every run: a player dealing 100000 DPS with two abilities.
+     */
+    static final String JSON2 = """
+        {"version":"fake","sim":{"options":{"confidence_estimator":2.0},"players":[{"name":"Fake",\
+        "collected_data":{"dps":{"mean":100000.0,"mean_std_dev":50.0}},"stats":[\
+        {"name":"rend","type":"damage","portion_aps":{"mean":40000.0},"portion_amount":0.4},\
+        {"name":"slam","type":"damage","portion_aps":{"mean":60000.0},"portion_amount":0.6}]}]}}\
+        """;
+
+    private FakeSimc() { }
+
+    public static Path create(Path directory, Duration runtime) throws IOException {
+        var script = directory.resolve("fake-simc.sh");
+        Files.writeString(script, """
+            #!/bin/sh
+            sleep %s
+            for arg in "$@"; do
+                case "$arg" in
+                    html=*) echo "<html><body><div>fake report</div></body></html>" > "${arg#html=}" ;;
+                    json2=*) echo '%s' > "${arg#json2=}" ;;
+                esac
+            done
+            echo "Simulation finished."
+            """.formatted(runtime.toMillis() / 1000.0, JSON2));
+        script.toFile().setExecutable(true);
+        return script;
+    }
+
+    /**
+     * Like {@link #create(Path, Duration)}, but also prints the player's DPS: {@code 100000} plus the amount of each
+     * enchant stat in the input file multiplied by {@code 1 + index of the stat in ScaleFactorJob.STAT_OPTIONS}. The
+     * DPS of a pet follows, as simc prints it for classes that have one.
+     */
+    public static Path createWithDps(Path directory, Duration runtime) throws IOException {
+        var script = directory.resolve("fake-simc-dps.sh");
+        Files.writeString(script, """
+            #!/bin/sh
+            sleep %s
+            for arg in "$@"; do
+                case "$arg" in
+                    html=*) echo "<html><body><div>fake report</div></body></html>" > "${arg#html=}" ;;
+                    json2=*) echo '%s' > "${arg#json2=}" ;;
+                esac
+            done
+            awk -F= 'BEGIN { dps = 100000; split("%s", stats, " "); for (i in stats) weight[stats[i]] = i }
+                     $1 in weight { dps += $2 * weight[$1] }
+                     END { printf "  DPS=%%.1f  DPS-Error=0.0\\n\\n  Pet: felhunter\\n  DPS=1234.5  DPS-Error=0.0\\n", dps }' "$1"
+            """.formatted(runtime.toMillis() / 1000.0, JSON2, String.join(" ", ScaleFactorJob.STAT_OPTIONS.values())));
+        script.toFile().setExecutable(true);
+        return script;
+    }
+
+    /**
+     * Like {@link #create(Path, Duration)}, but also prints the results of every profileset in the input file, in
+     * simc's text format; the DPS of the n-th profileset is {@code 100000 + 1000 * n}.
+     */
+    public static Path createWithProfilesets(Path directory, Duration runtime) throws IOException {
+        var script = directory.resolve("fake-simc-profilesets.sh");
+        Files.writeString(script, """
+            #!/bin/sh
+            sleep %s
+            for arg in "$@"; do
+                case "$arg" in
+                    html=*) echo "<html><body><div>fake report</div></body></html>" > "${arg#html=}" ;;
+                    json2=*) echo '%s' > "${arg#json2=}" ;;
+                esac
+            done
+            awk '/^profileset\\."/ {
+                     name = $0; sub(/^profileset\\."/, "", name); sub(/"\\+=.*/, "", name)
+                     if (!(name in seen)) { seen[name] = 1; names[++count] = name }
+                 }
+                 END {
+                     printf "  DPS=100000.0  DPS-Error=0.0\\n\\nProfilesets (median Damage per Second):\\n"
+                     for (i = 1; i <= count; ++i) printf "    %%d : %%s\\n", 100000 + 1000 * i, names[i]
+                     printf "\\nSimulation finished.\\n"
+                 }' "$1"
+            """.formatted(runtime.toMillis() / 1000.0, JSON2));
+        script.toFile().setExecutable(true);
+        return script;
+    }
+}
@@ -0,0 +1,106 @@
+package wrptn.scuffedcraft.simulation;
+
+import org.junit.jupiter.api.Test;
+import wrptn.scuffedcraft.models.FightStyle;
+import wrptn.scuffedcraft.models.SimulationInput;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JobAccountingTests {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private static SimulationInput createInput(FightStyle fightStyle, int enemies) {
+        var input = new SimulationInput();
+        input.setFightType(fightStyle);
+        input.setNumberOfEnemies(enemies);
+        input.setProfileString("warrior=\"Fake\"\nlevel=110\n");
+        return input;
+    }
+
+    private static Ticket ticket(SimulationInput input, double estimatedSeconds) {
+        var ticket = new Ticket(input);
+        ticket.setEstimatedSeconds(estimatedSeconds);
+        return ticket;
+    }
+
+    @Test
+    void recordsAreSummarizedByKindOfSimulation() {
+        var accounting = new JobAccounting(8);
+        var patchwerk = createInput(FightStyle.Patchwerk, 1);
+        var cleave = createInput(FightStyle.HecticAddCleave, 3);
+
+        accounting.record(patchwerk, 10 * SECOND, 40 * SECOND, 200 << 20, 1 << 20);
+        accounting.record(patchwerk, 20 * SECOND, -1, 300 << 20, 3 << 20);
+        accounting.record(cleave, 30 * SECOND, 90 * SECOND, -1, -1);
+
+        var summaries = accounting.summarize();
+        assertEquals(2, summaries.size());
+
+        var first = summaries.get(0);
+        assertEquals(new JobAccounting.Key(FightStyle.Patchwerk, false, 1), first.key());
+        assertEquals(2, first.count());
+        assertEquals(15, first.meanWallSeconds(), 1e-9);
+        assertEquals(40, first.meanCpuSeconds(), 1e-9);
+        assertEquals(300 << 20, first.peakRssBytes());
+        assertEquals(2 << 20, first.meanReportBytes(), 1e-9);
+
+        var second = summaries.get(1);
+        assertEquals(new JobAccounting.Key(FightStyle.HecticAddCleave, false, 3), second.key());
+        assertEquals(-1, second.peakRssBytes());
+        assertTrue(Double.isNaN(second.meanReportBytes()));
+    }
+
+    @Test
+    void theOldestRecordsAreOverwritten() {
+        var accounting = new JobAccounting(4);
+        var patchwerk = createInput(FightStyle.Patchwerk, 1);
+        for (var i = 1; i <= 6; ++i)
+            accounting.record(patchwerk, i * SECOND, -1, -1, -1);
+
+        var summaries = accounting.summarize();
+        assertEquals(1, summaries.size());
+        assertEquals(4, summaries.get(0).count());
+        assertEquals((3 + 4 + 5 + 6) / 4.0, summaries.get(0).meanWallSeconds(), 1e-9);
+    }
+
+    @Test
+    void queuedTicketsTakeTheFirstFreeWorker() {
+        var accounting = new JobAccounting(16);
+        var patchwerk = createInput(FightStyle.Patchwerk, 1);
+        var cleave = createInput(FightStyle.HecticAddCleave, 1);
+
+        // Recorded runtimes take over the cost model's estimate once there are enough of them.
+        for (var i = 0; i < JobAccounting.MIN_SAMPLES; ++i)
+            accounting.record(patchwerk, 10 * SECOND, -1, -1, -1);
+
+        var now = Instant.ofEpochSecond(1_000_000);
+        var queued = List.of(ticket(patchwerk, 100), ticket(patchwerk, 100), ticket(cleave, 30));
+        var forecasts = accounting.forecast(List.of(), queued, 2, now);
+
+        assertEquals(List.of(
+            new JobAccounting.Forecast(now, now.plusSeconds(10)),
+            new JobAccounting.Forecast(now, now.plusSeconds(10)),
+            new JobAccounting.Forecast(now.plusSeconds(10), now.plusSeconds(40))), forecasts);
+    }
+
+    @Test
+    void runningTicketsHoldTheirWorkerForTheRestOfTheirRuntime() {
+        var accounting = new JobAccounting(16);
+        var running = ticket(createInput(FightStyle.Patchwerk, 1), 20);
+        running.markInProgress();
+
+        var now = Instant.now();
+        var forecast = accounting.forecast(List.of(running), List.of(ticket(createInput(FightStyle.Patchwerk, 1), 5)), 1,
+            now).get(0);
+
+        var start = Duration.between(now, forecast.startsAt());
+        assertTrue(start.compareTo(Duration.ofSeconds(19)) > 0 && start.compareTo(Duration.ofSeconds(20)) <= 0,
+            start.toString());
+        assertEquals(5000, Duration.between(forecast.startsAt(), forecast.finishesAt()).toMillis(), 1);
+    }
+}
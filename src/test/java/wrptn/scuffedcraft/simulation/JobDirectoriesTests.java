@@ -0,0 +1,47 @@
+package wrptn.scuffedcraft.simulation;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JobDirectoriesTests {
+    @TempDir
+    Path temporaryDirectory;
+
+    @Test
+    void directoriesAreDeletedWithTheirContent() throws Exception {
+        var directories = new JobDirectories(this.temporaryDirectory);
+        var directory = directories.create();
+        Files.writeString(directory.resolve("input.simc"), "warrior=\"Fake\"");
+        Files.createDirectory(directory.resolve("nested"));
+        Files.writeString(directory.resolve("nested").resolve("output.txt"), "Simulation finished.");
+
+        assertTrue(directory.getFileName().toString().startsWith(ProcessHandle.current().pid() + "-"));
+        assertNotEquals(directory, directories.create());
+
+        JobDirectories.delete(directory);
+        assertFalse(Files.exists(directory));
+    }
+
+    @Test
+    void directoriesOfDeadProcessesAreRemovedOnStartup() throws Exception {
+        var process = new ProcessBuilder("true").start();
+        assertTrue(process.waitFor(10, TimeUnit.SECONDS));
+
+        var orphan = Files.createDirectory(this.temporaryDirectory.resolve(process.pid() + "-orphan"));
+        Files.writeString(orphan.resolve("output.txt"), "Generating baseline...");
+        var live = Files.createDirectory(this.temporaryDirectory.resolve(ProcessHandle.current().pid() + "-live"));
+        var unrelated = Files.createDirectory(this.temporaryDirectory.resolve("unrelated"));
+
+        new JobDirectories(this.temporaryDirectory);
+
+        assertFalse(Files.exists(orphan));
+        assertTrue(Files.exists(live));
+        assertTrue(Files.exists(unrelated));
+    }
+}
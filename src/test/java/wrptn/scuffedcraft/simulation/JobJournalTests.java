@@ -0,0 +1,223 @@
+package wrptn.scuffedcraft.simulation;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import wrptn.scuffedcraft.models.FightStyle;
+import wrptn.scuffedcraft.models.ProfileVariant;
+import wrptn.scuffedcraft.models.SimulationInput;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static wrptn.scuffedcraft.simulation.TestServer.JOURNAL_SIZE;
+import static wrptn.scuffedcraft.simulation.TestServer.types;
+
+class JobJournalTests {
+    @TempDir
+    Path temporaryDirectory;
+
+    private TestServer startServer(Path journalPath, Path executable, String name, int workers) {
+        return TestServer.builder(this.temporaryDirectory, executable)
+            .name(name)
+            .workers(workers)
+            .journal(journalPath)
+            .start();
+    }
+
+    private static SimulationInput createInput(String name) {
+        var input = TestServer.createInput(name);
+        input.setFightType(FightStyle.HecticAddCleave);
+        input.setNumberOfEnemies(3);
+        return input;
+    }
+
+    @Test
+    void pendingJobsSurviveReopening() {
+        var path = this.temporaryDirectory.resolve("jobs.log");
+        var first = createInput("First");
+        var second = createInput("Second");
+        var third = createInput("Third");
+
+        // Never closed, as if the process crashed.
+        var journal = new JobJournal(path, JOURNAL_SIZE);
+        journal.submitted(first);
+        journal.submitted(second);
+        third.getVariants().add(new ProfileVariant("Variant", "trinket1=,id=2\n"));
+        journal.submitted(third);
+        journal.started(first.getRequestUUID());
+        journal.attached("alias", third.getRequestUUID());
+        journal.finished(second.getRequestUUID());
+        journal.abandon();
+
+        var pending = new JobJournal(path, JOURNAL_SIZE).getPendingJobs();
+        assertEquals(2, pending.size());
+
+        assertEquals(first.getRequestUUID(), pending.get(0).input().getRequestUUID());
+        assertTrue(pending.get(0).started());
+        assertEquals(FightStyle.HecticAddCleave, pending.get(0).input().getFightType());
+        assertEquals(3, pending.get(0).input().getNumberOfEnemies());
+        assertEquals(first.getProfileString(), pending.get(0).input().getProfileString());
+
+        assertEquals(third.getRequestUUID(), pending.get(1).input().getRequestUUID());
+        assertFalse(pending.get(1).started());
+        assertEquals(List.of("alias"), pending.get(1).aliases());
+        assertEquals(1, pending.get(1).input().getVariants().size());
+        assertEquals("Variant", pending.get(1).input().getVariants().get(0).getName());
+        assertTrue(pending.get(0).input().getVariants().isEmpty());
+    }
+
+    @Test
+    void tornRecordsEndTheReplay() throws Exception {
+        var path = this.temporaryDirectory.resolve("jobs.log");
+        var first = createInput("First");
+        var second = createInput("Second");
+
+        var journal = new JobJournal(path, JOURNAL_SIZE);
+        journal.submitted(first);
+        journal.submitted(second);
+        journal.abandon();
+
+        // Corrupt the last byte of the second record.
+        try (var file = new RandomAccessFile(path.toFile(), "rw")) {
+            var position = 0L;
+            for (var i = 0; i < 2; ++i) {
+                file.seek(position);
+                position += 8 + file.readInt();
+            }
+            file.seek(position - 1);
+            file.write('!');
+        }
+
+        var reopened = new JobJournal(path, JOURNAL_SIZE);
+        assertEquals(List.of(first.getRequestUUID()), reopened.getPendingJobs().stream()
+            .map(job -> job.input().getRequestUUID()).toList());
+
+        // The torn record is overwritten by the next one.
+        var third = createInput("Third");
+        reopened.submitted(third);
+        reopened.abandon();
+        assertEquals(2, new JobJournal(path, JOURNAL_SIZE).getPendingJobs().size());
+    }
+
+    @Test
+    void compactionKeepsOnlyPendingJobs() throws Exception {
+        var path = this.temporaryDirectory.resolve("jobs.log");
+        var journal = new JobJournal(path, JOURNAL_SIZE);
+
+        // Far more than fits in the mapping; appends compact the journal whenever it fills up.
+        SimulationInput last = null;
+        for (var i = 0; i < 200; ++i) {
+            last = createInput("Job" + i);
+            journal.submitted(last);
+            journal.started(last.getRequestUUID());
+            if (i != 199)
+                journal.finished(last.getRequestUUID());
+        }
+
+        journal.abandon();
+        assertEquals(JOURNAL_SIZE, Files.size(path));
+        var pending = new JobJournal(path, JOURNAL_SIZE).getPendingJobs();
+        assertEquals(1, pending.size());
+        assertEquals(last.getRequestUUID(), pending.get(0).input().getRequestUUID());
+        assertTrue(pending.get(0).started());
+    }
+
+    @Test
+    void journalsAreUsedByASingleInstance() {
+        var path = this.temporaryDirectory.resolve("jobs.log");
+        var journal = new JobJournal(path, JOURNAL_SIZE);
+        journal.submitted(createInput("Locked"));
+
+        assertThrows(IllegalStateException.class, () -> new JobJournal(path, JOURNAL_SIZE));
+
+        journal.preDestroy();
+        var reopened = new JobJournal(path, JOURNAL_SIZE);
+        assertEquals(1, reopened.getPendingJobs().size());
+        reopened.preDestroy();
+    }
+
+    @Test
+    void restoredJobsCompleteUnderTheirOriginalIdentifier() throws Exception {
+        var path = this.temporaryDirectory.resolve("jobs.log");
+        var input = createInput("Restored");
+        var crashed = new JobJournal(path, JOURNAL_SIZE);
+        crashed.submitted(input);
+        crashed.abandon();
+
+        var executable = FakeSimc.create(this.temporaryDirectory, Duration.ofMillis(100));
+        try (var server = this.startServer(path, executable, "restored", 1)) {
+            server.service().restore();
+
+            var ticket = server.ticketRegistry().get(input.getRequestUUID());
+            assertNotNull(ticket);
+            ticket.getResultsFlux().blockLast(Duration.ofSeconds(30));
+
+            assertFalse(ticket.isFailed());
+
+            // The journal is updated by the completion listener, right after the stream ends.
+            for (var i = 0; i < 50 && !server.journal().getPendingJobs().isEmpty(); ++i)
+                Thread.sleep(100);
+            assertTrue(server.journal().getPendingJobs().isEmpty());
+        }
+    }
+
+    @Test
+    void interruptedJobsResumeForClientsThatReconnect() throws Exception {
+        var path = this.temporaryDirectory.resolve("jobs.log");
+        var executable = FakeSimc.create(this.temporaryDirectory, Duration.ofMillis(500));
+        var other = createInput("Other");
+        var queued = createInput("Queued");
+
+        // Without workers, both jobs are still queued when the server stops.
+        var first = this.startServer(path, executable, "first", 0);
+        Ticket queuedTicket;
+        EventLog.Event lastEvent;
+        CompletableFuture<List<String>> stream;
+        try {
+            first.service().submit(other);
+            queuedTicket = first.service().submit(queued);
+            lastEvent = queuedTicket.observe(0).blockFirst(Duration.ofSeconds(5));
+            assertNotNull(lastEvent);
+
+            // Followed as a connected browser would; the last event is not replayed to late subscribers.
+            stream = queuedTicket.getResultsFlux().collectList().toFuture();
+        } finally {
+            first.close();
+        }
+
+        var events = types(stream.get(5, TimeUnit.SECONDS));
+        assertEquals("restarting", events.get(events.size() - 1), events.toString());
+        assertFalse(events.contains("error"));
+        assertFalse(events.contains("end"));
+        assertTrue(queuedTicket.isInterrupted());
+
+        var second = this.startServer(path, executable, "second", 1);
+        try {
+            assertEquals(List.of(other.getRequestUUID(), queued.getRequestUUID()), second.journal().getPendingJobs().stream()
+                .map(job -> job.input().getRequestUUID()).toList());
+            second.service().restore();
+
+            // The browser reconnects with the identifier of the last event it received before the restart.
+            var restored = second.ticketRegistry().get(queued.getRequestUUID());
+            assertNotNull(restored);
+            var resumed = restored.observe(lastEvent.id())
+                .map(EventLog.Event::data)
+                .collectList()
+                .block(Duration.ofSeconds(30));
+            assertNotNull(resumed);
+
+            var resumedTypes = types(resumed);
+            assertTrue(resumedTypes.contains("report"), resumedTypes.toString());
+            assertEquals("end", resumedTypes.get(resumedTypes.size() - 1));
+            assertFalse(restored.isFailed(), restored.getFailureMessage());
+        } finally {
+            second.close();
+        }
+    }
+}
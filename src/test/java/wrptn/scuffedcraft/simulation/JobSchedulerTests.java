@@ -0,0 +1,92 @@
+package wrptn.scuffedcraft.simulation;
+
+import org.junit.jupiter.api.Test;
+import wrptn.scuffedcraft.models.FightStyle;
+import wrptn.scuffedcraft.models.SimulationInput;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JobSchedulerTests {
+    private final AtomicLong now = new AtomicLong();
+    private final JobScheduler scheduler = new JobScheduler(8, 1.0, this.now::get);
+    private long sequence = 0;
+
+    private Ticket ticket(double estimatedSeconds) {
+        var input = new SimulationInput();
+        input.setProfileString("warrior=\"Fake\"\n");
+
+        var ticket = new Ticket(input);
+        ticket.setSequence(++this.sequence);
+        ticket.setEstimatedSeconds(estimatedSeconds);
+        return ticket;
+    }
+
+    private void advance(Duration duration) {
+        this.now.addAndGet(duration.toNanos());
+    }
+
+    @Test
+    void dispatchesShortestExpectedJobFirst() throws Exception {
+        var scaling = ticket(600);
+        var patchwerk = ticket(20);
+        var cleave = ticket(40);
+        assertTrue(this.scheduler.offer(scaling));
+        assertTrue(this.scheduler.offer(patchwerk));
+        assertTrue(this.scheduler.offer(cleave));
+
+        assertEquals(3, this.scheduler.positionOf(scaling));
+        assertSame(patchwerk, this.scheduler.take());
+        assertSame(cleave, this.scheduler.take());
+        assertSame(scaling, this.scheduler.take());
+    }
+
+    @Test
+    void agingPreventsStarvation() throws Exception {
+        var expensive = ticket(600);
+        this.scheduler.offer(expensive);
+
+        // Cheap jobs submitted shortly after the expensive one overtake it...
+        this.advance(Duration.ofSeconds(60));
+        var early = ticket(20);
+        this.scheduler.offer(early);
+
+        // ... but not once it has waited longer than its expected extra cost.
+        this.advance(Duration.ofSeconds(600));
+        var late = ticket(20);
+        this.scheduler.offer(late);
+
+        assertSame(early, this.scheduler.take());
+        assertSame(expensive, this.scheduler.take());
+        assertSame(late, this.scheduler.take());
+    }
+
+    @Test
+    void rejectsTicketsBeyondCapacity() {
+        for (var i = 0; i < 8; ++i)
+            assertTrue(this.scheduler.offer(ticket(1)));
+
+        assertFalse(this.scheduler.offer(ticket(1)));
+    }
+
+    @Test
+    void costModelLearnsFromObservedRuntimes() {
+        var costModel = new CostModel(20);
+
+        var patchwerk = new SimulationInput();
+        var cleave = new SimulationInput();
+        cleave.setFightType(FightStyle.HecticAddCleave);
+        cleave.setNumberOfEnemies(5);
+        var scaling = new SimulationInput();
+        scaling.setEnableScaling(true);
+
+        assertTrue(costModel.estimate(patchwerk) < costModel.estimate(cleave));
+        assertTrue(costModel.estimate(cleave) < costModel.estimate(scaling));
+
+        var before = costModel.estimate(patchwerk);
+        costModel.record(patchwerk, Duration.ofSeconds(5));
+        assertTrue(costModel.estimate(patchwerk) < before);
+    }
+}
@@ -0,0 +1,81 @@
+package wrptn.scuffedcraft.simulation;
+
+import org.junit.jupiter.api.Test;
+import wrptn.scuffedcraft.models.FightStyle;
+import wrptn.scuffedcraft.models.SimulationInput;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricsTests {
+    private static final int EVENTS = 100_000;
+
+    @Test
+    void histogramsAreCumulative() {
+        var histogram = new Histogram(1, 10);
+        histogram.observe(0.5);
+        histogram.observe(5);
+        histogram.observe(5);
+        histogram.observe(50);
+
+        var builder = new StringBuilder();
+        histogram.writeTo(builder, "test", "");
+        assertEquals("""
+            test_bucket{le="1.0"} 1
+            test_bucket{le="10.0"} 3
+            test_bucket{le="+Inf"} 4
+            test_sum 60.5
+            test_count 4
+            """, builder.toString());
+    }
+
+    @Test
+    void executionsAreBrokenDownByFightStyleAndScaling() {
+        var metrics = new Metrics();
+        var input = new SimulationInput();
+        input.setFightType(FightStyle.HecticAddCleave);
+        input.setEnableScaling(true);
+
+        metrics.recordExecution(input, TimeUnit.SECONDS.toNanos(42), TimeUnit.SECONDS.toNanos(160));
+        metrics.registerGauge("test_gauge", "A gauge.", () -> 7);
+
+        var scrape = metrics.scrape();
+        assertTrue(scrape.contains("test_gauge 7\n"));
+        assertTrue(scrape.contains(
+            "scuffedcraft_simc_wall_seconds_count{fight_style=\"HecticAddCleave\",scaling=\"true\"} 1\n"));
+        assertTrue(scrape.contains(
+            "scuffedcraft_simc_cpu_seconds_sum{fight_style=\"HecticAddCleave\",scaling=\"true\"} 160.0\n"));
+        assertTrue(scrape.contains(
+            "scuffedcraft_simc_wall_seconds_count{fight_style=\"Patchwerk\",scaling=\"false\"} 0\n"));
+    }
+
+    @Test
+    void recordingDoesNotAllocate() {
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        var metrics = new Metrics();
+        var input = new SimulationInput();
+
+        // Let the adders and the JIT settle first.
+        record(metrics, input);
+
+        var threadId = Thread.currentThread().getId();
+        var before = threads.getThreadAllocatedBytes(threadId);
+        record(metrics, input);
+        var allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        assertTrue(allocated < 16 * 1024, allocated + " bytes allocated for " + EVENTS + " events");
+    }
+
+    private static void record(Metrics metrics, SimulationInput input) {
+        for (var i = 0; i < EVENTS; ++i) {
+            metrics.recordQueueWait(i);
+            metrics.recordExecution(input, i, i);
+            metrics.recordRejection();
+            metrics.recordReportSize(i);
+            metrics.subscriberConnected();
+            metrics.subscriberDisconnected();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package wrptn.scuffedcraft.simulation;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.publisher.Flux;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProcessSupervisorTests {
+    @TempDir
+    Path temporaryDirectory;
+
+    private final ProcessSupervisor supervisor = new ProcessSupervisor(Duration.ofMillis(20));
+
+    @AfterEach
+    void tearDown() {
+        this.supervisor.preDestroy();
+    }
+
+    /**
+     * Counts live threads, except the JDK's own process reapers; there is one per child process whatever waits on it.
+     */
+    private static long threadCount() {
+        return Thread.getAllStackTraces().keySet().stream()
+            .filter(thread -> !thread.getName().startsWith("process reaper"))
+            .count();
+    }
+
+    private Process start(String script, Path output) throws Exception {
+        return new ProcessBuilder("sh", "-c", script)
+            .redirectErrorStream(true)
+            .redirectOutput(output.toFile())
+            .start();
+    }
+
+    @Test
+    void linesAreSplitOnEveryTerminator() throws Exception {
+        var output = this.temporaryDirectory.resolve("output.txt");
+        var process = this.start("printf 'first\\r\\nsecond\\rthird\\n'; sleep 0.2; printf 'fou'; sleep 0.2; printf 'rth'",
+            output);
+
+        var lines = new ArrayList<String>();
+        var exit = this.supervisor.supervise(process, output, Duration.ofSeconds(10), lines::add)
+            .block(Duration.ofSeconds(10));
+
+        assertNotNull(exit);
+        assertEquals(0, exit.exitCode());
+        assertFalse(exit.timedOut());
+        assertEquals(List.of("first", "second", "third", "fourth"), lines);
+    }
+
+    @Test
+    void timeoutsKillTheWholeProcessTree() throws Exception {
+        var output = this.temporaryDirectory.resolve("output.txt");
+        var process = this.start("sleep 60 & echo $!; wait", output);
+
+        var lines = new ArrayList<String>();
+        var exit = this.supervisor.supervise(process, output, Duration.ofMillis(500), lines::add)
+            .block(Duration.ofSeconds(10));
+
+        assertNotNull(exit);
+        assertTrue(exit.timedOut());
+        assertEquals(1, lines.size());
+
+        // Killed children may linger until they are reaped, but must not keep running.
+        var child = ProcessHandle.of(Long.parseLong(lines.get(0)));
+        if (child.isPresent())
+            assertDoesNotThrow(() -> child.get().onExit().get(5, TimeUnit.SECONDS), "The child is still running");
+    }
+
+    @Test
+    void threadsDoNotGrowWithProcesses() throws Exception {
+        var before = threadCount();
+        var exits = Flux.range(0, 32)
+            .flatMap(i -> {
+                try {
+                    var output = this.temporaryDirectory.resolve("output-" + i + ".txt");
+                    return this.supervisor.supervise(this.start("sleep 1; echo done", output), output,
+                        Duration.ofSeconds(10), line -> { });
+                } catch (Exception ex) {
+                    throw new IllegalStateException(ex);
+                }
+            })
+            .collectList()
+            .toFuture();
+
+        // Sampled while every process is running.
+        Thread.sleep(500);
+        var during = threadCount();
+
+        assertEquals(32, exits.get(30, TimeUnit.SECONDS).size());
+        assertTrue(during < before + 16, "Expected far fewer than one thread per process, got " + (during - before));
+    }
+}
@@ -0,0 +1,88 @@
+package wrptn.scuffedcraft.simulation;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import wrptn.scuffedcraft.models.ProfileVariant;
+import wrptn.scuffedcraft.models.SimulationInput;
+
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProfilesetTests {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    @TempDir
+    Path temporaryDirectory;
+
+    private static SimulationInput createBatch() {
+        var input = new SimulationInput();
+        input.setProfileString("warrior=\"Fake\"\nlevel=110\ntrinket1=,id=1\n");
+        input.getVariants().add(new ProfileVariant("Trinket A", "trinket1=,id=2\n"));
+        input.getVariants().add(new ProfileVariant("Trinket B", "trinket1=,id=3\niterations=100000\n"));
+        input.getVariants().add(new ProfileVariant("Both", "trinket1=,id=2\ntrinket2=,id=3\n"));
+        return input;
+    }
+
+    @Test
+    void variantsAreWrittenAsSanitizedProfilesets() throws Exception {
+        var writer = new StringWriter();
+        new Ticket(createBatch()).writeInput(writer, 1);
+
+        var text = writer.toString();
+        assertTrue(text.contains("profileset.\"Trinket A\"+=trinket1=,id=2"));
+        assertTrue(text.contains("profileset.\"Both\"+=trinket2=,id=3"));
+        assertFalse(text.contains("iterations=100000"));
+    }
+
+    @Test
+    void batchesHaveTimeForEveryVariant() {
+        var ticket = new Ticket(createBatch());
+        assertEquals(Duration.ofMinutes(4), ticket.timeout());
+
+        // Estimates past the default are given headroom.
+        ticket.setEstimatedSeconds(600);
+        assertEquals(Duration.ofMinutes(40), ticket.timeout());
+    }
+
+    @Test
+    void streamsTheDpsOfEveryVariant() throws Exception {
+        var executable = FakeSimc.createWithProfilesets(this.temporaryDirectory, Duration.ofMillis(100));
+        try (var server = TestServer.builder(this.temporaryDirectory, executable).start()) {
+            var ticket = new Ticket(createBatch());
+            assertTrue(server.dispatcher().trySubmit(ticket));
+            var events = ticket.getResultsFlux().collectList().block(Duration.ofSeconds(30));
+            assertNotNull(events);
+
+            var variants = new LinkedHashMap<String, Double>();
+            for (var event : events) {
+                var node = objectMapper.readTree(event);
+                if (node.get("type").asText().equals("profileset"))
+                    variants.put(node.get("name").asText(), node.get("dps").asDouble());
+            }
+
+            assertEquals(3, variants.size(), String.join("\n", events));
+            assertEquals(101000, variants.get("Trinket A"), 1e-3);
+            assertEquals(102000, variants.get("Trinket B"), 1e-3);
+            assertEquals(103000, variants.get("Both"), 1e-3);
+            assertEquals(100000, ticket.getDps(), 1e-3);
+
+            // Results are part of the transcript, so that cache hits replay them.
+            assertEquals(3, ticket.getTranscript().stream().filter(event -> event.contains("\"profileset\"")).count());
+        }
+    }
+
+    @Test
+    void variantsChangeTheCacheKey() {
+        var batch = createBatch();
+        var single = new SimulationInput();
+        single.setProfileString(batch.getProfileString());
+
+        assertNotEquals(ResultCache.keyOf(single), ResultCache.keyOf(batch));
+        assertEquals(ResultCache.keyOf(createBatch()), ResultCache.keyOf(batch));
+    }
+}
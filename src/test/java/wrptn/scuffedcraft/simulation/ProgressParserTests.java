@@ -0,0 +1,24 @@
+package wrptn.scuffedcraft.simulation;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProgressParserTests {
+    @Test
+    void parsesProgressBars() {
+        var progress = ProgressParser.parse("Generating Baseline: Fury_Warrior [=========>..........] 4521/10000 3.45 sec");
+
+        assertNotNull(progress);
+        assertEquals("Generating Baseline: Fury_Warrior", progress.phase());
+        assertEquals(4521, progress.current());
+        assertEquals(10000, progress.total());
+        assertEquals(45, progress.percent());
+    }
+
+    @Test
+    void ignoresRegularOutput() {
+        assertNull(ProgressParser.parse("SimulationCraft 735-02 for World of Warcraft 7.3.5 Live (wow build level 25901)"));
+        assertNull(ProgressParser.parse("Player: Fury_Warrior human warrior fury 110"));
+    }
+}
@@ -0,0 +1,103 @@
+package wrptn.scuffedcraft.simulation;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static wrptn.scuffedcraft.simulation.TestServer.createInput;
+import static wrptn.scuffedcraft.simulation.TestServer.types;
+
+class ProgressiveJobTests {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    @TempDir
+    Path temporaryDirectory;
+
+    private TestServer server;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        var executable = FakeSimc.createWithDps(this.temporaryDirectory, Duration.ofMillis(500));
+        this.server = TestServer.builder(this.temporaryDirectory, executable)
+            .estimateTargetError(1.0)
+            .start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        this.server.close();
+    }
+
+    @Test
+    void theEstimateIsSentBeforeTheRefinedResults() throws Exception {
+        var ticket = new Ticket(createInput("Fake"));
+        assertTrue(this.server.dispatcher().trySubmit(ticket));
+
+        var events = ticket.getResultsFlux().collectList().block(Duration.ofSeconds(30));
+        assertNotNull(events);
+        var types = types(events);
+
+        var estimate = objectMapper.readTree(events.get(types.indexOf("estimate")));
+        assertEquals(100000, estimate.get("dps").asDouble(), 1e-3);
+        assertTrue(types.indexOf("estimate") < types.indexOf("summary"), String.join(",", types));
+        assertEquals(List.of("summary", "report", "end"), types.subList(types.size() - 3, types.size()));
+        assertEquals(1, types.stream().filter("status"::equals).count());
+
+        assertFalse(ticket.isFailed(), ticket.getFailureMessage());
+        assertEquals(100000, ticket.getDps(), 1e-3);
+        assertNotNull(ticket.getReportId());
+        assertFalse(types(ticket.getTranscript()).contains("estimate"));
+        assertEquals(2, this.server.scheduler().getDispatchedCount());
+    }
+
+    @Test
+    void cancelledTicketsAreNotRefined() throws Exception {
+        var ticket = new Ticket(createInput("Cancelled"));
+        assertTrue(this.server.dispatcher().trySubmit(ticket));
+
+        // Keeps the only worker busy once the estimate completed, so that the refinement waits in the queue.
+        var other = new Ticket(createInput("Other"), List.of("deterministic=1"), false);
+        assertTrue(this.server.dispatcher().trySubmit(other));
+
+        var estimated = ticket.getResultsFlux()
+            .filter(event -> event.startsWith("{\"type\":\"estimate\""))
+            .next()
+            .block(Duration.ofSeconds(10));
+        assertNotNull(estimated);
+        for (var i = 0; i < 50 && this.server.scheduler().size() == 0; ++i)
+            Thread.sleep(20);
+        assertEquals(1, this.server.scheduler().size());
+
+        assertTrue(this.server.dispatcher().cancel(ticket, "Cancelled by the test."));
+        assertEquals(0, this.server.scheduler().size());
+        assertTrue(ticket.isFailed());
+        assertEquals("Cancelled by the test.", ticket.getFailureMessage());
+
+        other.getResultsFlux().blockLast(Duration.ofSeconds(10));
+        assertEquals(2, this.server.scheduler().getDispatchedCount());
+    }
+
+    @Test
+    void refinementsAreQueuedEvenIfTheQueueFilledUp() throws Exception {
+        var full = new JobScheduler(1, 1.0);
+        var ticket = new Ticket(createInput("Refined"));
+        assertTrue(new ProgressiveJob(ticket, 1.0).submit(child -> child.trySubmit(full)));
+
+        // The queue fills up while the estimate runs.
+        var estimate = full.take();
+        assertTrue(full.offer(new Ticket(createInput("Other"))));
+        assertFalse(full.offer(new Ticket(createInput("Rejected"))));
+
+        estimate.finish(1000, null);
+        assertEquals(2, full.size());
+        assertFalse(ticket.isFailed(), ticket.getFailureMessage());
+        assertTrue(full.snapshot().stream().anyMatch(Ticket::isFollowUp));
+    }
+}
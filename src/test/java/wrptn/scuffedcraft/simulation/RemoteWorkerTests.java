@@ -0,0 +1,138 @@
+package wrptn.scuffedcraft.simulation;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static wrptn.scuffedcraft.simulation.TestServer.createInput;
+
+/**
+ * Runs a coordinator without local workers, and several {@link RemoteWorker}s pulling jobs from it over HTTP.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+    "simulationcraft.dispatcher.workers=0",
+    "simulationcraft.coordinator.token=" + RemoteWorkerTests.TOKEN,
+    "simulationcraft.coordinator.lease-duration=PT1S",
+    "simulationcraft.coordinator.poll-timeout=PT0.5S",
+    "simulationcraft.journal.location=${java.io.tmpdir}/scuffedcraft-tests/${random.uuid}/jobs.log",
+    "simulationcraft.reports.directory=${java.io.tmpdir}/scuffedcraft-tests/${random.uuid}/reports"
+})
+class RemoteWorkerTests {
+    static final String TOKEN = "worker-token";
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    @TempDir
+    Path temporaryDirectory;
+
+    @LocalServerPort
+    int port;
+
+    @Autowired
+    SimulationService simulationService;
+
+    @Autowired
+    ReportStore reportStore;
+
+    private final List<RemoteWorker> workers = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        this.workers.forEach(RemoteWorker::preDestroy);
+    }
+
+    private RemoteWorker startWorker(String name, Path executable) {
+        var reports = new ReportStore(this.temporaryDirectory.resolve(name), Duration.ofMinutes(5),
+            Duration.ofMinutes(1), Clock.systemUTC(), new ReportAssets());
+        var worker = new RemoteWorker(URI.create("http://localhost:" + this.port), TOKEN, name, 1,
+            executable.toString(), new CpuBudget(2, 1, false, "taskset"), reports, new ProcessSupervisor(Duration.ofMillis(50)),
+            new JobDirectories(this.temporaryDirectory.resolve(name + "-jobs")), Duration.ofMillis(100));
+        this.workers.add(worker);
+        return worker;
+    }
+
+    private List<String> types(Ticket ticket) throws Exception {
+        var events = ticket.getResultsFlux().collectList().block(Duration.ofSeconds(30));
+        assertNotNull(events);
+        return TestServer.types(events);
+    }
+
+    @Test
+    void jobsAreSpreadOverWorkers() throws Exception {
+        var executable = FakeSimc.createWithDps(this.temporaryDirectory, Duration.ofMillis(500));
+        var workers = List.of(startWorker("first", executable), startWorker("second", executable),
+            startWorker("third", executable));
+
+        var tickets = new ArrayList<Ticket>();
+        for (var i = 0; i < 6; ++i)
+            tickets.add(this.simulationService.submit(createInput("Job" + i)));
+
+        for (var ticket : tickets) {
+            var types = this.types(ticket);
+            assertFalse(ticket.isFailed(), ticket.getFailureMessage());
+            assertTrue(types.contains("status"), String.join(",", types));
+            assertTrue(types.contains("log"), String.join(",", types));
+            assertEquals(List.of("summary", "report", "end"), types.subList(types.size() - 3, types.size()));
+
+            assertEquals(100000, ticket.getDps(), 1e-3);
+            assertNotNull(this.reportStore.get(ticket.getReportId()));
+        }
+
+        // Workers report their completion right after the coordinator accepted it.
+        for (var i = 0; i < 50 && workers.stream().mapToLong(RemoteWorker::getCompletedJobs).sum() < 6; ++i)
+            Thread.sleep(100);
+        for (var worker : workers)
+            assertTrue(worker.getCompletedJobs() > 0);
+    }
+
+    @Test
+    void expiredLeasesAreQueuedAgain() throws Exception {
+        var executable = FakeSimc.create(this.temporaryDirectory, Duration.ofMillis(100));
+        var ticket = this.simulationService.submit(createInput("Abandoned"));
+
+        // A worker that leases the job, then disappears.
+        var client = HttpClient.newHttpClient();
+        var lease = client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + this.port + "/v2/workers/lease?worker=dead"))
+            .header("Authorization", "Bearer " + TOKEN)
+            .POST(HttpRequest.BodyPublishers.noBody())
+            .build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, lease.statusCode());
+        var leaseId = objectMapper.readTree(lease.body()).get("lease").asText();
+
+        startWorker("survivor", executable);
+        var types = this.types(ticket);
+        assertFalse(ticket.isFailed(), ticket.getFailureMessage());
+        assertEquals("end", types.get(types.size() - 1));
+
+        var late = client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + this.port + "/v2/workers/leases/" + leaseId + "/events"))
+            .header("Authorization", "Bearer " + TOKEN)
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString("[]"))
+            .build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(410, late.statusCode());
+    }
+
+    @Test
+    void workersMustPresentTheToken() throws Exception {
+        var response = HttpClient.newHttpClient().send(HttpRequest.newBuilder(URI.create("http://localhost:" + this.port + "/v2/workers/lease?worker=intruder"))
+            .header("Authorization", "Bearer wrong")
+            .POST(HttpRequest.BodyPublishers.noBody())
+            .build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(403, response.statusCode());
+    }
+}
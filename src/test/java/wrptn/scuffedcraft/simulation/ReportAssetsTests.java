@@ -0,0 +1,95 @@
+package wrptn.scuffedcraft.simulation;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReportAssetsTests {
+    private static final ReportAssets assets = new ReportAssets();
+
+    private static String read(String path) throws Exception {
+        try (var input = new ClassPathResource("static" + path).getInputStream()) {
+            return new String(input.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static byte[] strip(byte[] report, long expectedRemoved) throws Exception {
+        var output = new ByteArrayOutputStream();
+        assertEquals(expectedRemoved, assets.strip(new ByteArrayInputStream(report), output));
+        return output.toByteArray();
+    }
+
+    @Test
+    void embeddedAssetsAreReplacedByTheirVersionedUrls() throws Exception {
+        var report = """
+            <html><head>
+            <style type="text/css" media="all">
+            %s
+            </style>
+            <SCRIPT type="text/javascript">%s</SCRIPT>
+            <script type="text/javascript">var chart = "<div></div>"; if (a < b) draw(chart);</script>
+            <style>body { color: red; }</style>
+            </head><body>Fury_Warrior</body></html>
+            """.formatted(read("/simcraft/style/sim.css"), read("/simcraft/js/jquery.min.js"));
+        var bytes = report.getBytes(StandardCharsets.UTF_8);
+
+        var output = new ByteArrayOutputStream();
+        var removed = assets.strip(new ByteArrayInputStream(bytes), output);
+        var stripped = output.toString(StandardCharsets.UTF_8);
+
+        assertEquals(bytes.length - removed, output.size());
+        assertTrue(output.size() < 1024, stripped);
+        assertTrue(stripped.contains("<link rel=\"stylesheet\" type=\"text/css\" href=\""
+            + assets.url("/simcraft/style/sim.css") + "\" />"), stripped);
+        assertTrue(stripped.contains("<script type=\"text/javascript\" src=\""
+            + assets.url("/simcraft/js/jquery.min.js") + "\"></script>"), stripped);
+        assertTrue(stripped.contains("<script type=\"text/javascript\">var chart = \"<div></div>\"; if (a < b) draw(chart);</script>"));
+        assertTrue(stripped.contains("<style>body { color: red; }</style>"));
+        assertTrue(stripped.endsWith("</head><body>Fury_Warrior</body></html>\n"));
+    }
+
+    @Test
+    void versionedUrlsChangeWithTheContent() {
+        var url = assets.url("/simcraft/js/highcharts.min.js");
+        assertTrue(url.matches("/simcraft/js/highcharts\\.min-[0-9a-f]{32}\\.js"), url);
+        assertNotEquals(url, assets.url("/simcraft/js/jquery.min.js").replace("jquery", "highcharts"));
+        assertThrows(IllegalArgumentException.class, () -> assets.url("/simcraft/js/unknown.js"));
+    }
+
+    @Test
+    void reportsWithoutAssetsAreCopiedUnchanged() throws Exception {
+        var truncated = "<html><style>body { color: red; }</style><script src=\"chart.js\"></script><scripts>"
+            + "<<script>>< /style><script type=\"text/javascript\">unterminated";
+        assertArrayEquals(truncated.getBytes(StandardCharsets.UTF_8),
+            strip(truncated.getBytes(StandardCharsets.UTF_8), 0));
+
+        // Arbitrary bytes, with tags and elements larger than any asset.
+        var random = new Random(42);
+        var builder = new ByteArrayOutputStream();
+        for (var i = 0; i < 20000; ++i) {
+            switch (random.nextInt(8)) {
+                case 0 -> builder.writeBytes("<script>".getBytes(StandardCharsets.US_ASCII));
+                case 1 -> builder.writeBytes("</script>".getBytes(StandardCharsets.US_ASCII));
+                case 2 -> builder.writeBytes("<STYLE media=\"all\">".getBytes(StandardCharsets.US_ASCII));
+                case 3 -> builder.write('<');
+                default -> {
+                    var text = new byte[random.nextInt(200)];
+                    random.nextBytes(text);
+                    builder.writeBytes(text);
+                }
+            }
+        }
+        builder.writeBytes("<style>".getBytes(StandardCharsets.US_ASCII));
+        builder.writeBytes(" ".repeat(1 << 20).getBytes(StandardCharsets.US_ASCII));
+        builder.writeBytes("</style>".getBytes(StandardCharsets.US_ASCII));
+
+        var report = builder.toByteArray();
+        assertArrayEquals(report, strip(report, 0));
+    }
+}
@@ -0,0 +1,135 @@
+package wrptn.scuffedcraft.simulation;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import wrptn.scuffedcraft.models.SimulationInput;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResultCacheTests {
+    @TempDir
+    Path temporaryDirectory;
+
+    private ReportStore reportStore;
+
+    private ResultCache createCache(int maxEntries, Clock clock) {
+        this.reportStore = new ReportStore(this.temporaryDirectory.resolve("reports"), Duration.ofMinutes(5),
+            Duration.ofMinutes(1), clock, new ReportAssets());
+        return new ResultCache(maxEntries, Long.MAX_VALUE, Duration.ofMinutes(30), clock, this.reportStore);
+    }
+
+    private static SimulationInput input(String profile) {
+        var input = new SimulationInput();
+        input.setProfileString(profile);
+        return input;
+    }
+
+    @Test
+    void keyIgnoresStrippedLinesButNotOptions() {
+        var first = input("warrior=\"A\"\nlevel=110\n");
+        var second = input("# exported by the addon\nwarrior=\"A\"\n\nlevel=110\nbogus=1\n");
+        assertEquals(ResultCache.keyOf(first), ResultCache.keyOf(second));
+
+        second.setEnableScaling(true);
+        assertNotEquals(ResultCache.keyOf(first), ResultCache.keyOf(second));
+    }
+
+    @Test
+    void coalescesInFlightAndServesCompletedSubmissions() {
+        var cache = this.createCache(16, Clock.systemUTC());
+        var key = ResultCache.keyOf(input("warrior=\"A\"\n"));
+
+        var leader = new Ticket(input("warrior=\"A\"\n"));
+        assertEquals(ResultCache.Outcome.MISS, cache.lookup(key, leader).outcome());
+
+        var follower = cache.lookup(key, new Ticket(input("warrior=\"A\"\n")));
+        assertEquals(ResultCache.Outcome.COALESCED, follower.outcome());
+        assertSame(leader, follower.ticket());
+
+        leader.replay(List.of("{\"type\":\"status\",\"status\":\"IN_PROGRESS\"}"), null);
+        cache.complete(key, leader);
+
+        var hit = cache.lookup(key, new Ticket(input("warrior=\"A\"\n")));
+        assertEquals(ResultCache.Outcome.HIT, hit.outcome());
+        assertEquals(List.of("{\"type\":\"status\",\"status\":\"IN_PROGRESS\"}"), hit.ticket().getResultsFlux().collectList().block());
+
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getCoalesced());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedAndExpiredEntries() {
+        var clock = new MutableClock();
+        var cache = this.createCache(2, clock);
+
+        for (var profile : List.of("mage=\"A\"\n", "mage=\"B\"\n", "mage=\"C\"\n")) {
+            var input = input(profile);
+            var key = ResultCache.keyOf(input);
+            var ticket = new Ticket(input);
+            cache.lookup(key, ticket);
+            ticket.replay(List.of("{\"type\":\"end\"}"), null);
+            cache.complete(key, ticket);
+        }
+        assertEquals(2, cache.getSize());
+
+        var oldest = input("mage=\"A\"\n");
+        assertEquals(ResultCache.Outcome.MISS, cache.lookup(ResultCache.keyOf(oldest), new Ticket(oldest)).outcome());
+
+        clock.advance(Duration.ofMinutes(40));
+        var expired = input("mage=\"C\"\n");
+        assertEquals(ResultCache.Outcome.MISS, cache.lookup(ResultCache.keyOf(expired), new Ticket(expired)).outcome());
+    }
+
+    @Test
+    void keepsViewedReportsForAsLongAsTheirEntry() throws Exception {
+        var clock = new MutableClock();
+        var cache = this.createCache(16, clock);
+
+        var input = input("priest=\"A\"\n");
+        var key = ResultCache.keyOf(input);
+        var report = this.reportStore.store(Files.writeString(this.temporaryDirectory.resolve("report.html"), "<html/>"));
+        var ticket = new Ticket(input);
+        cache.lookup(key, ticket);
+        ticket.replay(List.of("{\"type\":\"end\"}"), report.id());
+        cache.complete(key, ticket);
+
+        // Past both the delivered grace and the store's own time to live, but not the cache's.
+        this.reportStore.delivered(report.id());
+        clock.advance(Duration.ofMinutes(20));
+        this.reportStore.sweep();
+
+        var hit = cache.lookup(key, new Ticket(input));
+        assertEquals(ResultCache.Outcome.HIT, hit.outcome());
+        assertNotNull(this.reportStore.get(report.id()));
+
+        this.reportStore.delivered(report.id());
+        clock.advance(Duration.ofMinutes(11));
+        this.reportStore.sweep();
+        assertNull(this.reportStore.get(report.id()));
+        assertEquals(ResultCache.Outcome.MISS, cache.lookup(key, new Ticket(input)).outcome());
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now = Instant.EPOCH;
+
+        void advance(Duration duration) { this.now = this.now.plus(duration); }
+
+        @Override
+        public ZoneOffset getZone() { return ZoneOffset.UTC; }
+
+        @Override
+        public Clock withZone(java.time.ZoneId zone) { return this; }
+
+        @Override
+        public Instant instant() { return this.now; }
+    }
+}
@@ -0,0 +1,72 @@
+package wrptn.scuffedcraft.simulation;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResultSummaryTests {
+    private static ResultSummary parse(String json) throws Exception {
+        return ResultSummary.parse(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void summarizesTheFirstPlayer() throws Exception {
+        var stats = new StringBuilder();
+        for (var i = 1; i <= 12; ++i)
+            stats.append("""
+                {"name":"ability%d","type":"damage","num_executes":{"mean":3,"min":1},"portion_aps":{"mean":%d.5,"max":1e9},
+                 "portion_amount":0.%02d,"children":[{"name":"child","portion_aps":{"mean":1e9}}]},
+                """.formatted(i, i * 1000, i));
+
+        var summary = parse("""
+            {"version":"1000-01","sim":{"players":[
+                {"name":"Warrior","race":"human","collected_data":{"fight_length":{"mean":300},
+                 "dps":{"sum":1,"count":2,"mean":12345.5,"mean_std_dev":10.0,"data":[1,2,3]}},
+                 "stats":[%s{"name":"heal","type":"heal","portion_aps":{"mean":1e9}}],
+                 "scale_factors":{"Str":1.5,"Crit":0.75,"Notes":["ignored"]}},
+                {"name":"Other","collected_data":{"dps":{"mean":1}}}],
+             "options":{"iterations":1000,"confidence_estimator":2.0},
+             "statistics":{"elapsed_cpu_seconds":12.5}}}
+            """.formatted(stats));
+
+        assertNotNull(summary);
+        assertEquals("Warrior", summary.player());
+        assertEquals(12345.5f, summary.dps());
+        assertEquals(20f, summary.dpsError());
+        assertEquals(Map.of("Str", 1.5f, "Crit", 0.75f), summary.scaleFactors());
+
+        assertEquals(ResultSummary.TOP_ABILITIES, summary.abilities().size());
+        assertEquals(new ResultSummary.Ability("ability12", 12000.5f, 0.12f), summary.abilities().get(0));
+        assertEquals("ability5", summary.abilities().get(ResultSummary.TOP_ABILITIES - 1).name());
+
+        var event = summary.toEvent();
+        assertEquals("summary", event.get("type").asText());
+        assertEquals(12345.5, event.get("dps").asDouble(), 1e-3);
+        assertEquals("ability12", event.get("abilities").get(0).get("name").asText());
+        assertEquals(1.5, event.get("scaleFactors").get("Str").asDouble(), 1e-6);
+    }
+
+    @Test
+    void outputsWithoutPlayersHaveNoSummary() throws Exception {
+        assertNull(parse("{\"version\":\"1000-01\",\"sim\":{\"players\":[]}}"));
+        assertNull(parse("{\"notes\":[1,2,{\"sim\":{}}]}"));
+        assertNull(parse("[]"));
+    }
+
+    @Test
+    void abilitiesDefaultToTheStandardConfidenceInterval() throws Exception {
+        var summary = parse("""
+            {"sim":{"players":[{"name":"Fake","collected_data":{"dps":{"mean":100.0,"mean_std_dev":1.0}},"stats":[]}]}}
+            """);
+
+        assertNotNull(summary);
+        assertEquals(1.96f, summary.dpsError(), 1e-6);
+        assertEquals(List.of(), summary.abilities());
+        assertTrue(summary.scaleFactors().isEmpty());
+    }
+}
@@ -0,0 +1,87 @@
+package wrptn.scuffedcraft.simulation;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import wrptn.scuffedcraft.models.SimulationInput;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScaleFactorJobTests {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    @TempDir
+    Path temporaryDirectory;
+
+    private TestServer server;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        var executable = FakeSimc.createWithDps(this.temporaryDirectory, Duration.ofMillis(300));
+        this.server = TestServer.builder(this.temporaryDirectory, executable)
+            .workers(4)
+            .start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        this.server.close();
+    }
+
+    @Test
+    void streamsOneScaleFactorPerStatThenTheBaselineReport() throws Exception {
+        var input = new SimulationInput();
+        input.setEnableScaling(true);
+        input.setProfileString("warrior=\"Fake\"\nlevel=110\n");
+        var ticket = new Ticket(input);
+
+        assertTrue(this.server.dispatcher().trySubmit(ticket));
+        var events = ticket.getResultsFlux().collectList().block(Duration.ofSeconds(30));
+        assertNotNull(events);
+
+        var types = new ArrayList<String>();
+        var scaleFactors = new LinkedHashMap<String, Double>();
+        for (var event : events) {
+            var node = objectMapper.readTree(event);
+            types.add(node.get("type").asText());
+            if (node.get("type").asText().equals("scale_factor"))
+                scaleFactors.put(node.get("stat").asText(), node.get("value").asDouble());
+        }
+
+        // The fake simc adds the stat's index, plus one, in DPS per point of that stat.
+        var expected = 1;
+        assertEquals(ScaleFactorJob.STAT_OPTIONS.size(), scaleFactors.size());
+        for (var stat : ScaleFactorJob.STAT_OPTIONS.keySet())
+            assertEquals(expected++, scaleFactors.get(stat), 1e-3, stat);
+
+        assertTrue(types.indexOf("scale_factor") < types.indexOf("scale_factors"));
+        assertEquals(types.indexOf("scale_factors") - 1, types.indexOf("summary"), String.join(",", types));
+        assertEquals(types.size() - 2, types.indexOf("report"), String.join(",", types));
+        assertEquals("end", types.get(types.size() - 1));
+        assertFalse(ticket.isFailed());
+        assertNotNull(ticket.getReportId());
+    }
+
+    @Test
+    void rejectedSubSimulationsAreWithdrawn() {
+        var full = new JobScheduler(3, 1.0);
+        var input = new SimulationInput();
+        input.setEnableScaling(true);
+        input.setProfileString("warrior=\"Fake\"\nlevel=110\n");
+        var ticket = new Ticket(input);
+
+        var job = new ScaleFactorJob(ticket, 1000);
+        assertFalse(job.submit(child -> child.trySubmit(full), full));
+
+        assertEquals(0, full.size());
+        assertTrue(ticket.isFailed());
+        assertEquals("The job queue is full. Please check back later.", ticket.getFailureMessage());
+    }
+}
@@ -0,0 +1,154 @@
+package wrptn.scuffedcraft.simulation;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.NonNull;
+import wrptn.scuffedcraft.models.SimulationInput;
+
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The components of a server that run simulations, wired the way the application does it with settings suited to
+ * tests. Only the {@link Builder#journal(Path) journal} is optional, along with the {@link SimulationService} that
+ * needs it.
+ */
+record TestServer(ReportStore reportStore, JobScheduler scheduler, TicketRegistry ticketRegistry, Metrics metrics,
+                  ProcessSupervisor supervisor, Dispatcher dispatcher, JobJournal journal,
+                  SimulationService service) implements AutoCloseable {
+    static final int JOURNAL_SIZE = 4096;
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * @param directory  Where the server keeps its reports and job directories.
+     * @param executable The simc stand-in, see {@link FakeSimc}.
+     */
+    static Builder builder(@NonNull Path directory, @NonNull Path executable) {
+        return new Builder(directory, executable);
+    }
+
+    /**
+     * A plain simulation of a player with the given name.
+     */
+    static SimulationInput createInput(@NonNull String name) {
+        var input = new SimulationInput();
+        input.setProfileString("warrior=\"" + name + "\"\nlevel=110\n");
+        return input;
+    }
+
+    /**
+     * Returns the type of every event.
+     */
+    static List<String> types(@NonNull List<String> events) throws Exception {
+        var types = new ArrayList<String>();
+        for (var event : events)
+            types.add(objectMapper.readTree(event).get("type").asText());
+        return types;
+    }
+
+    /**
+     * Stops the components in the order Spring destroys them.
+     */
+    @Override
+    public void close() {
+        if (this.service != null)
+            this.service.preDestroy();
+        this.dispatcher.preDestroy();
+        this.ticketRegistry.preDestroy();
+        this.supervisor.preDestroy();
+        this.reportStore.preDestroy();
+        if (this.journal != null)
+            this.journal.preDestroy();
+    }
+
+    static final class Builder {
+        private final Path directory;
+        private final Path executable;
+
+        private String name = null;
+        private int workers = 1;
+        private int queueCapacity = 64;
+        private double estimateTargetError = 0;
+        private Path journalPath = null;
+        private Duration gracePeriod = Duration.ofMinutes(1);
+
+        private Builder(Path directory, Path executable) {
+            this.directory = directory;
+            this.executable = executable;
+        }
+
+        /**
+         * Prefixes the directories of the server, so that several servers can share a directory.
+         */
+        Builder name(@NonNull String name) {
+            this.name = name;
+            return this;
+        }
+
+        /**
+         * Amount of local workers; without any, tickets stay queued. Defaults to one.
+         */
+        Builder workers(int workers) {
+            this.workers = workers;
+            return this;
+        }
+
+        Builder queueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+
+        /**
+         * Precedes plain simulations with an estimate of the given {@code target_error}; disabled by default.
+         */
+        Builder estimateTargetError(double estimateTargetError) {
+            this.estimateTargetError = estimateTargetError;
+            return this;
+        }
+
+        /**
+         * Records jobs in a journal at the given path, and submits them through a {@link SimulationService}.
+         */
+        Builder journal(@NonNull Path journalPath) {
+            this.journalPath = journalPath;
+            return this;
+        }
+
+        /**
+         * How long the service waits for a client before cancelling its simulation.
+         */
+        Builder gracePeriod(@NonNull Duration gracePeriod) {
+            this.gracePeriod = gracePeriod;
+            return this;
+        }
+
+        TestServer start() {
+            var reportStore = new ReportStore(this.resolve("reports"), Duration.ofMinutes(5), Duration.ofMinutes(1),
+                Clock.systemUTC(), new ReportAssets());
+            var scheduler = new JobScheduler(this.queueCapacity, 1.0);
+            var ticketRegistry = new TicketRegistry(scheduler, Duration.ofSeconds(1));
+            var metrics = new Metrics();
+            var supervisor = new ProcessSupervisor(Duration.ofMillis(50));
+            var dispatcher = new Dispatcher(this.executable.toString(), this.workers, reportStore, ticketRegistry,
+                scheduler, new CostModel(20), new CpuBudget(4, Math.max(1, this.workers), false, "taskset"), metrics,
+                supervisor, new JobDirectories(this.resolve("jobs")), new JobAccounting(64), true, 1000,
+                this.estimateTargetError);
+            if (this.journalPath == null)
+                return new TestServer(reportStore, scheduler, ticketRegistry, metrics, supervisor, dispatcher, null, null);
+
+            var journal = new JobJournal(this.journalPath, JOURNAL_SIZE);
+            var service = new SimulationService(ticketRegistry, dispatcher,
+                new ResultCache(16, 1 << 20, Duration.ofMinutes(5), Clock.systemUTC(), reportStore), journal,
+                this.gracePeriod);
+            return new TestServer(reportStore, scheduler, ticketRegistry, metrics, supervisor, dispatcher, journal,
+                service);
+        }
+
+        private Path resolve(String directory) {
+            return this.directory.resolve(this.name == null ? directory : this.name + "-" + directory);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package wrptn.scuffedcraft.simulation;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import wrptn.scuffedcraft.models.SimulationInput;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static wrptn.scuffedcraft.simulation.TestServer.createInput;
+
+class TicketRegistryTests {
+    private static final int SUBMITTERS = 8;
+    private static final int TICKETS_PER_SUBMITTER = 6;
+
+    @TempDir
+    Path temporaryDirectory;
+
+    private final JobScheduler scheduler = new JobScheduler(64, 1.0);
+    private final TicketRegistry ticketRegistry = new TicketRegistry(this.scheduler, Duration.ofMillis(50));
+
+    @AfterEach
+    void tearDown() {
+        this.ticketRegistry.preDestroy();
+    }
+
+    private Ticket ticket(double estimatedSeconds) {
+        var input = new SimulationInput();
+        input.setProfileString("warrior=\"Fake\"\n");
+
+        var ticket = new Ticket(input);
+        ticket.setSequence(this.ticketRegistry.nextSequence());
+        ticket.setEstimatedSeconds(estimatedSeconds);
+        return ticket;
+    }
+
+    @Test
+    void broadcastsPositionsInDispatchOrder() throws Exception {
+        var tickets = List.of(ticket(60), ticket(10), ticket(30));
+        tickets.forEach(this.scheduler::offer);
+
+        this.ticketRegistry.broadcastPositions();
+        assertEquals(List.of(3, 1, 2), tickets.stream().map(Ticket::getQueuePosition).toList());
+
+        assertEquals(tickets.get(1), this.scheduler.take());
+        this.ticketRegistry.broadcastPositions();
+        assertEquals(List.of(2, 1), List.of(tickets.get(0).getQueuePosition(), tickets.get(2).getQueuePosition()));
+    }
+
+    @Test
+    void forecastsAreSentWithPositions() throws Exception {
+        var now = Instant.ofEpochSecond(1_000_000);
+        this.ticketRegistry.setForecaster(queued -> queued.stream()
+            .map(ticket -> new JobAccounting.Forecast(now, now.plusSeconds((long) ticket.getEstimatedSeconds())))
+            .toList());
+
+        var ticket = ticket(60);
+        this.scheduler.offer(ticket);
+        this.ticketRegistry.broadcastPositions();
+
+        var event = new ObjectMapper().readTree(ticket.getResultsFlux().blockFirst(Duration.ofSeconds(5)));
+        assertEquals("queue", event.get("type").asText());
+        assertEquals(1, event.get("position").asInt());
+        assertEquals(now.toEpochMilli(), event.get("startsAt").asLong());
+        assertEquals(now.plusSeconds(60).toEpochMilli(), event.get("finishesAt").asLong());
+    }
+
+    @Test
+    void forecastsFollowJobsThatOverrun() throws Exception {
+        var now = Instant.ofEpochSecond(1_000_000);
+        var overrun = new AtomicLong();
+        this.ticketRegistry.setForecaster(queued -> queued.stream()
+            .map(ticket -> new JobAccounting.Forecast(now.plusSeconds(overrun.get()), now.plusSeconds(60 + overrun.get())))
+            .toList());
+
+        var ticket = ticket(60);
+        this.scheduler.offer(ticket);
+        var events = ticket.getResultsFlux().collectList().toFuture();
+
+        // The queue does not change while the running job takes longer than expected.
+        this.ticketRegistry.broadcastPositions();
+        overrun.set(2);
+        this.ticketRegistry.broadcastPositions();
+        overrun.set(30);
+        this.ticketRegistry.broadcastPositions();
+        ticket.fail(new Exception("Done"));
+
+        var objectMapper = new ObjectMapper();
+        var startsAt = new ArrayList<Long>();
+        for (var event : events.get(5, TimeUnit.SECONDS)) {
+            var node = objectMapper.readTree(event);
+            if (node.get("type").asText().equals("queue"))
+                startsAt.add(node.get("startsAt").asLong());
+        }
+
+        // Drifts within the tolerance are not sent.
+        assertEquals(List.of(now.toEpochMilli(), now.plusSeconds(30).toEpochMilli()), startsAt);
+    }
+
+    @Test
+    void sequencesStayContiguousUnderConcurrentSubmissions() throws Exception {
+        var executable = FakeSimc.create(this.temporaryDirectory, Duration.ofSeconds(2));
+
+        var submitted = new ConcurrentLinkedQueue<Ticket>();
+        var start = new CountDownLatch(1);
+        var submitters = Executors.newFixedThreadPool(SUBMITTERS);
+        try (var server = TestServer.builder(this.temporaryDirectory, executable).start()) {
+            var futures = new ArrayList<Future<?>>();
+            for (var i = 0; i < SUBMITTERS; ++i) {
+                futures.add(submitters.submit(() -> {
+                    start.await();
+                    for (var j = 0; j < TICKETS_PER_SUBMITTER; ++j) {
+                        var ticket = new Ticket(createInput("Fake"));
+                        server.dispatcher().trySubmit(ticket);
+                        submitted.add(ticket);
+                    }
+                    return null;
+                }));
+            }
+
+            start.countDown();
+            for (var future : futures)
+                future.get();
+
+            var total = SUBMITTERS * TICKETS_PER_SUBMITTER;
+            assertEquals(LongStream.rangeClosed(1, total).boxed().toList(),
+                submitted.stream().map(Ticket::getSequence).sorted().toList());
+
+            // Only the ticket picked up by the single worker has left the queue.
+            assertEquals(total - 1, server.scheduler().size());
+        } finally {
+            submitters.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package wrptn.scuffedcraft.simulation;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import wrptn.scuffedcraft.ScuffedcraftApplication;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static wrptn.scuffedcraft.simulation.TestServer.createInput;
+
+/**
+ * Boots a coordinator, then the {@code worker} profile next to it with the same journal and report locations, the
+ * way both would run on a single machine with the default settings.
+ */
+class WorkerProfileTests {
+    private static final String TOKEN = "worker-token";
+
+    @TempDir
+    Path temporaryDirectory;
+
+    private ConfigurableApplicationContext start(List<String> arguments, String... profiles) {
+        var shared = new ArrayList<>(List.of(
+            "--simulationcraft.journal.location=" + this.temporaryDirectory.resolve("journal").resolve("jobs.log"),
+            "--simulationcraft.reports.directory=" + this.temporaryDirectory.resolve("reports"),
+            "--simulationcraft.jobs.directory=" + this.temporaryDirectory.resolve("jobs")));
+        shared.addAll(arguments);
+        return new SpringApplicationBuilder(ScuffedcraftApplication.class)
+            .profiles(profiles)
+            .run(shared.toArray(String[]::new));
+    }
+
+    @Test
+    void workersLeaveTheStateOfTheirCoordinatorAlone() throws Exception {
+        var executable = FakeSimc.createWithDps(this.temporaryDirectory, Duration.ofMillis(200));
+        var source = Files.writeString(this.temporaryDirectory.resolve("report.html"), "<html></html>");
+
+        try (var coordinator = this.start(List.of("--server.port=0", "--simulationcraft.dispatcher.workers=0",
+            "--simulationcraft.coordinator.token=" + TOKEN, "--simulationcraft.coordinator.poll-timeout=PT0.5S"))) {
+            var service = coordinator.getBean(SimulationService.class);
+            var journal = coordinator.getBean(JobJournal.class);
+            var reportStore = coordinator.getBean(ReportStore.class);
+            var report = reportStore.store(source);
+
+            // Without workers, the job stays pending in the journal of the coordinator.
+            var ticket = service.submit(createInput("Pending"));
+            assertEquals(1, journal.getPendingJobs().size());
+
+            var port = coordinator.getEnvironment().getProperty("local.server.port");
+            try (var worker = this.start(List.of("--simulationcraft.worker.coordinator=http://localhost:" + port,
+                "--simulationcraft.worker.token=" + TOKEN, "--simulationcraft.executable.location=" + executable),
+                "worker")) {
+                assertTrue(worker.getBeansOfType(JobJournal.class).isEmpty());
+                assertTrue(worker.getBeansOfType(SimulationService.class).isEmpty());
+                assertTrue(Files.exists(report.path()));
+                assertEquals(1, journal.getPendingJobs().size());
+
+                // The worker runs the job once, for the coordinator.
+                var events = ticket.getResultsFlux().collectList().block(Duration.ofSeconds(30));
+                assertNotNull(events);
+                assertFalse(ticket.isFailed(), ticket.getFailureMessage());
+                assertEquals(100000, ticket.getDps(), 1e-3);
+                assertNotNull(reportStore.get(ticket.getReportId()));
+
+                // The worker reports its completion right after the coordinator accepted it.
+                var remoteWorker = worker.getBean(RemoteWorker.class);
+                for (var i = 0; i < 50 && remoteWorker.getCompletedJobs() < 1; ++i)
+                    Thread.sleep(100);
+                assertEquals(1, remoteWorker.getCompletedJobs());
+            }
+
+            assertTrue(journal.getPendingJobs().isEmpty());
+            assertNotNull(reportStore.get(report.id()));
+        }
+    }
+}